@@ -0,0 +1,107 @@
+package com.example.kr_platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+// 10 万行のユーザー一括登録。bulkImport は BulkUserImporter (チャンク単位の重複確認・並列ハッシュ・バッチ INSERT)、
+// perRow は以前の /auth/register を 1 行ずつ呼んだ場合 (存在確認・ハッシュ・save を 1 件ずつ) に相当する。
+// bcrypt のコストは本番 (10) だと計算時間が支配的になるため、既定では 4 にして書き込み経路の差を見る
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class BulkImportBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"4"})
+    public int bcryptStrength;
+
+    private ConfigurableApplicationContext context;
+    private BulkUserImporter importer;
+    private UserRepository userRepository;
+    private PasswordEncoder passwordEncoder;
+    private JdbcTemplate jdbcTemplate;
+    private String csv;
+    private String[][] pairs;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // .properties() は application.properties より弱い (bcrypt-strength が既定値のままになる) ので、コマンドライン引数で渡す
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.devtools.restart.enabled=false",
+                        "--google.credentials.allow-ephemeral-key=true",
+                        "--twitter.consumerKey=bench",
+                        "--twitter.consumerSecret=bench",
+                        "--twitter.accessToken=bench",
+                        "--twitter.accessTokenSecret=bench",
+                        "--twitter.bearerToken=bench",
+                        "--auth.password.bcrypt-strength=" + bcryptStrength);
+        importer = context.getBean(BulkUserImporter.class);
+        userRepository = context.getBean(UserRepository.class);
+        passwordEncoder = context.getBean(PasswordEncoder.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        StringBuilder builder = new StringBuilder("username,password\n");
+        pairs = new String[rows][];
+        for (int i = 0; i < rows; i++) {
+            pairs[i] = new String[] {"user" + i, "password-" + i};
+            builder.append(pairs[i][0]).append(',').append(pairs[i][1]).append('\n');
+        }
+        csv = builder.toString();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearUsers() {
+        jdbcTemplate.update("delete from users");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public BulkUserImporter.Summary bulkImport() throws Exception {
+        try (BulkUserImporter.Permit permit = importer.begin()) {
+            return importer.importUsers(new BufferedReader(new StringReader(csv)), BulkUserImporter.Format.CSV,
+                    results -> { });
+        }
+    }
+
+    @Benchmark
+    public long perRow() {
+        long created = 0;
+        for (String[] pair : pairs) {
+            if (userRepository.findByUsername(pair[0]).isPresent()) {
+                continue;
+            }
+            userRepository.save(new User(pair[0], passwordEncoder.encode(pair[1])));
+            created++;
+        }
+        return created;
+    }
+}
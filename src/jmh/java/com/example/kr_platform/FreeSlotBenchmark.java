@@ -0,0 +1,76 @@
+package com.example.kr_platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 10 万件の予定から空き枠を探すコスト。
+// rebuild は全件を入れ直して統合し直す場合、query は統合済みの BusyTimes への問い合わせ (1 週間分から 30 分枠を 20 件)、
+// update は同期で 1 件変わった後 (remove + add) に統合し直す場合。gc プロファイラー (-prof gc) で割り当て量も見られる
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FreeSlotBenchmark {
+
+    private static final long MINUTE = 60_000L;
+
+    @Param({"100000"})
+    public int events;
+
+    private long[] startMillis;
+    private long[] endMillis;
+    private BusyIntervals intervals;
+    private BusyTimes busy;
+    private long queryFrom;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 2 年分に 10 万件 (1 日あたり約 140 件、15 分〜2 時間) をばらまく。重なりも多い
+        Random random = new Random(42);
+        long origin = 1_700_000_000_000L;
+        long span = 2 * 365 * 24 * 60 * MINUTE;
+        startMillis = new long[events];
+        endMillis = new long[events];
+        intervals = new BusyIntervals();
+        for (int i = 0; i < events; i++) {
+            startMillis[i] = origin + (random.nextLong(span) / MINUTE) * MINUTE;
+            endMillis[i] = startMillis[i] + (15 + random.nextInt(8) * 15) * MINUTE;
+            intervals.add(startMillis[i], endMillis[i]);
+        }
+        busy = intervals.snapshot();
+        queryFrom = (origin + span / 2) / MINUTE;
+    }
+
+    @Benchmark
+    public BusyTimes rebuild() {
+        BusyIntervals rebuilt = new BusyIntervals();
+        for (int i = 0; i < events; i++) {
+            rebuilt.add(startMillis[i], endMillis[i]);
+        }
+        return rebuilt.snapshot();
+    }
+
+    @Benchmark
+    public long[] query() {
+        return busy.freeSlots(queryFrom, queryFrom + 7 * 24 * 60, 30, 20);
+    }
+
+    @Benchmark
+    public BusyTimes update() {
+        int i = next;
+        next = (next + 1) % events;
+        intervals.remove(startMillis[i], endMillis[i]);
+        intervals.add(startMillis[i], endMillis[i]);
+        return intervals.snapshot();
+    }
+}
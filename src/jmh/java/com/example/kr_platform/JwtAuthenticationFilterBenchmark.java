@@ -0,0 +1,135 @@
+package com.example.kr_platform;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.security.Key;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 1 リクエストあたりの JwtAuthenticationFilter のコスト。
+// legacy は以前の実装 (リクエストごとに鍵とパーサーを作り直し、トークンを 2 回検証し、ユーザーを引く) を再現したもの。
+// 新しい実装はクレームから認証情報を組み立てるので、ユーザーの取得は行わない。
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static final FilterChain NO_OP = (request, response) -> { };
+
+    private String bearer;
+    private JwtAuthenticationFilter cached;
+    private JwtAuthenticationFilter uncached;
+    private LegacyFilter legacy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CustomUserDetailsService users = new StubUserDetailsService();
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 3_600_000, 10_000);
+        bearer = "Bearer " + jwtUtil.generateToken(1L, "alice", List.of());
+        TokenRevocationIndex revocations = new TokenRevocationIndex(null);
+        cached = new JwtAuthenticationFilter(jwtUtil, users, revocations, new SimpleMeterRegistry());
+        // キャッシュを無効にした場合 (トークンが毎回異なる場合) の 1 回検証のコスト
+        uncached = new JwtAuthenticationFilter(new JwtUtil(SECRET, 3_600_000, 0), users, revocations, new SimpleMeterRegistry());
+        legacy = new LegacyFilter(users);
+    }
+
+    @TearDown(Level.Invocation)
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public Object cachedVerification() throws Exception {
+        return filter(cached);
+    }
+
+    @Benchmark
+    public Object singleVerification() throws Exception {
+        return filter(uncached);
+    }
+
+    @Benchmark
+    public Object legacyDoubleVerification() throws Exception {
+        return filter(legacy);
+    }
+
+    private Object filter(OncePerRequestFilter filter) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/calendar/events");
+        request.addHeader("Authorization", bearer);
+        filter.doFilter(request, new MockHttpServletResponse(), NO_OP);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private static final class StubUserDetailsService extends CustomUserDetailsService {
+
+        StubUserDetailsService() {
+            super(null, 0, 0);
+        }
+
+        // 以前の実装では毎回 DB を引いていたので、ここはリポジトリ抜きの最小コストになる
+        @Override
+        public AppUserDetails loadUserByUsername(String username) {
+            return new AppUserDetails(1L, "alice", "{noop}password", List.of());
+        }
+    }
+
+    private static final class LegacyFilter extends OncePerRequestFilter {
+
+        private final CustomUserDetailsService users;
+
+        LegacyFilter(CustomUserDetailsService users) {
+            this.users = users;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            String jwt = request.getHeader("Authorization").substring(7);
+            String username = claims(jwt).getSubject();
+            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = users.loadUserByUsername(username);
+                boolean valid = claims(jwt).getSubject().equals(userDetails.getUsername())
+                        && !claims(jwt).getExpiration().before(new Date());
+                if (valid) {
+                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                            userDetails, null, userDetails.getAuthorities());
+                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                }
+            }
+            chain.doFilter(request, response);
+        }
+
+        private static Claims claims(String token) {
+            Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+            return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        }
+    }
+}
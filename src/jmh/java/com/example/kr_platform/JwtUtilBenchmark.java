@@ -0,0 +1,51 @@
+package com.example.kr_platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// JWT の発行と検証のコスト。validateToken は検証済みトークンのキャッシュあり (cached) となし (uncached) を比べる。
+// キャッシュなしは、リクエストごとに異なるトークンが来た場合の署名検証とクレームの解析の分
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static final List<SimpleGrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    private JwtUtil cached;
+    private JwtUtil uncached;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cached = new JwtUtil(SECRET, 900_000, 10_000);
+        uncached = new JwtUtil(SECRET, 900_000, 0);
+        token = cached.generateToken(1L, "alice", AUTHORITIES);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return cached.generateToken(1L, "alice", AUTHORITIES);
+    }
+
+    @Benchmark
+    public Boolean validateTokenCached() {
+        return cached.validateToken(token, "alice");
+    }
+
+    @Benchmark
+    public Boolean validateTokenUncached() {
+        return uncached.validateToken(token, "alice");
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.kr_platform;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// ログインが殺到している間の、ログインのスループットと無関係なエンドポイント (/ping) のレイテンシ分布。
+// hashingThreads=0 はデフォルト (CPU の半分まで) の制限あり、200 は Tomcat のスレッド数相当で実質制限なし。
+// SampleTime モードの ping の p0.99 を比較する。
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoginFloodBenchmark {
+
+    private static final String LOGIN_BODY = "{\"username\":\"flood\",\"password\":\"flood-password\"}";
+
+    @Param({"0", "200"})
+    public int hashingThreads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient http;
+    private URI login;
+    private URI ping;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        // .properties() は application.properties より弱い (auth.hashing.* が既定値のままになる) ので、コマンドライン引数で渡す
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.devtools.restart.enabled=false",
+                        "--google.credentials.allow-ephemeral-key=true",
+                        "--twitter.consumerKey=bench",
+                        "--twitter.consumerSecret=bench",
+                        "--twitter.accessToken=bench",
+                        "--twitter.accessTokenSecret=bench",
+                        "--twitter.bearerToken=bench",
+                        "--auth.hashing.threads=" + hashingThreads,
+                        "--auth.hashing.queue-capacity=" + (hashingThreads == 0 ? 64 : 10_000),
+                        "--auth.hashing.max-queue-wait-ms=" + (hashingThreads == 0 ? 2_000 : 600_000));
+        String base = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+        login = URI.create(base + "/auth/login");
+        ping = URI.create(base + "/ping");
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        HttpRequest register = json(URI.create(base + "/auth/register"), LOGIN_BODY);
+        http.send(register, HttpResponse.BodyHandlers.discarding());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class LoginOutcomes {
+        public long accepted;
+        public long rejected;
+    }
+
+    @Benchmark
+    @Group("flood")
+    @GroupThreads(32)
+    public int login(LoginOutcomes outcomes) throws Exception {
+        int status = http.send(json(login, LOGIN_BODY), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 200) {
+            outcomes.accepted++;
+        } else {
+            outcomes.rejected++;
+        }
+        return status;
+    }
+
+    @Benchmark
+    @Group("flood")
+    @GroupThreads(1)
+    public int ping() throws Exception {
+        return http.send(HttpRequest.newBuilder(ping).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static HttpRequest json(URI uri, String body) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
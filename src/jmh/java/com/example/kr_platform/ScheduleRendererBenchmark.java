@@ -0,0 +1,106 @@
+package com.example.kr_platform;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 1,000 件の予定を一覧にするコスト。
+// legacy は以前の CalendarService (予定ごとに String.format と DateTimeFormatter.ofPattern を使う) を再現したもの。
+// gc プロファイラー (-prof gc) を付けると 1 回あたりの割り当て量も比較できる
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScheduleRendererBenchmark {
+
+    private static final int EVENTS = 1_000;
+    private static final ZoneId ZONE = ZoneId.of("Asia/Tokyo");
+
+    private ScheduleRenderer renderer;
+    private CalendarFanOut.Result fetched;
+    private Instant now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        renderer = new ScheduleRenderer("", "", ZONE.getId());
+        now = Instant.now();
+        List<Event> events = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            EventDateTime start = i % 10 == 0
+                    ? new EventDateTime().setDate(new DateTime(true, now.toEpochMilli(), 0))
+                    : new EventDateTime().setDateTime(new DateTime(now.toEpochMilli() + i * 60_000L));
+            events.add(new Event()
+                    .setSummary("予定 " + i)
+                    .setLocation(i % 3 == 0 ? "会議室" + (i % 7) : null)
+                    .setStart(start));
+        }
+        fetched = new CalendarFanOut.Result(events, List.of(), 1);
+    }
+
+    @Benchmark
+    public String renderDay() {
+        return renderer.render(ScheduleRenderer.Kind.TODAY, fetched, ZONE);
+    }
+
+    @Benchmark
+    public String renderUpcoming() {
+        return renderer.render(ScheduleRenderer.Kind.UPCOMING, fetched, ZONE);
+    }
+
+    @Benchmark
+    public List<String> renderThread() {
+        return renderer.renderThread(ScheduleRenderer.Kind.TODAY, fetched, ZONE, now);
+    }
+
+    @Benchmark
+    public String legacyDay() {
+        StringBuilder result = new StringBuilder();
+        for (Event event : fetched.events()) {
+            DateTime start = event.getStart().getDateTime();
+            if (start == null) {
+                result.append(String.format("• %s (終日)", event.getSummary()));
+            } else {
+                LocalDateTime startTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(start.getValue()), ZONE);
+                result.append(String.format("• %s (%s)",
+                        event.getSummary(),
+                        startTime.format(DateTimeFormatter.ofPattern("HH:mm"))));
+            }
+            if (event.getLocation() != null && !event.getLocation().isEmpty()) {
+                result.append(" 📍" + event.getLocation());
+            }
+            result.append("\n");
+        }
+        return result.toString().trim();
+    }
+
+    @Benchmark
+    public String legacyUpcoming() {
+        StringBuilder result = new StringBuilder();
+        for (Event event : fetched.events()) {
+            DateTime start = event.getStart().getDateTime();
+            if (start == null) {
+                start = event.getStart().getDate();
+            }
+            LocalDateTime startTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(start.getValue()), ZONE);
+            result.append(String.format("• %s (%s)\n",
+                    event.getSummary(),
+                    startTime.format(DateTimeFormatter.ofPattern("MM/dd HH:mm"))));
+        }
+        return result.toString().trim();
+    }
+}
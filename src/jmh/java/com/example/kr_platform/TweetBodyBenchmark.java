@@ -0,0 +1,58 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// ツイート投稿の JSON 本文を作るコスト。
+// jackson は TwitterClient が WebClient に渡す Map を Jackson で書き出す場合 (WebClient の JSON エンコーダーと同じ)、
+// legacy は以前の postTweet (String.replace を 5 回重ねてから文字列を連結する) を再現したもの。
+// legacy は制御文字 (\n \r \t 以外) をエスケープしないため、結果が同じになるのは通常の文字だけ
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TweetBodyBenchmark {
+
+    @Param({"schedule", "quoted"})
+    public String kind;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("📅 今日の予定 (5/1)\n");
+        for (int i = 0; i < 8; i++) {
+            builder.append("・").append(9 + i).append(":00 ");
+            builder.append("quoted".equals(kind) ? "\"定例\" C:\\share\\議事録\t" : "定例ミーティング 会議室A");
+            builder.append('\n');
+        }
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public byte[] jackson() throws Exception {
+        return objectMapper.writeValueAsBytes(Map.of("text", text));
+    }
+
+    @Benchmark
+    public byte[] legacy() {
+        String escapedText = text.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+        return ("{\"text\":\"" + escapedText + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
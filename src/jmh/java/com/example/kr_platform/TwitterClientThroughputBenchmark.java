@@ -0,0 +1,137 @@
+package com.example.kr_platform;
+
+import com.github.scribejava.apis.TwitterApi;
+import com.github.scribejava.core.builder.ServiceBuilder;
+import com.github.scribejava.core.model.OAuth1AccessToken;
+import com.github.scribejava.core.model.OAuthRequest;
+import com.github.scribejava.core.model.Response;
+import com.github.scribejava.core.model.Verb;
+import com.github.scribejava.core.oauth.OAuth10aService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// 旧来の scribejava (同期 I/O をスレッドプールで並べる) と WebClient での投稿スループットを比較する。
+// 応答に一定の遅延を入れたローカルのモックサーバーに対して、1 回の操作で BATCH 件を投稿する。
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TwitterClientThroughputBenchmark {
+
+    private static final int BATCH = 100;
+    private static final byte[] CREATED = "{\"data\":{\"id\":\"1\",\"text\":\"ok\"}}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"50"})
+    public long latencyMillis;
+
+    // 旧実装で投稿に使っていたスレッド数 (同時実行数の上限)
+    @Param({"8"})
+    public int blockingThreads;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String tweetsUrl;
+
+    private OAuth10aService scribe;
+    private OAuth1AccessToken scribeToken;
+    private ExecutorService blockingPool;
+
+    private TwitterClient reactive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/2/tweets", this::respond);
+        server.setExecutor(serverExecutor);
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        tweetsUrl = baseUrl + "/2/tweets";
+
+        scribe = new ServiceBuilder("key").apiSecret("secret").build(TwitterApi.instance());
+        scribeToken = new OAuth1AccessToken("token", "token-secret");
+        blockingPool = Executors.newFixedThreadPool(blockingThreads);
+
+        reactive = new TwitterClient(WebClient.builder(), "key", "secret", "token", "token-secret", baseUrl, 50, 3000, 10_000, new CircuitBreaker("Twitter API", 1_000, 30_000, 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        blockingPool.shutdownNow();
+        scribe.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int blockingScribe() throws Exception {
+        List<Future<Integer>> calls = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String text = "tweet " + i;
+            calls.add(blockingPool.submit(() -> postBlocking(text)));
+        }
+        int ok = 0;
+        for (Future<Integer> call : calls) {
+            if (call.get() == 201) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    @Benchmark
+    public long reactiveWebClient() {
+        return Flux.range(0, BATCH)
+                .flatMap(i -> reactive.post("tweet " + i))
+                .filter(TwitterClient.TweetResult::isSuccessful)
+                .count()
+                .block();
+    }
+
+    private int postBlocking(String text) throws Exception {
+        OAuthRequest request = new OAuthRequest(Verb.POST, tweetsUrl);
+        request.setPayload("{\"text\":\"" + text + "\"}");
+        request.addHeader("Content-Type", "application/json");
+        scribe.signRequest(scribeToken, request);
+        try (Response response = scribe.execute(request)) {
+            response.getBody();
+            return response.getCode();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(201, CREATED.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(CREATED);
+        }
+    }
+}
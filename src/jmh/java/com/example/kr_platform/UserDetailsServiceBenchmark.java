@@ -0,0 +1,95 @@
+package com.example.kr_platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// H2 (アプリと同じ設定、ただし計測専用のメモリ DB) に登録したユーザーを loadUserByUsername で引くコスト。
+// cached はアプリの Bean (ユーザー名ごとのキャッシュあり)、uncached はキャッシュを無効にして毎回 users を引く場合。
+// Hibernate の二次キャッシュは切っておくので、uncached は毎回 SQL を発行する
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserDetailsServiceBenchmark {
+
+    @Param({"10000"})
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private CustomUserDetailsService cached;
+    private CustomUserDetailsService uncached;
+    private String[] usernames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // .properties() は application.properties より弱いので、コマンドライン引数で渡す
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.devtools.restart.enabled=false",
+                        // 下で users を消すので、既定の testdb ではなくこの計測専用の DB を使う
+                        "--spring.datasource.url=jdbc:h2:mem:user-details-bench-" + UUID.randomUUID(),
+                        // Hibernate の二次キャッシュ・クエリキャッシュを通すと uncached も DB を引かなくなる
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                        "--spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                        "--google.credentials.allow-ephemeral-key=true",
+                        "--twitter.consumerKey=bench",
+                        "--twitter.consumerSecret=bench",
+                        "--twitter.accessToken=bench",
+                        "--twitter.accessTokenSecret=bench",
+                        "--twitter.bearerToken=bench");
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        cached = context.getBean(CustomUserDetailsService.class);
+        uncached = new CustomUserDetailsService(userRepository, 0, 0);
+
+        // パスワードのハッシュはこの計測に関係しないので、固定の値を直接入れる
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("delete from users");
+        usernames = new String[users];
+        List<Object[]> rows = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "bench-user-" + i;
+            rows.add(new Object[] {usernames[i], "{noop}password"});
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into users (id, username, password) values (next value for users_seq, ?, ?)", rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public AppUserDetails cached() {
+        return cached.loadUserByUsername(nextUsername());
+    }
+
+    @Benchmark
+    public AppUserDetails uncached() {
+        return uncached.loadUserByUsername(nextUsername());
+    }
+
+    private String nextUsername() {
+        String username = usernames[next];
+        next = next + 1 == usernames.length ? 0 : next + 1;
+        return username;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.kr_platform;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 応答に latencyMillis かかる外部 API を同期的に呼ぶリクエストを concurrency 件同時に送り、全件が返るまでの時間を測る。
+// platform は Tomcat の既定 (200 スレッド)、virtual は virtual プロファイルと同じ仮想スレッドでのリクエスト処理。
+// virtual-bulkhead はさらに外部 API の呼び出しを google.calendar.platform-threads のプラットフォームスレッドで実行する。
+// 外部 API の呼び出しは Google API クライアントと同じ HTTP 実装 (NetHttpTransport) を GoogleCalendarClient.execute 経由で使う
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadLoadBenchmark {
+
+    private static final byte[] EVENTS = "{\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"platform", "virtual", "virtual-bulkhead"})
+    public String mode;
+
+    @Param({"1000"})
+    public int concurrency;
+
+    @Param({"100"})
+    public long latencyMillis;
+
+    private HttpServer upstream;
+    private ExecutorService upstreamExecutor;
+    private ConfigurableApplicationContext context;
+    private HttpClient http;
+    private ExecutorService clientExecutor;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        upstreamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        upstream.createContext("/calendar/v3/calendars/primary/events", this::respond);
+        upstream.setExecutor(upstreamExecutor);
+        upstream.start();
+
+        // .properties() は application.properties より弱いので、コマンドライン引数で渡す
+        context = new SpringApplicationBuilder(DemoApplication.class, SlowUpstreamRoute.class)
+                .run(
+                        "--server.port=0",
+                        "--management.server.port=0",
+                        "--server.tomcat.max-connections=" + (concurrency * 2),
+                        "--spring.devtools.restart.enabled=false",
+                        "--google.credentials.allow-ephemeral-key=true",
+                        "--twitter.consumerKey=bench",
+                        "--twitter.consumerSecret=bench",
+                        "--twitter.accessToken=bench",
+                        "--twitter.accessTokenSecret=bench",
+                        "--twitter.bearerToken=bench",
+                        "--spring.threads.virtual.enabled=" + !mode.equals("platform"),
+                        "--google.calendar.platform-threads=" + (mode.equals("virtual-bulkhead") ? 64 : 0),
+                        "--bench.upstream-url=http://127.0.0.1:" + upstream.getAddress().getPort()
+                                + "/calendar/v3/calendars/primary/events");
+        String token = context.getBean(JwtUtil.class).generateToken(1L, "bench", List.of());
+        request = HttpRequest.newBuilder(URI.create(
+                        "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port") + "/bench/upstream"))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        upstream.stop(0);
+        upstreamExecutor.shutdownNow();
+        clientExecutor.shutdownNow();
+    }
+
+    // 1 回の操作で concurrency 件を同時に送る。失敗した応答 (401 や 503 など) が混ざると速く見えるので、1 件でもあれば止める
+    @Benchmark
+    public int burst() {
+        List<CompletableFuture<HttpResponse<Void>>> calls = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            calls.add(http.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        int ok = 0;
+        for (CompletableFuture<HttpResponse<Void>> call : calls) {
+            int status = call.join().statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("Unexpected status " + status + " (" + ok + " succeeded before it)");
+            }
+            ok++;
+        }
+        return ok;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, EVENTS.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(EVENTS);
+        }
+    }
+
+    // リクエストスレッドで外部 API の応答を待つエンドポイント (ベンチマーク用にだけ登録する)
+    static class SlowUpstreamRoute {
+
+        @Bean
+        RouterFunction<ServerResponse> slowUpstream(GoogleCalendarClient calendarClient, Environment environment) {
+            GenericUrl url = new GenericUrl(environment.getRequiredProperty("bench.upstream-url"));
+            HttpRequestFactory requests = new NetHttpTransport().createRequestFactory();
+            return RouterFunctions.route()
+                    .GET("/bench/upstream", request -> ServerResponse.ok()
+                            .body(calendarClient.execute("bench.upstream",
+                                    () -> requests.buildGetRequest(url).execute().parseAsString())))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.kr_platform;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+// ログイン時に認証マネージャーへ渡すユーザー情報。JWT にユーザー ID を埋め込めるよう ID も持つ
+public class AppUserDetails extends org.springframework.security.core.userdetails.User {
+    
+    private final Long userId;
+    
+    public AppUserDetails(Long userId, String username, String password,
+                          Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.userId = userId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+}
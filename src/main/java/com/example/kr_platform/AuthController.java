@@ -1,14 +1,27 @@
 package com.example.kr_platform;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/auth")
@@ -24,12 +37,27 @@ public class AuthController {
     private PasswordEncoder passwordEncoder;
     
     @Autowired
-    private JwtUtil jwtUtil;
+    private RefreshTokenService refreshTokenService;
     
+    @Autowired
+    private PasswordHashingExecutor hashingExecutor;
+    
+    @Autowired
+    private BulkUserImporter bulkUserImporter;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    // ハッシュ計算は専用プールで行い、Tomcat のスレッドは計算を待たずに解放する
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequest loginRequest) {
+        return hashingExecutor.submit(() -> authenticate(loginRequest));
+    }
+    
+    private ResponseEntity<?> authenticate(LoginRequest loginRequest) {
+        Authentication authentication;
         try {
-            authenticationManager.authenticate(
+            authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                     loginRequest.getUsername(),
                     loginRequest.getPassword()
@@ -39,26 +67,93 @@ public class AuthController {
             return ResponseEntity.badRequest().body("Invalid username or password");
         }
         
-        String token = jwtUtil.generateToken(loginRequest.getUsername());
+        RefreshTokenService.TokenPair tokens = refreshTokenService.issue((AppUserDetails) authentication.getPrincipal());
         
-        Map<String, String> response = new HashMap<>();
-        response.put("token", token);
+        Map<String, Object> response = tokenResponse(tokens);
         response.put("username", loginRequest.getUsername());
         
         return ResponseEntity.ok(response);
     }
     
-    @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest registerRequest) {
-        if (userRepository.existsByUsername(registerRequest.getUsername())) {
-            return ResponseEntity.badRequest().body("Username already exists");
+    // リフレッシュトークンは一度しか使えない。レスポンスの新しいリフレッシュトークンで置き換えること
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshRequest refreshRequest) {
+        if (!refreshRequest.hasRefreshToken()) {
+            return ResponseEntity.badRequest().body("refreshToken is required");
         }
+        RefreshTokenService.TokenPair tokens = refreshTokenService.refresh(refreshRequest.getRefreshToken());
+        return ResponseEntity.ok(tokenResponse(tokens));
+    }
+    
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody RefreshRequest refreshRequest) {
+        if (!refreshRequest.hasRefreshToken()) {
+            return ResponseEntity.badRequest().body("refreshToken is required");
+        }
+        refreshTokenService.logout(refreshRequest.getRefreshToken());
+        return ResponseEntity.noContent().build();
+    }
+    
+    // このユーザーのすべてのログイン (他の端末を含む) のトークンを失効させる
+    @PostMapping("/logout-all")
+    public ResponseEntity<?> logoutAll(Authentication authentication) {
+        refreshTokenService.logoutAll(DigestController.currentUserId(authentication));
+        return ResponseEntity.noContent().build();
+    }
+    
+    private static Map<String, Object> tokenResponse(RefreshTokenService.TokenPair tokens) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", tokens.accessToken());
+        response.put("expiresAt", tokens.accessExpiresAt().toString());
+        response.put("refreshToken", tokens.refreshToken());
+        response.put("refreshExpiresAt", tokens.refreshExpiresAt().toString());
+        return response;
+    }
+    
+    @PostMapping("/register")
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody RegisterRequest registerRequest) {
+        return hashingExecutor.submit(() -> createUser(registerRequest));
+    }
+    
+    // CSV (username,password) または NDJSON ({"username":..,"password":..}) を流し込み、
+    // 1 行ごとの結果を NDJSON で返す。最終行は件数の集計 ({"summary":{...}})
+    @PostMapping(value = "/register/bulk", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<StreamingResponseBody> registerBulk(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            HttpServletRequest request) throws IOException {
+        BulkUserImporter.Format format = contentType.isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? BulkUserImporter.Format.CSV
+                : BulkUserImporter.Format.NDJSON;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        BulkUserImporter.Permit permit = bulkUserImporter.begin();
         
+        StreamingResponseBody body = out -> {
+            try (permit) {
+                BulkUserImporter.Summary summary = bulkUserImporter.importUsers(reader, format, results -> {
+                    for (BulkUserImporter.RowResult result : results) {
+                        out.write(objectMapper.writeValueAsBytes(result));
+                        out.write('\n');
+                    }
+                    out.flush();
+                });
+                out.write(objectMapper.writeValueAsBytes(Map.of("summary", summary)));
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+    
+    private ResponseEntity<?> createUser(RegisterRequest registerRequest) {
         User newUser = new User();
         newUser.setUsername(registerRequest.getUsername());
         newUser.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
         
-        userRepository.save(newUser);
+        // 事前の存在確認はせず、ユーザー名の一意索引に任せる (1 往復減り、確認と INSERT の間の競合もなくなる)
+        try {
+            userRepository.saveAndFlush(newUser);
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.badRequest().body("Username already exists");
+        }
         
         Map<String, String> response = new HashMap<>();
         response.put("message", "User registered successfully");
@@ -66,6 +161,18 @@ public class AuthController {
         
         return ResponseEntity.ok(response);
     }
+    
+    @ExceptionHandler(RefreshTokenService.InvalidRefreshTokenException.class)
+    public ResponseEntity<String> handleInvalidRefreshToken(RefreshTokenService.InvalidRefreshTokenException e) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+    }
+    
+    @ExceptionHandler(PasswordHashingExecutor.SaturatedException.class)
+    public ResponseEntity<String> handleSaturated(PasswordHashingExecutor.SaturatedException e) {
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
 }
 
 class LoginRequest {
@@ -108,4 +215,20 @@ class RegisterRequest {
     public void setPassword(String password) {
         this.password = password;
     }
-}
\ No newline at end of file
+}
+
+class RefreshRequest {
+    private String refreshToken;
+    
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+    
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+    
+    boolean hasRefreshToken() {
+        return refreshToken != null && !refreshToken.isBlank();
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+// CSV / NDJSON のユーザー一覧をチャンク単位で登録する。
+// チャンクごとに既存ユーザー名を 1 回の IN クエリで確認し、パスワードは専用の ForkJoinPool で並列にハッシュし、
+// JDBC のバッチ INSERT でまとめて書き込む。結果は 1 行ごとに呼び出し元へ返す
+@Service
+public class BulkUserImporter {
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record RowResult(long line, String username, Status status, String error) {
+    }
+
+    public record Summary(long created, long duplicates, long invalid) {
+    }
+
+    @FunctionalInterface
+    public interface ResultConsumer {
+        void accept(List<RowResult> results) throws IOException;
+    }
+
+    private static final int ID_BLOCK = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool hashingPool;
+    private final Semaphore imports;
+    private final int chunkSize;
+
+    public BulkUserImporter(
+            JdbcTemplate jdbcTemplate,
+            NamedParameterJdbcTemplate namedJdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            PasswordEncoder passwordEncoder,
+            EntityManagerFactory entityManagerFactory,
+            ObjectMapper objectMapper,
+            @Value("${auth.bulk.chunk-size:1000}") int chunkSize,
+            @Value("${auth.bulk.hash-parallelism:0}") int hashParallelism,
+            @Value("${auth.bulk.max-concurrent-imports:1}") int maxConcurrentImports) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.entityManagerFactory = entityManagerFactory;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        // 0 のときは CPU の半分まで (通常のリクエスト処理の分を残す)
+        this.hashingPool = new ForkJoinPool(hashParallelism > 0
+                ? hashParallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.imports = new Semaphore(maxConcurrentImports);
+    }
+
+    @PreDestroy
+    public void stop() {
+        hashingPool.shutdownNow();
+    }
+
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // レスポンスを書き始める前に枠を確保する。同時に実行できる一括登録の数を超えた場合は 429 (SaturatedException)
+    public Permit begin() {
+        if (!imports.tryAcquire()) {
+            throw new PasswordHashingExecutor.SaturatedException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Another bulk import is running, please retry later");
+        }
+        return imports::release;
+    }
+
+    public Summary importUsers(BufferedReader reader, Format format, ResultConsumer out) throws IOException {
+        long[] counts = new long[Status.values().length];
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && format == Format.CSV && isHeader(line))) {
+                continue;
+            }
+            chunk.add(parse(lineNumber, line, format));
+            if (chunk.size() == chunkSize) {
+                emit(process(chunk), out, counts);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            emit(process(chunk), out, counts);
+        }
+        return new Summary(counts[Status.CREATED.ordinal()], counts[Status.DUPLICATE.ordinal()],
+                counts[Status.INVALID.ordinal()]);
+    }
+
+    private static void emit(List<RowResult> results, ResultConsumer out, long[] counts) throws IOException {
+        for (RowResult result : results) {
+            counts[result.status().ordinal()]++;
+        }
+        out.accept(results);
+    }
+
+    List<RowResult> process(List<Row> chunk) {
+        Map<Long, RowResult> results = new LinkedHashMap<>();
+        // チャンク内の重複は最初の行だけを残す
+        Map<String, Row> candidates = new LinkedHashMap<>();
+        for (Row row : chunk) {
+            results.put(row.line(), null);
+            if (row.error() != null) {
+                results.put(row.line(), new RowResult(row.line(), row.username(), Status.INVALID, row.error()));
+            } else if (candidates.putIfAbsent(row.username(), row) != null) {
+                results.put(row.line(), new RowResult(row.line(), row.username(), Status.DUPLICATE, null));
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            Set<String> existing = new HashSet<>(namedJdbcTemplate.queryForList(
+                    "select username from users where username in (:usernames)",
+                    Map.of("usernames", candidates.keySet()), String.class));
+            List<Row> fresh = new ArrayList<>(candidates.size());
+            for (Row row : candidates.values()) {
+                if (existing.contains(row.username())) {
+                    results.put(row.line(), new RowResult(row.line(), row.username(), Status.DUPLICATE, null));
+                } else {
+                    fresh.add(row);
+                }
+            }
+
+            List<String> hashes = hashingPool.submit(() -> fresh.parallelStream()
+                    .map(row -> passwordEncoder.encode(row.password()))
+                    .toList()).join();
+            insert(fresh, hashes).forEach(result -> results.put(result.line(), result));
+            evictQueryCache();
+        }
+        return List.copyOf(results.values());
+    }
+
+    private List<RowResult> insert(List<Row> rows, List<String> hashes) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Object[]> batch = new ArrayList<>(rows.size());
+                IdBlock ids = new IdBlock();
+                for (int i = 0; i < rows.size(); i++) {
+                    batch.add(new Object[] {ids.next(), rows.get(i).username(), hashes.get(i), now});
+                }
+                jdbcTemplate.batchUpdate(
+                        "insert into users (id, username, password, created_at) values (?, ?, ?, ?)", batch);
+            });
+            return rows.stream()
+                    .map(row -> new RowResult(row.line(), row.username(), Status.CREATED, null))
+                    .toList();
+        } catch (DataIntegrityViolationException e) {
+            // 確認後に別の登録と競合した。このチャンクだけ 1 行ずつ入れ直して重複を特定する
+            List<RowResult> results = new ArrayList<>(rows.size());
+            IdBlock ids = new IdBlock();
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                String hash = hashes.get(i);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                            "insert into users (id, username, password, created_at) values (?, ?, ?, ?)",
+                            ids.next(), row.username(), hash, now));
+                    results.add(new RowResult(row.line(), row.username(), Status.CREATED, null));
+                } catch (DataIntegrityViolationException duplicate) {
+                    results.add(new RowResult(row.line(), row.username(), Status.DUPLICATE, null));
+                }
+            }
+            return results;
+        }
+    }
+
+    // JDBC で直接 INSERT したので、findByUsername のクエリキャッシュに残った「存在しない」結果を捨てる
+    private void evictQueryCache() {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictDefaultQueryRegion();
+    }
+
+    // Hibernate (pooled, allocationSize 50) と同じ規則でシーケンスから ID を割り当てる。
+    // シーケンス値 v は v - 49 から v までの ID を予約したことになる
+    private final class IdBlock {
+        private long next;
+        private long last = -1;
+
+        long next() {
+            if (next > last) {
+                long value = nextSequenceValue();
+                if (value < ID_BLOCK) {
+                    value = nextSequenceValue();
+                }
+                last = value;
+                next = value - ID_BLOCK + 1;
+            }
+            return next++;
+        }
+    }
+
+    private long nextSequenceValue() {
+        return jdbcTemplate.queryForObject("select next value for users_seq", Long.class);
+    }
+
+    private Row parse(long line, String text, Format format) {
+        String username;
+        String password;
+        try {
+            if (format == Format.NDJSON) {
+                JsonNode node = objectMapper.readTree(text);
+                username = node.path("username").asText(null);
+                password = node.path("password").asText(null);
+            } else {
+                List<String> fields = parseCsvLine(text);
+                username = fields.size() > 0 ? fields.get(0) : null;
+                password = fields.size() > 1 ? fields.get(1) : null;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return new Row(line, null, null, "Malformed row");
+        }
+
+        username = username == null ? null : username.trim();
+        if (username == null || username.isEmpty() || username.length() > 255) {
+            return new Row(line, username, null, "username must be 1-255 characters");
+        }
+        if (password == null || password.isEmpty()) {
+            return new Row(line, username, null, "password is required");
+        }
+        return new Row(line, username, password, null);
+    }
+
+    private static boolean isHeader(String line) {
+        return line.trim().toLowerCase().startsWith("username,");
+    }
+
+    // RFC 4180 形式の 1 行 (引用符で囲んだフィールドと "" によるエスケープに対応、改行を含むフィールドは非対応)
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    record Row(long line, String username, String password, String error) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.kr_platform;
+
+import java.util.Arrays;
+
+// 1 カレンダー分の予定の時間帯 (統合前)。区間は (開始分 << 32 | 終了分) の long 1 つに詰めて配列で持つので、
+// long の大小がそのまま (開始, 終了) の順になる。
+// 予定が追加・変更されたら末尾に足すだけにし、削除や参照の前にまとめて並べ直す
+// (大部分が整列済みなので、Arrays.sort は整列済みの部分と末尾をマージするだけで済む)。
+// 統合した BusyTimes は変更があった後に参照されたときだけ作り直す。
+// スレッドセーフではない (CalendarEventCache の SyncState のロックの中で使う)
+final class BusyIntervals {
+
+    // 開始・終了を 32 ビットに収めるため、範囲外 (1970 年より前、6053 年以降) は切り詰める
+    private static final long MAX_MINUTE = Integer.MAX_VALUE;
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private long[] packed = new long[16];
+    private int size;
+    private int sorted;
+    private BusyTimes snapshot = BusyTimes.EMPTY;
+    private boolean changed;
+
+    void add(long startMillis, long endMillis) {
+        long value = pack(startMillis, endMillis);
+        if (value < 0) {
+            return;
+        }
+        if (size == packed.length) {
+            packed = Arrays.copyOf(packed, size * 2);
+        }
+        if (sorted == size && (size == 0 || packed[size - 1] <= value)) {
+            sorted++;
+        }
+        packed[size++] = value;
+        changed = true;
+    }
+
+    // 同じ時間帯の区間が複数あれば 1 つだけ取り除く
+    boolean remove(long startMillis, long endMillis) {
+        long value = pack(startMillis, endMillis);
+        if (value < 0) {
+            return false;
+        }
+        sort();
+        int index = Arrays.binarySearch(packed, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(packed, index + 1, packed, index, size - index - 1);
+        size--;
+        sorted--;
+        changed = true;
+        return true;
+    }
+
+    void clear() {
+        size = 0;
+        sorted = 0;
+        snapshot = BusyTimes.EMPTY;
+        changed = false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    BusyTimes snapshot() {
+        if (changed) {
+            sort();
+            long[] starts = new long[size];
+            long[] ends = new long[size];
+            for (int i = 0; i < size; i++) {
+                starts[i] = packed[i] >>> 32;
+                ends[i] = packed[i] & 0xFFFF_FFFFL;
+            }
+            snapshot = BusyTimes.mergeSorted(starts, ends, size);
+            changed = false;
+        }
+        return snapshot;
+    }
+
+    private void sort() {
+        if (sorted < size) {
+            Arrays.sort(packed, 0, size);
+            sorted = size;
+        }
+    }
+
+    // 開始は切り捨て、終了は切り上げて分にする。長さが 0 の区間は -1
+    static long pack(long startMillis, long endMillis) {
+        long start = Math.clamp(Math.floorDiv(startMillis, MINUTE_MILLIS), 0, MAX_MINUTE);
+        long end = Math.clamp(Math.ceilDiv(endMillis, MINUTE_MILLIS), 0, MAX_MINUTE);
+        return end > start ? start << 32 | end : -1;
+    }
+}
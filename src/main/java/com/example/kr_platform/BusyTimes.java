@@ -0,0 +1,120 @@
+package com.example.kr_platform;
+
+import java.util.Arrays;
+import java.util.List;
+
+// 予定の入っている時間帯を、重なりを統合して開始順に並べたもの。時刻はすべてエポック分 (1970-01-01T00:00Z からの分)。
+// 統合済みなので starts / ends はどちらも昇順になり、二分探索で開始位置を決めてから空き時間を順に辿れる。
+// 不変なので、作った後はロックなしで複数スレッドから参照できる
+public final class BusyTimes {
+
+    static final BusyTimes EMPTY = new BusyTimes(new long[0], new long[0], 0);
+
+    private final long[] starts;
+    private final long[] ends;
+    private final int size;
+
+    private BusyTimes(long[] starts, long[] ends, int size) {
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    // 開始 (同じなら終了) の昇順に並んだ区間 [start, end) を 1 回の走査で統合する。接している区間もまとめる
+    static BusyTimes mergeSorted(long[] starts, long[] ends, int count) {
+        long[] mergedStarts = new long[count];
+        long[] mergedEnds = new long[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size > 0 && starts[i] <= mergedEnds[size - 1]) {
+                mergedEnds[size - 1] = Math.max(mergedEnds[size - 1], ends[i]);
+            } else {
+                mergedStarts[size] = starts[i];
+                mergedEnds[size] = ends[i];
+                size++;
+            }
+        }
+        return new BusyTimes(mergedStarts, mergedEnds, size);
+    }
+
+    // 複数のカレンダーの時間帯を合わせる。カレンダーの数は少ないので、先頭を毎回すべて比べてマージする
+    static BusyTimes union(List<BusyTimes> parts) {
+        if (parts.isEmpty()) {
+            return EMPTY;
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int total = 0;
+        for (BusyTimes part : parts) {
+            total += part.size;
+        }
+        long[] starts = new long[total];
+        long[] ends = new long[total];
+        int[] cursors = new int[parts.size()];
+        for (int n = 0; n < total; n++) {
+            int next = -1;
+            for (int k = 0; k < parts.size(); k++) {
+                BusyTimes part = parts.get(k);
+                if (cursors[k] < part.size
+                        && (next < 0 || part.starts[cursors[k]] < parts.get(next).starts[cursors[next]])) {
+                    next = k;
+                }
+            }
+            BusyTimes part = parts.get(next);
+            starts[n] = part.starts[cursors[next]];
+            ends[n] = part.ends[cursors[next]];
+            cursors[next]++;
+        }
+        return mergeSorted(starts, ends, total);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // [from, to) に予定が 1 つもない
+    public boolean isFree(long from, long to) {
+        int index = firstEndingAfter(from);
+        return index == size || starts[index] >= to;
+    }
+
+    // [from, to) を from から slotMinutes ごとに区切った枠のうち、予定と重ならないものの開始時刻を先頭から最大 limit 件返す。
+    // 予定に重なった場合はその予定の終わった後の枠まで飛ばすので、辿るのは範囲内の予定の数と返す件数の分だけ
+    public long[] freeSlots(long from, long to, int slotMinutes, int limit) {
+        if (slotMinutes <= 0 || limit <= 0) {
+            throw new IllegalArgumentException("slotMinutes and limit must be positive");
+        }
+        long[] slots = new long[(int) Math.min(limit, Math.max(0, (to - from) / slotMinutes))];
+        int found = 0;
+        int index = firstEndingAfter(from);
+        long slot = from;
+        while (found < slots.length && slot + slotMinutes <= to) {
+            while (index < size && ends[index] <= slot) {
+                index++;
+            }
+            if (index < size && starts[index] < slot + slotMinutes) {
+                slot = from + Math.ceilDiv(ends[index] - from, slotMinutes) * slotMinutes;
+                continue;
+            }
+            slots[found++] = slot;
+            slot += slotMinutes;
+        }
+        return found == slots.length ? slots : Arrays.copyOf(slots, found);
+    }
+
+    // minute より後に終わる最初の区間の位置 (なければ size)
+    private int firstEndingAfter(long minute) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+public class CalendarController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int MAX_FREE_SLOTS = 500;
+
+    private final CalendarService calendarService;
+    private final ObjectMapper objectMapper;
+    private final Scheduler calendarScheduler;
+
+    public CalendarController(CalendarService calendarService, ObjectMapper objectMapper, Scheduler calendarScheduler) {
+        this.calendarService = calendarService;
+        this.objectMapper = objectMapper;
+        this.calendarScheduler = calendarScheduler;
+    }
+
+    // 期間内の予定を 1 行 1 件の NDJSON でストリーミングする
+    // from / to は "2024-05-01" (その日の 0 時) または "2024-05-01T09:00:00+09:00" の形式
+    @GetMapping("/calendar/events")
+    public ResponseEntity<?> streamEvents(@RequestParam("from") String from, @RequestParam("to") String to) {
+        Instant timeMin;
+        Instant timeMax;
+        try {
+            timeMin = parseInstant(from);
+            timeMax = parseInstant(to);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Invalid date: " + e.getParsedString());
+        }
+        if (!timeMax.isAfter(timeMin)) {
+            return ResponseEntity.badRequest().body("'to' must be after 'from'");
+        }
+
+        StreamingResponseBody body = out -> writeEvents(out, timeMin, timeMax);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    // [from, to) のうち、全カレンダーで予定の入っていない duration 分の枠を先頭から limit 件返す。
+    // 枠は from から duration ごとに区切る。mine=true なら設定のカレンダーではなく、自分の Google アカウントの primary を見る
+    @GetMapping("/calendar/free-slots")
+    public Mono<ResponseEntity<?>> freeSlots(
+            @RequestParam("from") String from,
+            @RequestParam("to") String to,
+            @RequestParam(value = "duration", defaultValue = "30") int durationMinutes,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "mine", defaultValue = "false") boolean mine,
+            Authentication authentication) {
+        Instant timeMin;
+        Instant timeMax;
+        try {
+            timeMin = parseInstant(from);
+            timeMax = parseInstant(to);
+        } catch (DateTimeParseException e) {
+            return Mono.just(ResponseEntity.badRequest().body("Invalid date: " + e.getParsedString()));
+        }
+        if (!timeMax.isAfter(timeMin)) {
+            return Mono.just(ResponseEntity.badRequest().body("'to' must be after 'from'"));
+        }
+        if (durationMinutes <= 0 || limit <= 0) {
+            return Mono.just(ResponseEntity.badRequest().body("duration and limit must be positive"));
+        }
+        // それより前の予定は保持していないので、空きとして返してしまわないように断る
+        Instant syncedSince = calendarService.syncedSince();
+        if (timeMin.isBefore(syncedSince)) {
+            return Mono.just(ResponseEntity.badRequest().body("'from' must not be before " + syncedSince));
+        }
+
+        List<CalendarSource> sources = mine
+                ? List.of(CalendarSource.primary(GoogleCalendarClient.accountIdOf(DigestController.currentUserId(authentication))))
+                : calendarService.sources();
+        int maxSlots = Math.min(limit, MAX_FREE_SLOTS);
+        // 予定の同期はブロッキングな Google API 呼び出しなので、Tomcat のスレッドではなく calendarScheduler で行う
+        return Mono.<ResponseEntity<?>>fromCallable(() -> {
+                    CalendarService.Availability availability = calendarService.fetchBusy(sources);
+                    return ResponseEntity.ok(freeSlotsResponse(availability, timeMin, timeMax, durationMinutes, maxSlots));
+                })
+                .subscribeOn(calendarScheduler);
+    }
+
+    private static Map<String, Object> freeSlotsResponse(CalendarService.Availability availability, Instant timeMin,
+                                                         Instant timeMax, int durationMinutes, int limit) {
+        // 枠は分単位。from の秒以下は切り上げ、to の秒以下は切り捨てる
+        long from = Math.ceilDiv(timeMin.getEpochSecond(), 60);
+        long to = Math.floorDiv(timeMax.getEpochSecond(), 60);
+        long[] starts = from < to ? availability.busy().freeSlots(from, to, durationMinutes, limit) : new long[0];
+        ZoneId zone = ZoneId.systemDefault();
+        List<Map<String, String>> slots = new ArrayList<>(starts.length);
+        for (long start : starts) {
+            slots.add(Map.of(
+                    "start", OffsetDateTime.ofInstant(Instant.ofEpochSecond(start * 60), zone).toString(),
+                    "end", OffsetDateTime.ofInstant(Instant.ofEpochSecond((start + durationMinutes) * 60), zone).toString()));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("slots", slots);
+        response.put("partial", availability.isPartial());
+        if (availability.isPartial()) {
+            response.put("failures", availability.failures());
+        }
+        return response;
+    }
+
+    // 予定の取得用のスレッドと待ち行列が埋まっている
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleCalendarBusy(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Calendar requests are saturated");
+    }
+
+    private void writeEvents(OutputStream out, Instant timeMin, Instant timeMax) throws IOException {
+        List<CalendarFanOut.Failure> failures = calendarService.streamEvents(timeMin, timeMax, page -> {
+            for (Event event : page) {
+                out.write(objectMapper.writeValueAsBytes(EventView.of(event)));
+                out.write('\n');
+            }
+            out.flush();
+        });
+        // 取得できなかったカレンダーがあれば最終行で知らせる
+        if (!failures.isEmpty()) {
+            out.write(objectMapper.writeValueAsBytes(Map.of("partial", true, "failures", failures)));
+            out.write('\n');
+        }
+    }
+
+    private static Instant parseInstant(String value) {
+        if (value.length() == 10) {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        }
+        return OffsetDateTime.parse(value).toInstant();
+    }
+
+    record EventView(String id, String summary, String start, String end, boolean allDay, String location) {
+
+        static EventView of(Event event) {
+            return new EventView(
+                    event.getId(),
+                    event.getSummary(),
+                    format(event.getStart()),
+                    format(event.getEnd()),
+                    event.getStart() != null && event.getStart().getDateTime() == null,
+                    event.getLocation());
+        }
+
+        private static String format(EventDateTime time) {
+            if (time == null) {
+                return null;
+            }
+            DateTime value = time.getDateTime() != null ? time.getDateTime() : time.getDate();
+            return value != null ? value.toStringRfc3339() : null;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventAttendee;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// カレンダーごとに予定をローカルに保持し、sync token を使って差分だけを取得するキャッシュ。
+// 日単位の結果は (カレンダー, 日付) をキーに件数上限と TTL 付きで保持する。
+// 空き時間の計算用に、予定ありの時間帯も差分同期のたびに予定単位で更新しておく (BusyIntervals)。
+// 変更通知 (CalendarWatchService) を受けているカレンダーは、通知のたびに同期するので TTL を長くする。
+// 同期で保持するのは sync-lookback-days 前以降の予定だけなので、それより前の日は同期状態を使わずに直接取得する。
+@Component
+public class CalendarEventCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CalendarEventCache.class);
+
+    private static final int PAGE_SIZE = 250;
+    private static final int HTTP_GONE = 410;
+
+    private final GoogleCalendarClient calendarClient;
+    private final Duration ttl;
+    private final Duration syncLookback;
+    private final Map<CalendarSource, SyncState> states = new ConcurrentHashMap<>();
+    private final Cache<DayKey, List<Event>> days;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong fullSyncs = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    public CalendarEventCache(
+            GoogleCalendarClient calendarClient,
+            @Value("${calendar.cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${calendar.cache.max-days:512}") long maxDays,
+            @Value("${calendar.cache.sync-lookback-days:1}") long syncLookbackDays) {
+        this.calendarClient = calendarClient;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.syncLookback = Duration.ofDays(syncLookbackDays);
+        this.days = Caffeine.newBuilder()
+                .maximumSize(maxDays)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public List<Event> getEventsForDay(CalendarSource source, LocalDate date, ZoneId zone)
+            throws IOException, GeneralSecurityException {
+        DayKey key = new DayKey(source, date, zone);
+        List<Event> cached = days.getIfPresent(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        long from = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        if (from < syncedSince().toEpochMilli()) {
+            return Collections.unmodifiableList(listDay(source, date, zone));
+        }
+        SyncState state = ensureFresh(source);
+        List<Event> events;
+        // 同期による日単位の結果の削除はロックの中で行うので、読んだ状態のまま同期をまたいで置かないようにロックの中で置く。
+        // invalidate / refresh はロックを取らずに世代を進めてから削除するので、置いた後に世代が進んでいたら取り消す
+        state.lock.lock();
+        try {
+            long generation = state.requestedGeneration.get();
+            events = state.overlapping(from, to, Integer.MAX_VALUE);
+            days.put(key, events);
+            if (state.requestedGeneration.get() != generation) {
+                days.asMap().remove(key, events);
+            }
+        } finally {
+            state.lock.unlock();
+        }
+        return events;
+    }
+
+    public List<Event> getUpcomingEvents(CalendarSource source, Instant from, int maxResults)
+            throws IOException, GeneralSecurityException {
+        SyncState state = states.get(source);
+        if (state != null && state.isFresh(ttl)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            state = ensureFresh(source);
+        }
+        state.lock.lock();
+        try {
+            return state.overlapping(from.toEpochMilli(), Long.MAX_VALUE, maxResults);
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    // 予定ありの時間帯 (同期している全期間、統合済み)。前回から変更がなければ同じインスタンスを返す
+    public BusyTimes getBusyTimes(CalendarSource source) throws IOException, GeneralSecurityException {
+        SyncState state = states.get(source);
+        if (state != null && state.isFresh(ttl)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            state = ensureFresh(source);
+        }
+        state.lock.lock();
+        try {
+            return state.busy.snapshot();
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    // 同期で保持している期間の始まり。フル同期はその時点から sync-lookback-days 前以降を読むので、
+    // いつ同期したかによらず、この時刻以降の予定は揃っている
+    public Instant syncedSince() {
+        return Instant.now().minus(syncLookback);
+    }
+
+    // 1 カレンダー・1 日分の予定を同期状態を使わずに取得する
+    public List<Event> listDay(CalendarSource source, LocalDate date, ZoneId zone)
+            throws IOException, GeneralSecurityException {
+        Calendar calendar = calendarClient.getCalendar(source.accountId());
+        DateTime timeMin = new DateTime(date.atStartOfDay(zone).toInstant().toEpochMilli());
+        DateTime timeMax = new DateTime(date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+        List<Event> events = new ArrayList<>();
+        String pageToken = null;
+        int pages = 0;
+        do {
+            Events page = calendarClient.execute("events.list", calendar.events().list(source.calendarId())
+                    .setTimeMin(timeMin)
+                    .setTimeMax(timeMax)
+                    .setOrderBy("startTime")
+                    .setSingleEvents(true)
+                    .setMaxResults(PAGE_SIZE)
+                    .setPageToken(pageToken)::execute);
+            pages++;
+            if (page.getItems() != null) {
+                events.addAll(page.getItems());
+            }
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+        calendarClient.recordPages("list-day", pages);
+        return events;
+    }
+
+    // 次回の参照時に差分同期を強制する。同期中に呼ばれた場合も、その同期ではなく次の同期で取り込む
+    public void invalidate(CalendarSource source) {
+        SyncState state = states.get(source);
+        if (state != null) {
+            state.requestedGeneration.incrementAndGet();
+        }
+        days.asMap().keySet().removeIf(key -> key.source().equals(source));
+    }
+
+    // 変更通知を受けたときに、参照を待たずに差分同期する (まだ同期していなければフル同期)。
+    // 別のスレッドが同期している最中に通知が届いた場合でも、通知の後に始めた同期が必ず 1 回走る
+    public void refresh(CalendarSource source) throws IOException, GeneralSecurityException {
+        states.computeIfAbsent(source, key -> new SyncState()).requestedGeneration.incrementAndGet();
+        ensureFresh(source);
+    }
+
+    // 変更通知のチャンネルがある間は、同期してから freshFor の間は Google に問い合わせない。
+    // 通知が届かなかった場合に備え、freshFor を過ぎたら通常どおり参照時に差分同期する
+    public void watch(CalendarSource source, Duration freshFor) {
+        states.computeIfAbsent(source, key -> new SyncState()).watchedFreshMillis = freshFor.toMillis();
+    }
+
+    public void unwatch(CalendarSource source) {
+        SyncState state = states.get(source);
+        if (state != null) {
+            state.watchedFreshMillis = 0;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), refreshes.get(), fullSyncs.get(), staleServed.get());
+    }
+
+    private SyncState ensureFresh(CalendarSource source) throws IOException, GeneralSecurityException {
+        SyncState state = states.computeIfAbsent(source, key -> new SyncState());
+        // 同期中は Google API の応答を待つので synchronized は使わない (仮想スレッドがキャリアスレッドを固定したまま待つことになる)
+        state.lock.lock();
+        try {
+            if (!state.isFresh(ttl)) {
+                // この後に invalidate / refresh されたら、この同期では足りないので次の参照で同期し直す
+                long generation = state.requestedGeneration.get();
+                try {
+                    if (sync(source, state)) {
+                        days.asMap().keySet().removeIf(key -> key.source().equals(source));
+                    }
+                    state.syncedGeneration = generation;
+                } catch (IOException | CircuitBreaker.OpenException e) {
+                    // 一度でも同期できていれば、障害中 (サーキットブレーカーが開いている間を含む) は前回までの予定を返す
+                    if (!state.hasSynced()) {
+                        throw e;
+                    }
+                    staleServed.incrementAndGet();
+                    log.debug("Serving cached events for {} while the calendar is unavailable: {}", source, e.getMessage());
+                }
+            }
+        } finally {
+            state.lock.unlock();
+        }
+        return state;
+    }
+
+    private boolean sync(CalendarSource source, SyncState state) throws IOException, GeneralSecurityException {
+        Calendar calendar = calendarClient.getCalendar(source.accountId());
+        String calendarId = source.calendarId();
+        if (state.syncToken == null) {
+            return fullSync(calendar, calendarId, state);
+        }
+        try {
+            refreshes.incrementAndGet();
+            return fetchChanges(calendar, calendarId, state, false);
+        } catch (GoogleJsonResponseException e) {
+            // sync token が失効した場合はフル同期からやり直す
+            if (e.getStatusCode() != HTTP_GONE) {
+                throw e;
+            }
+            return fullSync(calendar, calendarId, state);
+        }
+    }
+
+    private boolean fullSync(Calendar calendar, String calendarId, SyncState state) throws IOException {
+        fullSyncs.incrementAndGet();
+        state.clear();
+        fetchChanges(calendar, calendarId, state, true);
+        return true;
+    }
+
+    private boolean fetchChanges(Calendar calendar, String calendarId, SyncState state, boolean full)
+            throws IOException {
+        Calendar.Events.List request = calendar.events().list(calendarId)
+                .setSingleEvents(true)
+                .setMaxResults(PAGE_SIZE);
+        if (full) {
+            // sync token を使う場合は timeMin との併用ができないため、初回の全件取得時だけ範囲を絞る
+            request.setTimeMin(new DateTime(System.currentTimeMillis() - syncLookback.toMillis()));
+        } else {
+            request.setSyncToken(state.syncToken);
+        }
+
+        boolean changed = false;
+        String pageToken = null;
+        int pages = 0;
+        Events events;
+        do {
+            events = calendarClient.execute("events.list", request.setPageToken(pageToken)::execute);
+            pages++;
+            if (events.getItems() != null) {
+                for (Event event : events.getItems()) {
+                    changed |= state.apply(event);
+                }
+            }
+            pageToken = events.getNextPageToken();
+        } while (pageToken != null);
+        calendarClient.recordPages(full ? "full-sync" : "incremental-sync", pages);
+
+        state.syncToken = events.getNextSyncToken();
+        state.lastSyncedAt = System.currentTimeMillis();
+        return changed;
+    }
+
+    static long startMillis(Event event) {
+        return toMillis(event.getStart());
+    }
+
+    static long endMillis(Event event) {
+        return event.getEnd() != null ? toMillis(event.getEnd()) : startMillis(event);
+    }
+
+    // 時間を占める予定か (「予定なし」にしたものと、自分が辞退したものは除く)
+    static boolean isBusy(Event event) {
+        if ("transparent".equals(event.getTransparency())) {
+            return false;
+        }
+        if (event.getAttendees() != null) {
+            for (EventAttendee attendee : event.getAttendees()) {
+                if (Boolean.TRUE.equals(attendee.getSelf()) && "declined".equals(attendee.getResponseStatus())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long toMillis(EventDateTime time) {
+        DateTime value = time.getDateTime() != null ? time.getDateTime() : time.getDate();
+        if (value.isDateOnly()) {
+            // 終日の予定はシステムのタイムゾーンの 0 時として扱う
+            return LocalDate.parse(value.toStringRfc3339())
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return value.getValue();
+    }
+
+    // staleServed は同期に失敗して前回までの予定を返した回数
+    public record Stats(long hits, long misses, long refreshes, long fullSyncs, long staleServed) {
+    }
+
+    private record DayKey(CalendarSource source, LocalDate date, ZoneId zone) {
+    }
+
+    private record StartKey(long start, String eventId) implements Comparable<StartKey> {
+        @Override
+        public int compareTo(StartKey other) {
+            int byStart = Long.compare(start, other.start);
+            return byStart != 0 ? byStart : eventId.compareTo(other.eventId);
+        }
+    }
+
+    private static final class SyncState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Event> eventsById = new HashMap<>();
+        private final NavigableMap<StartKey, Event> byStart = new TreeMap<>();
+        private final BusyIntervals busy = new BusyIntervals();
+        private long longestDuration;
+        private volatile String syncToken;
+        private volatile long lastSyncedAt;
+        // invalidate / refresh のたびに増える。syncedGeneration はその同期を始めた時点の値で、
+        // 追いついていなければ TTL に関係なく同期し直す (同期中に届いた通知を、その同期の完了で打ち消さない)
+        private final AtomicLong requestedGeneration = new AtomicLong();
+        private volatile long syncedGeneration;
+        // 0 でなければ、変更通知を受けている間の TTL (ミリ秒)
+        private volatile long watchedFreshMillis;
+
+        // 同期が最後まで終わった状態を持っている (フル同期の途中で失敗した場合は false)
+        boolean hasSynced() {
+            return syncToken != null;
+        }
+
+        boolean isFresh(Duration ttl) {
+            long freshFor = watchedFreshMillis > 0 ? watchedFreshMillis : ttl.toMillis();
+            return syncToken != null && syncedGeneration == requestedGeneration.get()
+                    && System.currentTimeMillis() - lastSyncedAt < freshFor;
+        }
+
+        void clear() {
+            eventsById.clear();
+            byStart.clear();
+            busy.clear();
+            longestDuration = 0;
+            syncToken = null;
+        }
+
+        boolean apply(Event event) {
+            Event previous = eventsById.remove(event.getId());
+            if (previous != null) {
+                byStart.remove(new StartKey(startMillis(previous), previous.getId()));
+                if (isBusy(previous)) {
+                    busy.remove(startMillis(previous), endMillis(previous));
+                }
+            }
+            if ("cancelled".equals(event.getStatus()) || event.getStart() == null) {
+                return previous != null;
+            }
+            eventsById.put(event.getId(), event);
+            long start = startMillis(event);
+            byStart.put(new StartKey(start, event.getId()), event);
+            if (isBusy(event)) {
+                busy.add(start, endMillis(event));
+            }
+            longestDuration = Math.max(longestDuration, endMillis(event) - start);
+            return true;
+        }
+
+        // [from, to) と重なる予定を開始時刻順に返す
+        List<Event> overlapping(long from, long to, int limit) {
+            long lowerBound = from - longestDuration;
+            StartKey lower = new StartKey(lowerBound, "");
+            List<Event> result = new ArrayList<>();
+            for (Map.Entry<StartKey, Event> entry : byStart.tailMap(lower, true).entrySet()) {
+                if (entry.getKey().start() >= to || result.size() >= limit) {
+                    break;
+                }
+                Event event = entry.getValue();
+                if (endMillis(event) > from || entry.getKey().start() >= from) {
+                    result.add(event);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
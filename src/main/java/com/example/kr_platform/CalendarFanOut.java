@@ -0,0 +1,161 @@
+package com.example.kr_platform;
+
+import com.google.api.services.calendar.model.Event;
+import io.micrometer.context.ContextExecutorService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 複数カレンダーへの問い合わせを仮想スレッドで並行に実行し、結果を開始時刻順にマージする。
+// 時間内に返らなかったカレンダーは結果から外し、部分的な結果として返す。
+@Component
+public class CalendarFanOut {
+
+    private static final Logger log = LoggerFactory.getLogger(CalendarFanOut.class);
+
+    static final Comparator<Event> BY_START = Comparator
+            .comparingLong(CalendarEventCache::startMillis)
+            .thenComparing(Event::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // 呼び出し元のトレースを引き継ぎ、各カレンダーへの問い合わせがリクエストのスパンの子になるようにする
+    private final ExecutorService executor = ContextExecutorService.wrap(
+            Executors.newVirtualThreadPerTaskExecutor(), ObservabilityConfig.CONTEXT_SNAPSHOTS::captureAll);
+    private final long callTimeoutMillis;
+
+    public CalendarFanOut(@Value("${calendar.fanout.call-timeout-ms:5000}") long callTimeoutMillis) {
+        this.callTimeoutMillis = callTimeoutMillis;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    public interface SourceQuery {
+        List<Event> fetch(CalendarSource source) throws IOException, GeneralSecurityException;
+    }
+
+    public record Failure(CalendarSource source, String reason) {
+    }
+
+    public record Result(List<Event> events, List<Failure> failures, int sourceCount) {
+
+        public boolean isPartial() {
+            return !failures.isEmpty();
+        }
+
+        // どのカレンダーからも取得できなかった
+        public boolean isFailed() {
+            return failures.size() == sourceCount;
+        }
+    }
+
+    // 各カレンダーの結果は開始時刻順であること
+    public Result query(List<CalendarSource> sources, SourceQuery query, int limit) {
+        long deadline = deadlineFromNow();
+        Map<CalendarSource, Future<List<Event>>> calls = new LinkedHashMap<>();
+        for (CalendarSource source : sources) {
+            calls.put(source, executor.submit(() -> query.fetch(source)));
+        }
+
+        List<List<Event>> results = new ArrayList<>(sources.size());
+        List<Failure> failures = new ArrayList<>();
+        calls.forEach((source, call) -> {
+            List<Event> events = await(source, call, deadline, failures);
+            if (events != null) {
+                results.add(events);
+            }
+        });
+        return new Result(merge(results, limit), List.copyOf(failures), sources.size());
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    long deadlineFromNow() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(callTimeoutMillis);
+    }
+
+    // 期限までに結果が返らない、または失敗した場合は failures に記録して null を返す
+    <T> T await(CalendarSource source, Future<T> call, long deadline, List<Failure> failures) {
+        try {
+            return call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            log.warn("Calendar query timed out: {}", source);
+            failures.add(new Failure(source, "timeout"));
+        } catch (ExecutionException e) {
+            log.warn("Calendar query failed: {} - {}", source, e.getCause().getMessage());
+            failures.add(new Failure(source, e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            failures.add(new Failure(source, "interrupted"));
+        }
+        return null;
+    }
+
+    // ソート済みリストの k-way マージ。O(n log k)
+    static List<Event> merge(List<List<Event>> sortedLists, int limit) {
+        if (sortedLists.size() == 1) {
+            List<Event> only = sortedLists.get(0);
+            return only.size() <= limit ? only : only.subList(0, limit);
+        }
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparing(Cursor::head, BY_START));
+        int total = 0;
+        for (List<Event> list : sortedLists) {
+            if (!list.isEmpty()) {
+                heads.add(new Cursor(list));
+                total += list.size();
+            }
+        }
+
+        List<Event> merged = new ArrayList<>(Math.min(total, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Cursor cursor = heads.poll();
+            merged.add(cursor.head());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Cursor {
+        private final List<Event> events;
+        private int position;
+
+        Cursor(List<Event> events) {
+            this.events = events;
+        }
+
+        Event head() {
+            return events.get(position);
+        }
+
+        boolean advance() {
+            return ++position < events.size();
+        }
+    }
+}
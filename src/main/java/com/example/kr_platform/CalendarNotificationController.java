@@ -0,0 +1,36 @@
+package com.example.kr_platform;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+// Google Calendar の変更通知の受け口 (calendar.watch.callback-url)。
+// 通知の本文は空で、内容はヘッダーだけで届く。JWT ではなくチャンネルごとのトークンで確認する
+@RestController
+public class CalendarNotificationController {
+
+    static final String CHANNEL_ID = "X-Goog-Channel-ID";
+    static final String CHANNEL_TOKEN = "X-Goog-Channel-Token";
+    static final String RESOURCE_ID = "X-Goog-Resource-ID";
+    static final String RESOURCE_STATE = "X-Goog-Resource-State";
+
+    private final CalendarWatchService watchService;
+
+    public CalendarNotificationController(CalendarWatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    // 同期は非同期で行い、すぐに 200 を返す (Google は応答が遅いと再送する)
+    @PostMapping("/calendar/notifications")
+    public ResponseEntity<Void> receive(
+            @RequestHeader(CHANNEL_ID) String channelId,
+            @RequestHeader(value = CHANNEL_TOKEN, required = false) String token,
+            @RequestHeader(value = RESOURCE_ID, required = false) String resourceId,
+            @RequestHeader(RESOURCE_STATE) String resourceState) {
+        if (!watchService.onNotification(channelId, token, resourceId, resourceState)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
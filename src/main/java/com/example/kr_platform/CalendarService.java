@@ -1,196 +1,276 @@
 package com.example.kr_platform;
 
-import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
-import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
-import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.api.client.util.DateTime;
-import com.google.api.client.util.store.FileDataStoreFactory;
-import com.google.api.services.calendar.Calendar;
-import com.google.api.services.calendar.CalendarScopes;
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.Events;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.security.GeneralSecurityException;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
 
 @Service
 public class CalendarService {
 
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-    private static final String TOKENS_DIRECTORY_PATH = "tokens";
-    private static final List<String> SCOPES = Collections.singletonList(CalendarScopes.CALENDAR_READONLY);
+    private static final Logger log = LoggerFactory.getLogger(CalendarService.class);
+    private static final int PAGE_SIZE = 250;
 
-    @Value("${google.calendar.credentials.file.path}")
-    private String credentialsFilePath;
+    private final GoogleCalendarClient calendarClient;
+    private final CalendarEventCache eventCache;
+    private final CalendarFanOut fanOut;
+    private final List<CalendarSource> sources;
+    private final ScheduleRenderer renderer;
+    // 同じ日・同じ件数の問い合わせが同時に来たら、全カレンダーへの問い合わせを 1 回だけ行い結果を共有する
+    private final SingleFlight<Lookup, CalendarFanOut.Result> lookups = new SingleFlight<>();
+    // カレンダーの組ごとの、最後に統合した予定ありの時間帯。どのカレンダーにも変更がなければ統合し直さない
+    private final Cache<List<CalendarSource>, MergedBusy> mergedBusy = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
 
-    @Value("${google.calendar.application.name}")
-    private String applicationName;
+    public CalendarService(
+            GoogleCalendarClient calendarClient,
+            CalendarEventCache eventCache,
+            CalendarFanOut fanOut,
+            ScheduleRenderer renderer,
+            @Value("${google.calendar.sources:user:primary}") String sources) {
+        this.calendarClient = calendarClient;
+        this.eventCache = eventCache;
+        this.fanOut = fanOut;
+        this.renderer = renderer;
+        this.sources = CalendarSource.parseList(sources);
+    }
+
+    public String getTodaysEvents() {
+        ZoneId zone = renderer.defaultZone();
+        return renderer.render(ScheduleRenderer.Kind.TODAY, fetchDay(LocalDate.now(zone), zone), zone);
+    }
+    
+    public String getTomorrowsEvents() {
+        ZoneId zone = renderer.defaultZone();
+        return renderer.render(ScheduleRenderer.Kind.TOMORROW, fetchDay(LocalDate.now(zone).plusDays(1), zone), zone);
+    }
+
+    public String getUpcomingEvents(int maxResults) {
+        return renderer.render(ScheduleRenderer.Kind.UPCOMING, fetchUpcoming(maxResults), renderer.defaultZone());
+    }
+
+    // date の 0 時から翌日 0 時まで (zone での) の予定を全カレンダーから集める
+    public CalendarFanOut.Result fetchDay(LocalDate date, ZoneId zone) {
+        CalendarFanOut.Result fetched = lookups.execute(new Lookup(date, zone, Integer.MAX_VALUE),
+                () -> fanOut.query(sources,
+                        source -> eventCache.getEventsForDay(source, date, zone),
+                        Integer.MAX_VALUE));
+
+        log.debug("Found {} events on {} (time zone: {})", fetched.events().size(), date, zone);
+
+        return fetched;
+    }
+
+    // 同時に来た呼び出しは、先行する呼び出しの時刻を基準にした結果を共有する
+    public CalendarFanOut.Result fetchUpcoming(int maxResults) {
+        return lookups.execute(new Lookup(null, null, maxResults), () -> {
+            Instant now = Instant.now();
+            return fanOut.query(sources,
+                    source -> eventCache.getUpcomingEvents(source, now, maxResults),
+                    maxResults);
+        });
+    }
+
+    public List<CalendarSource> sources() {
+        return sources;
+    }
 
-    private Credential getCredentials(final NetHttpTransport HTTP_TRANSPORT) throws IOException {
-        InputStream in = new ClassPathResource(credentialsFilePath).getInputStream();
-        if (in == null) {
-            throw new FileNotFoundException("Resource not found: " + credentialsFilePath);
+    // sources の全カレンダーの予定ありの時間帯を合わせたもの。時間内に取得できなかったカレンダーは failures に入る
+    public Availability fetchBusy(List<CalendarSource> calendars) {
+        long deadline = fanOut.deadlineFromNow();
+        Map<CalendarSource, Future<BusyTimes>> calls = new LinkedHashMap<>();
+        for (CalendarSource source : calendars) {
+            calls.put(source, fanOut.submit(() -> eventCache.getBusyTimes(source)));
         }
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
-
-        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, SCOPES)
-                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
-                .setAccessType("offline")
-                .build();
-        
-        // Load stored credentials instead of prompting for authorization
-        Credential credential = flow.loadCredential("user");
-        if (credential == null) {
-            throw new IOException("認証が必要です。まず /auth/google にアクセスしてGoogleアカウントを認証してください。");
+        List<BusyTimes> parts = new ArrayList<>(calendars.size());
+        List<CalendarFanOut.Failure> failures = new ArrayList<>();
+        calls.forEach((source, call) -> {
+            BusyTimes busy = fanOut.await(source, call, deadline, failures);
+            if (busy != null) {
+                parts.add(busy);
+            }
+        });
+
+        MergedBusy previous = mergedBusy.getIfPresent(calendars);
+        if (previous != null && previous.isMergeOf(parts)) {
+            return new Availability(previous.busy(), List.copyOf(failures));
         }
-        
-        // Debug: Print token information
-        System.out.println("Access Token: " + (credential.getAccessToken() != null ? "Present" : "Null"));
-        System.out.println("Refresh Token: " + (credential.getRefreshToken() != null ? "Present" : "Null"));
-        System.out.println("Expires in: " + credential.getExpiresInSeconds());
-        
-        // Refresh the token if it's expired
-        if (credential.getExpiresInSeconds() != null && credential.getExpiresInSeconds() <= 60) {
-            credential.refreshToken();
+        BusyTimes busy = BusyTimes.union(parts);
+        if (failures.isEmpty()) {
+            mergedBusy.put(List.copyOf(calendars), new MergedBusy(List.copyOf(parts), busy));
         }
-        
-        return credential;
+        return new Availability(busy, List.copyOf(failures));
     }
 
-    public String getTodaysEvents() {
-        return getEventsForDate(LocalDateTime.now(), "今日");
+    // 実行中の問い合わせに相乗りした呼び出しの累計
+    public long coalescedLookups() {
+        return lookups.coalescedCount();
     }
-    
-    public String getTomorrowsEvents() {
-        return getEventsForDate(LocalDateTime.now().plusDays(1), "明日");
+
+    // 1 カレンダー・1 日分の予定をキャッシュを通さずに取得する。
+    // ダイジェストのように多数のアカウントを 1 日 1 回だけ読む場合、同期状態を保持しても再利用されないため
+    public List<Event> listDay(CalendarSource source, LocalDate date, ZoneId zone)
+            throws IOException, GeneralSecurityException {
+        return eventCache.listDay(source, date, zone);
     }
-    
-    private String getEventsForDate(LocalDateTime targetDate, String dateLabel) {
-        try {
-            final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-            Calendar service = new Calendar.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
-                    .setApplicationName(applicationName)
-                    .build();
-
-            LocalDateTime startOfDay = targetDate.withHour(0).withMinute(0).withSecond(0);
-            LocalDateTime endOfDay = targetDate.withHour(23).withMinute(59).withSecond(59);
-            
-            DateTime timeMin = new DateTime(startOfDay.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            DateTime timeMax = new DateTime(endOfDay.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            
-            // Debug: Print date range
-            System.out.println("Searching for events between:");
-            System.out.println("  Start: " + startOfDay + " (TimeZone: " + ZoneId.systemDefault() + ")");
-            System.out.println("  End: " + endOfDay);
-            System.out.println("  TimeMin: " + timeMin);
-            System.out.println("  TimeMax: " + timeMax);
-
-            Events events = service.events().list("primary")
-                    .setTimeMin(timeMin)
-                    .setTimeMax(timeMax)
-                    .setOrderBy("startTime")
-                    .setSingleEvents(true)
-                    .execute();
-            List<Event> items = events.getItems();
-            
-            // Debug: Print event count
-            System.out.println("Found " + items.size() + " events");
-
-            if (items.isEmpty()) {
-                return dateLabel + "の予定はありません。";
-            } else {
-                StringBuilder result = new StringBuilder();
-                for (Event event : items) {
-                    DateTime start = event.getStart().getDateTime();
-                    if (start == null) {
-                        start = event.getStart().getDate();
-                        result.append(String.format("• %s (終日)", event.getSummary()));
-                    } else {
-                        LocalDateTime startTime = LocalDateTime.ofInstant(
-                            java.time.Instant.ofEpochMilli(start.getValue()),
-                            ZoneId.systemDefault()
-                        );
-                        
-                        result.append(String.format("• %s (%s)", 
-                            event.getSummary(),
-                            startTime.format(DateTimeFormatter.ofPattern("HH:mm"))
-                        ));
-                    }
-                    
-                    // Add location if available
-                    if (event.getLocation() != null && !event.getLocation().isEmpty()) {
-                        result.append(" 📍" + event.getLocation());
-                    }
-                    
-                    result.append("\n");
+
+    // これより前の予定はキャッシュに揃っていない (空き時間の計算に使えない)
+    public Instant syncedSince() {
+        return eventCache.syncedSince();
+    }
+
+    public record Availability(BusyTimes busy, List<CalendarFanOut.Failure> failures) {
+
+        public boolean isPartial() {
+            return !failures.isEmpty();
+        }
+    }
+
+    private record MergedBusy(List<BusyTimes> parts, BusyTimes busy) {
+
+        // BusyTimes は変更があると作り直されるので、同じインスタンスなら中身も同じ
+        boolean isMergeOf(List<BusyTimes> current) {
+            if (parts.size() != current.size()) {
+                return false;
+            }
+            for (int i = 0; i < parts.size(); i++) {
+                if (parts.get(i) != current.get(i)) {
+                    return false;
                 }
-                return result.toString().trim();
             }
-        } catch (IOException | GeneralSecurityException e) {
-            e.printStackTrace();
-            return "カレンダーの取得に失敗: " + e.getMessage();
+            return true;
         }
     }
 
-    public String getUpcomingEvents(int maxResults) {
+    // 問い合わせの単位。date が null なら直近の予定 (fetchUpcoming)
+    private record Lookup(LocalDate date, ZoneId zone, int limit) {
+    }
+
+    @FunctionalInterface
+    public interface PageConsumer {
+        void accept(List<Event> page) throws IOException;
+    }
+
+    // [from, to) の予定を全カレンダーから nextPageToken を辿って取得し、開始時刻順にマージしてページ単位で consumer に渡す。
+    // 各カレンダーは現在のページを処理している間に次のページを先読みするので、全件をメモリに載せずに済む。
+    // 時間内に応答しなかったカレンダーはそこで打ち切り、戻り値で返す。
+    public List<CalendarFanOut.Failure> streamEvents(Instant from, Instant to, PageConsumer consumer)
+            throws IOException {
+        List<CalendarFanOut.Failure> failures = new ArrayList<>();
+        List<PagedSource> pagedSources = new ArrayList<>(sources.size());
+        for (CalendarSource source : sources) {
+            pagedSources.add(new PagedSource(source, from, to));
+        }
+
         try {
-            final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-            Calendar service = new Calendar.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
-                    .setApplicationName(applicationName)
-                    .build();
-
-            DateTime now = new DateTime(System.currentTimeMillis());
-            Events events = service.events().list("primary")
-                    .setTimeMin(now)
-                    .setMaxResults(maxResults)
-                    .setOrderBy("startTime")
-                    .setSingleEvents(true)
-                    .execute();
-            List<Event> items = events.getItems();
-
-            if (items.isEmpty()) {
-                return "今後の予定はありません。";
-            } else {
-                StringBuilder result = new StringBuilder();
-                for (Event event : items) {
-                    DateTime start = event.getStart().getDateTime();
-                    if (start == null) {
-                        start = event.getStart().getDate();
-                    }
-                    
-                    LocalDateTime startTime = LocalDateTime.ofInstant(
-                        java.time.Instant.ofEpochMilli(start.getValue()),
-                        ZoneId.systemDefault()
-                    );
-                    
-                    result.append(String.format("• %s (%s)\n", 
-                        event.getSummary(),
-                        startTime.format(DateTimeFormatter.ofPattern("MM/dd HH:mm"))
-                    ));
+            PriorityQueue<PagedSource> heads = new PriorityQueue<>(
+                    Comparator.comparing(PagedSource::head, CalendarFanOut.BY_START));
+            for (PagedSource pagedSource : pagedSources) {
+                if (pagedSource.advance(failures)) {
+                    heads.add(pagedSource);
                 }
-                return result.toString().trim();
             }
-        } catch (IOException | GeneralSecurityException e) {
-            e.printStackTrace();
-            return "カレンダーの取得に失敗: " + e.getMessage();
+
+            List<Event> batch = new ArrayList<>(PAGE_SIZE);
+            while (!heads.isEmpty()) {
+                PagedSource next = heads.poll();
+                batch.add(next.head());
+                if (batch.size() == PAGE_SIZE) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(PAGE_SIZE);
+                }
+                if (next.advance(failures)) {
+                    heads.add(next);
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        } finally {
+            pagedSources.forEach(PagedSource::cancel);
+        }
+        return failures;
+    }
+
+    // 1 カレンダー分のページ送りの状態。次ページの取得は常に 1 つ先まで非同期で進めておく
+    private final class PagedSource {
+        private final CalendarSource source;
+        private final Instant from;
+        private final Instant to;
+        private Iterator<Event> items;
+        private Event head;
+        private Future<Events> pending;
+        private long pendingDeadline;
+        private int pages;
+
+        PagedSource(CalendarSource source, Instant from, Instant to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            fetch(null);
+        }
+
+        Event head() {
+            return head;
+        }
+
+        boolean advance(List<CalendarFanOut.Failure> failures) {
+            while (items == null || !items.hasNext()) {
+                if (pending == null) {
+                    return false;
+                }
+                Events page = fanOut.await(source, pending, pendingDeadline, failures);
+                pending = null;
+                if (page == null) {
+                    return false;
+                }
+                if (page.getNextPageToken() != null) {
+                    fetch(page.getNextPageToken());
+                }
+                items = page.getItems() != null ? page.getItems().iterator() : null;
+            }
+            head = items.next();
+            return true;
+        }
+
+        void cancel() {
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            calendarClient.recordPages("stream", pages);
+        }
+
+        private void fetch(String pageToken) {
+            pendingDeadline = fanOut.deadlineFromNow();
+            pages++;
+            pending = fanOut.submit(() -> calendarClient.execute("events.list", calendarClient.getCalendar(source.accountId()).events()
+                    .list(source.calendarId())
+                    .setTimeMin(new DateTime(from.toEpochMilli()))
+                    .setTimeMax(new DateTime(to.toEpochMilli()))
+                    .setOrderBy("startTime")
+                    .setSingleEvents(true)
+                    .setMaxResults(PAGE_SIZE)
+                    .setPageToken(pageToken)::execute));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package com.example.kr_platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// 取得対象のカレンダー。どの Google アカウントの認証情報で、どのカレンダー ID を読むかの組
+public record CalendarSource(String accountId, String calendarId) {
+
+    static final String PRIMARY_CALENDAR_ID = "primary";
+
+    private static final Pattern ACCOUNT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public CalendarSource {
+        if (!isValidAccountId(accountId)) {
+            throw new IllegalArgumentException("Invalid account id: " + accountId);
+        }
+        if (calendarId == null || calendarId.isBlank()) {
+            throw new IllegalArgumentException("Calendar id must not be empty");
+        }
+    }
+
+    public static CalendarSource primary(String accountId) {
+        return new CalendarSource(accountId, PRIMARY_CALENDAR_ID);
+    }
+
+    // "account:calendarId" 形式。アカウントを省略した場合は既定のアカウントを使う
+    public static CalendarSource parse(String spec) {
+        String trimmed = spec.trim();
+        int separator = trimmed.indexOf(':');
+        if (separator < 0) {
+            return new CalendarSource(GoogleCalendarClient.DEFAULT_USER_ID, trimmed);
+        }
+        return new CalendarSource(trimmed.substring(0, separator), trimmed.substring(separator + 1));
+    }
+
+    public static List<CalendarSource> parseList(String specs) {
+        List<CalendarSource> sources = new ArrayList<>();
+        for (String spec : specs.split(",")) {
+            if (!spec.isBlank()) {
+                sources.add(parse(spec));
+            }
+        }
+        return List.copyOf(sources);
+    }
+
+    public static boolean isValidAccountId(String accountId) {
+        return accountId != null && ACCOUNT_ID.matcher(accountId).matches();
+    }
+
+    @Override
+    public String toString() {
+        return accountId + ":" + calendarId;
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.kr_platform;
+
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Channel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Google Calendar の変更通知 (events.watch のチャンネル) を管理する。
+// google.calendar.sources の各カレンダーにチャンネルを張り、期限が近づいたら張り直す。
+// 通知 (/calendar/notifications) を受けたら、そのカレンダーだけを calendarScheduler で差分同期するので、
+// 予定の参照時には同期済みになっていて、変更のない間は Google に問い合わせない。
+// チャンネルはこのインスタンスのメモリにだけ持つ。calendar.watch.callback-url はこのインスタンスに届くアドレスにすること
+@Component
+public class CalendarWatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CalendarWatchService.class);
+
+    static final String WEB_HOOK = "web_hook";
+    // チャンネルを張った直後に届く確認の通知。予定の変更ではない
+    static final String STATE_SYNC = "sync";
+
+    private final GoogleCalendarClient calendarClient;
+    private final CalendarEventCache eventCache;
+    private final CalendarService calendarService;
+    private final Scheduler calendarScheduler;
+    private final String callbackUrl;
+    private final Duration channelTtl;
+    private final Duration renewBefore;
+    private final Duration fallbackTtl;
+
+    private final Map<String, WatchChannel> channels = new ConcurrentHashMap<>();
+    private final Map<CalendarSource, WatchChannel> channelsBySource = new ConcurrentHashMap<>();
+    // 同期待ちのカレンダー。待っている間に届いた通知は、その同期にまとめる
+    private final Set<CalendarSource> pendingResyncs = ConcurrentHashMap.newKeySet();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    public CalendarWatchService(
+            GoogleCalendarClient calendarClient,
+            CalendarEventCache eventCache,
+            CalendarService calendarService,
+            Scheduler calendarScheduler,
+            @Value("${calendar.watch.callback-url:}") String callbackUrl,
+            @Value("${calendar.watch.channel-ttl-seconds:604800}") long channelTtlSeconds,
+            @Value("${calendar.watch.renew-before-seconds:3600}") long renewBeforeSeconds,
+            @Value("${calendar.watch.fallback-ttl-seconds:3600}") long fallbackTtlSeconds) {
+        this.calendarClient = calendarClient;
+        this.eventCache = eventCache;
+        this.calendarService = calendarService;
+        this.calendarScheduler = calendarScheduler;
+        this.callbackUrl = callbackUrl;
+        this.channelTtl = Duration.ofSeconds(channelTtlSeconds);
+        this.renewBefore = Duration.ofSeconds(renewBeforeSeconds);
+        this.fallbackTtl = Duration.ofSeconds(fallbackTtlSeconds);
+    }
+
+    // callback-url が空なら通知を使わず、これまでどおり参照時に TTL で同期する
+    public boolean isEnabled() {
+        return !callbackUrl.isBlank();
+    }
+
+    // チャンネルのないカレンダーと、期限が renew-before 以内に迫ったカレンダーにチャンネルを張る
+    @Scheduled(fixedDelayString = "${calendar.watch.renew-interval-ms:300000}")
+    public void renewChannels() {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (CalendarSource source : calendarService.sources()) {
+            WatchChannel current = channelsBySource.get(source);
+            if (current != null && current.expiresAtMillis() - now > renewBefore.toMillis()) {
+                continue;
+            }
+            WatchChannel opened;
+            try {
+                opened = open(source);
+            } catch (IOException | GeneralSecurityException | CircuitBreaker.OpenException e) {
+                log.warn("Failed to open a calendar watch channel for {}: {}", source, e.getMessage());
+                if (current != null && current.expiresAtMillis() <= now) {
+                    // 期限が切れた。次に張れるまでは参照時の同期に戻す
+                    channels.remove(current.id());
+                    channelsBySource.remove(source);
+                    eventCache.unwatch(source);
+                }
+                continue;
+            }
+            channels.put(opened.id(), opened);
+            channelsBySource.put(source, opened);
+            eventCache.watch(source, fallbackTtl);
+            if (current != null) {
+                // 新しいチャンネルを張ってから古いものを止めるので、張り替えの間の変更も取りこぼさない
+                close(current);
+            } else {
+                // チャンネルを張る前の変更は通知されないので、一度同期しておく
+                requestResync(source);
+            }
+            log.info("Watching {} for changes until {}", source, Instant.ofEpochMilli(opened.expiresAtMillis()));
+        }
+    }
+
+    // Google から届いた通知。知らないチャンネルか、トークンが合わなければ false
+    public boolean onNotification(String channelId, String token, String resourceId, String resourceState) {
+        WatchChannel channel = channelId != null ? channels.get(channelId) : null;
+        if (channel == null || token == null
+                || !MessageDigest.isEqual(channel.token().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))
+                || (channel.resourceId() != null && !Objects.equals(channel.resourceId(), resourceId))) {
+            return false;
+        }
+        notifications.incrementAndGet();
+        if (!STATE_SYNC.equals(resourceState)) {
+            requestResync(channel.source());
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void stopChannels() {
+        channelsBySource.values().forEach(this::close);
+        channelsBySource.clear();
+        channels.clear();
+    }
+
+    public int activeChannels() {
+        return channelsBySource.size();
+    }
+
+    public long notificationCount() {
+        return notifications.get();
+    }
+
+    public long resyncCount() {
+        return resyncs.get();
+    }
+
+    List<WatchChannel> channels() {
+        return List.copyOf(channelsBySource.values());
+    }
+
+    private WatchChannel open(CalendarSource source) throws IOException, GeneralSecurityException {
+        String id = UUID.randomUUID().toString();
+        String token = newToken();
+        Channel request = new Channel()
+                .setId(id)
+                .setType(WEB_HOOK)
+                .setAddress(callbackUrl)
+                .setToken(token)
+                .setParams(Map.of("ttl", String.valueOf(channelTtl.toSeconds())));
+        Calendar calendar = calendarClient.getCalendar(source.accountId());
+        Channel opened = calendarClient.execute("events.watch",
+                calendar.events().watch(source.calendarId(), request)::execute);
+        // Google は要求より短い期限を返すことがある
+        long expiresAt = opened.getExpiration() != null
+                ? opened.getExpiration()
+                : System.currentTimeMillis() + channelTtl.toMillis();
+        return new WatchChannel(id, opened.getResourceId(), token, source, expiresAt);
+    }
+
+    // 止められなくても、期限が来れば Google 側で消える。それまでに届く通知はチャンネルを知らないので無視する
+    private void close(WatchChannel channel) {
+        channels.remove(channel.id());
+        try {
+            Calendar calendar = calendarClient.getCalendar(channel.source().accountId());
+            calendarClient.execute("channels.stop", calendar.channels()
+                    .stop(new Channel().setId(channel.id()).setResourceId(channel.resourceId()))::execute);
+        } catch (IOException | GeneralSecurityException | CircuitBreaker.OpenException e) {
+            log.debug("Failed to stop the calendar watch channel {}: {}", channel.id(), e.getMessage());
+        }
+    }
+
+    private void requestResync(CalendarSource source) {
+        if (!pendingResyncs.add(source)) {
+            return;
+        }
+        try {
+            calendarScheduler.schedule(() -> resync(source));
+        } catch (RejectedExecutionException e) {
+            // 同期用のスレッドが埋まっている。次の参照時に同期されるようにしておく
+            pendingResyncs.remove(source);
+            eventCache.invalidate(source);
+        }
+    }
+
+    private void resync(CalendarSource source) {
+        // 同期を始める前に外すので、同期中に届いた通知は次の同期で取り込まれる
+        pendingResyncs.remove(source);
+        try {
+            eventCache.refresh(source);
+            resyncs.incrementAndGet();
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Failed to sync {} after a change notification: {}", source, e.getMessage());
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    record WatchChannel(String id, String resourceId, String token, CalendarSource source, long expiresAtMillis) {
+    }
+}
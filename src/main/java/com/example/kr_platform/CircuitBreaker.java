@@ -0,0 +1,114 @@
+package com.example.kr_platform;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// 外部 API ごとのサーキットブレーカー。
+// 連続して failureThreshold 回失敗すると OPEN になり、openMillis の間は呼び出しを許可しない (すぐに失敗させる)。
+// 期間が過ぎると HALF_OPEN になり、halfOpenProbes 件だけ試しに通す。すべて成功すれば CLOSED に戻り、1 件でも失敗すれば再び OPEN。
+// 状態の更新は短い計算だけなので synchronized で守る (中で I/O はしない)
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenProbes) {
+        this(name, failureThreshold, openMillis, halfOpenProbes, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenProbes, LongSupplier nanoClock) {
+        if (failureThreshold <= 0 || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("failureThreshold and halfOpenProbes must be positive");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.nanoClock = nanoClock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // 呼び出してよければ true。true を返した呼び出しは必ず onSuccess / onFailure のどちらかで結果を返すこと
+    public synchronized boolean tryAcquire() {
+        return switch (currentState()) {
+            case CLOSED -> true;
+            case HALF_OPEN -> probesStarted < halfOpenProbes && ++probesStarted > 0;
+            case OPEN -> false;
+        };
+    }
+
+    // tryAcquire が false の場合に投げる
+    public OpenException openException() {
+        return new OpenException(name, retryAfterMillis());
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++probesSucceeded >= halfOpenProbes) {
+                state = State.CLOSED;
+            }
+        }
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openUntilNanos = nanoClock.getAsLong() + openNanos;
+            consecutiveFailures = 0;
+        }
+    }
+
+    public synchronized State state() {
+        return currentState();
+    }
+
+    // OPEN の間は HALF_OPEN に移るまでの時間、それ以外は 0
+    public synchronized long retryAfterMillis() {
+        if (currentState() != State.OPEN) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(openUntilNanos - nanoClock.getAsLong()) + 1;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        return state;
+    }
+
+    public static class OpenException extends RuntimeException {
+
+        private final long retryAfterMillis;
+
+        public OpenException(String name, long retryAfterMillis) {
+            super(name + " is unavailable (circuit open)");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
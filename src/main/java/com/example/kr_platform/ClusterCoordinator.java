@@ -0,0 +1,166 @@
+package com.example.kr_platform;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+// 複数インスタンスで動かすための調整役。アプリの DB だけを使う (ロック用のサーバーは要らない)。
+// - 各インスタンスは cluster_nodes に heartbeat を書き、lease の期間内に書いているものを生きているとみなす
+// - リーダーは cluster_leases の lease を条件付き UPDATE で取得・更新したインスタンス。後片付けなど全体で 1 つだけ動かす仕事に使う
+// - ユーザーや予約などの仕事は、キーのハッシュで生きているインスタンスに振り分ける (rendezvous hashing。増減しても動くキーが少ない)
+// - 振り分けが切り替わる瞬間の重複は claimOnce (job_claims への INSERT) で防ぐ
+// 時刻はすべて DB の current_timestamp で書き、期限も SQL の中で計算するので、インスタンス間で時計がずれていても判定は変わらない
+@Component
+public class ClusterCoordinator {
+
+    static final String LEADER_LEASE = "leader";
+    // current_timestamp にミリ秒のパラメーターを足し引きする
+    private static final String MILLIS = "cast(? as bigint) * interval '0.001' second";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final Duration leaseTtl;
+    private final Duration claimRetention;
+
+    private volatile List<String> liveNodes;
+    // リーダーでいられる期限 (System.nanoTime 基準)。更新に失敗し続けたら DB の lease より先に自分から降りる
+    private volatile long leaderUntilNanos;
+
+    public ClusterCoordinator(
+            JdbcTemplate jdbcTemplate,
+            @Value("${cluster.node-id:}") String nodeId,
+            @Value("${cluster.lease-ttl-ms:30000}") long leaseTtlMillis,
+            @Value("${cluster.claim-retention-days:7}") long claimRetentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        // 再起動すると別のノードとして参加する (前回の送信中の仕事は止まったノードのものとして扱われる)
+        this.nodeId = nodeId.isEmpty() ? defaultNodeId() : nodeId + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.leaseTtl = Duration.ofMillis(leaseTtlMillis);
+        this.claimRetention = Duration.ofDays(claimRetentionDays);
+        this.liveNodes = List.of(this.nodeId);
+    }
+
+    private static String defaultNodeId() {
+        // "pid@hostname"
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PostConstruct
+    public void join() {
+        jdbcTemplate.update("insert into cluster_nodes (node_id, started_at, heartbeat_at) "
+                + "values (?, current_timestamp, current_timestamp)", nodeId);
+        heartbeat();
+    }
+
+    @PreDestroy
+    public void leave() {
+        jdbcTemplate.update("delete from cluster_leases where name = ? and holder = ?", LEADER_LEASE, nodeId);
+        jdbcTemplate.update("delete from cluster_nodes where node_id = ?", nodeId);
+        leaderUntilNanos = 0;
+    }
+
+    // lease の期間より十分短い間隔で呼ぶ (既定は 1/3)
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (jdbcTemplate.update("update cluster_nodes set heartbeat_at = current_timestamp where node_id = ?", nodeId) == 0) {
+            // 止まっていたと判断されて消されていた場合は参加し直す
+            jdbcTemplate.update("insert into cluster_nodes (node_id, started_at, heartbeat_at) "
+                    + "values (?, current_timestamp, current_timestamp)", nodeId);
+        }
+        liveNodes = jdbcTemplate.queryForList(
+                "select node_id from cluster_nodes where heartbeat_at > current_timestamp - " + MILLIS + " order by node_id",
+                String.class, leaseTtl.toMillis());
+        renewLeadership();
+        if (isLeader()) {
+            cleanUp();
+        }
+    }
+
+    private void renewLeadership() {
+        long requestedAt = System.nanoTime();
+        int updated = jdbcTemplate.update(
+                "update cluster_leases set holder = ?, expires_at = current_timestamp + " + MILLIS + " "
+                        + "where name = ? and (holder = ? or expires_at < current_timestamp)",
+                nodeId, leaseTtl.toMillis(), LEADER_LEASE, nodeId);
+        if (updated == 0) {
+            try {
+                updated = jdbcTemplate.update("insert into cluster_leases (name, holder, expires_at) "
+                                + "values (?, ?, current_timestamp + " + MILLIS + ")",
+                        LEADER_LEASE, nodeId, leaseTtl.toMillis());
+            } catch (DuplicateKeyException e) {
+                // 他のインスタンスが保持している
+            }
+        }
+        leaderUntilNanos = updated == 1 ? requestedAt + leaseTtl.toNanos() : 0;
+    }
+
+    // 止まったインスタンスの行と、保持期間を過ぎた実行記録を消す
+    private void cleanUp() {
+        jdbcTemplate.update("delete from cluster_nodes where heartbeat_at < current_timestamp - " + MILLIS,
+                leaseTtl.multipliedBy(10).toMillis());
+        jdbcTemplate.update("delete from job_claims where claimed_at < current_timestamp - " + MILLIS,
+                claimRetention.toMillis());
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public boolean isLeader() {
+        return leaderUntilNanos - System.nanoTime() > 0;
+    }
+
+    public List<String> liveNodes() {
+        return liveNodes;
+    }
+
+    // key の仕事をこのインスタンスが受け持つか。生きているノードのうち hash(ノード, key) が最大のものが受け持つ
+    public boolean owns(String key) {
+        return nodeId.equals(ownerOf(key, liveNodes));
+    }
+
+    static String ownerOf(String key, List<String> nodes) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        long keyHash = mix(key.hashCode());
+        for (String node : nodes) {
+            long score = mix(mix(node.hashCode()) ^ keyHash);
+            if (owner == null || score > best) {
+                owner = node;
+                best = score;
+            }
+        }
+        return owner;
+    }
+
+    // SplitMix64 の最終段
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // (job, slot) を最初に記録したインスタンスだけが true を受け取る
+    public boolean claimOnce(String job, String slot) {
+        try {
+            jdbcTemplate.update("insert into job_claims (job, slot, node_id, claimed_at) values (?, ?, ?, current_timestamp)",
+                    job, slot, nodeId);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // 実行に失敗したときに記録を消し、次の実行でやり直せるようにする
+    public void release(String job, String slot) {
+        jdbcTemplate.update("delete from job_claims where job = ? and slot = ? and node_id = ?", job, slot, nodeId);
+    }
+}
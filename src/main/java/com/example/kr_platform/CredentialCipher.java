@@ -0,0 +1,89 @@
+package com.example.kr_platform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// DB に保存する認証情報の暗号化 (AES-GCM)。値ごとにランダムな IV を使い、IV と暗号文をまとめて Base64 にする。
+// 行の ID (アカウント ID など) を追加認証データにするので、暗号文を別の行に写しても復号できない
+@Component
+public class CredentialCipher {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialCipher.class);
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKeySpec key;
+    private final SecureRandom random = new SecureRandom();
+
+    // encodedKey は Base64 の 128 / 192 / 256 ビット鍵。
+    // 鍵が空なら起動しない。allowEphemeralKey (dev プロファイル) のときだけ、起動ごとに乱数の鍵を作る
+    // (再起動すると保存済みの認証情報は読めなくなるので、メモリ上の DB でだけ使う)
+    public CredentialCipher(
+            @Value("${google.credentials.encryption-key:}") String encodedKey,
+            @Value("${google.credentials.allow-ephemeral-key:false}") boolean allowEphemeralKey) {
+        byte[] bytes;
+        if (encodedKey.isBlank()) {
+            if (!allowEphemeralKey) {
+                throw new IllegalStateException("google.credentials.encryption-key is not set. "
+                        + "Set KR_PLATFORM_CREDENTIALS_KEY, or run with the dev profile to use a throwaway key");
+            }
+            log.warn("google.credentials.encryption-key is not set; using a throwaway key for this process");
+            bytes = new byte[32];
+            random.nextBytes(bytes);
+        } else {
+            bytes = Base64.getDecoder().decode(encodedKey.trim());
+        }
+        if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32) {
+            throw new IllegalArgumentException("google.credentials.encryption-key must be a Base64-encoded 128, 192 or 256-bit key");
+        }
+        this.key = new SecretKeySpec(bytes, "AES");
+    }
+
+    public String encrypt(String plaintext, String context) {
+        if (plaintext == null) {
+            return null;
+        }
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(context.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(IV_BYTES + encrypted.length)
+                    .put(iv)
+                    .put(encrypted)
+                    .array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    }
+
+    public String decrypt(String ciphertext, String context) {
+        if (ciphertext == null) {
+            return null;
+        }
+        byte[] bytes = Base64.getDecoder().decode(ciphertext);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 0, IV_BYTES));
+            cipher.updateAAD(context.getBytes(StandardCharsets.UTF_8));
+            return new String(cipher.doFinal(bytes, IV_BYTES, bytes.length - IV_BYTES), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            // 鍵が違う、または値が改ざんされている
+            throw new IllegalStateException("Could not decrypt the stored credential for " + context, e);
+        }
+    }
+}
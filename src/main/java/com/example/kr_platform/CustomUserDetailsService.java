@@ -1,28 +1,68 @@
 package com.example.kr_platform;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 
+// ユーザー情報はユーザー名ごとに短時間キャッシュする。
+// トークンの失効は RefreshTokenService (DB と TokenRevocationIndex) で扱うので、ここではキャッシュを捨てるだけ
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     
-    @Autowired
-    private UserRepository userRepository;
+    private final UserRepository userRepository;
+    private final Cache<String, CachedUser> users;
+    
+    public CustomUserDetailsService(
+            UserRepository userRepository,
+            @Value("${auth.user-cache.max-size:10000}") long maxSize,
+            @Value("${auth.user-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
     
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    public AppUserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        CachedUser user = users.getIfPresent(username);
+        if (user == null) {
+            User entity = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+            user = new CachedUser(entity.getId(), entity.getUsername(), entity.getPassword());
+            users.put(username, user);
+        }
         
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
+        // 認証後に eraseCredentials() でパスワードが消されるため、キャッシュの中身は渡さず毎回作る
+        return new AppUserDetails(
+                user.id(),
+                user.username(),
+                user.password(),
                 new ArrayList<>()
         );
     }
-}
\ No newline at end of file
+    
+    // ログイン成功時、保存されているハッシュの方式やコストが古ければ作り直したハッシュが渡される
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        users.invalidate(user.getUsername());
+        Long userId = user instanceof AppUserDetails details ? details.getUserId() : null;
+        return new AppUserDetails(userId, user.getUsername(), newPassword, user.getAuthorities());
+    }
+    
+    public void evict(Long userId) {
+        users.asMap().values().removeIf(user -> user.id().equals(userId));
+    }
+    
+    private record CachedUser(Long id, String username, String password) {
+    }
+}
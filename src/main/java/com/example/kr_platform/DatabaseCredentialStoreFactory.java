@@ -0,0 +1,211 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.AbstractDataStore;
+import com.google.api.client.util.store.AbstractDataStoreFactory;
+import com.google.api.client.util.store.DataStore;
+import com.google.api.client.util.store.FileDataStoreFactory;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Google の OAuth 認証情報 (StoredCredential) を google_credentials テーブルに保存する DataStoreFactory。
+// 以前の tokens/ ディレクトリ (FileDataStoreFactory) と違い、複数インスタンスで同じ認証情報を使える。
+// 読み込みはメモリのキャッシュを通し (なければ DB から読んで載せる)、トークンは CredentialCipher で暗号化して保存する。
+// 書き込みはキャッシュに載せたときの version を条件にする (楽観ロック)
+@Component
+public class DatabaseCredentialStoreFactory extends AbstractDataStoreFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseCredentialStoreFactory.class);
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final GoogleCredentialRepository repository;
+    private final CredentialCipher cipher;
+    // 他のインスタンスが更新した内容は、書き込みが衝突したときか、キャッシュの期限が切れたときに読み直す
+    private final Cache<String, Loaded> cache;
+    private final String legacyTokensDirectory;
+
+    public DatabaseCredentialStoreFactory(
+            GoogleCredentialRepository repository,
+            CredentialCipher cipher,
+            @Value("${google.credentials.cache-ttl-seconds:300}") long cacheTtlSeconds,
+            @Value("${google.credentials.cache-max-size:10000}") long cacheMaxSize,
+            @Value("${google.credentials.legacy-tokens-dir:tokens}") String legacyTokensDirectory) {
+        this.repository = repository;
+        this.cipher = cipher;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .maximumSize(cacheMaxSize)
+                .build();
+        this.legacyTokensDirectory = legacyTokensDirectory;
+    }
+
+    // 以前の tokens/ ディレクトリに残っている認証情報のうち、DB にないものを取り込む (ファイルは消さない)
+    @PostConstruct
+    public void importLegacyTokens() throws IOException {
+        if (legacyTokensDirectory.isBlank()) {
+            return;
+        }
+        File directory = new File(legacyTokensDirectory);
+        if (!new File(directory, StoredCredential.DEFAULT_DATA_STORE_ID).isFile()) {
+            return;
+        }
+        DataStore<StoredCredential> legacy = StoredCredential.getDefaultDataStore(new FileDataStoreFactory(directory));
+        DataStore<StoredCredential> store = StoredCredential.getDefaultDataStore(this);
+        int imported = 0;
+        for (String accountId : legacy.keySet()) {
+            if (CalendarSource.isValidAccountId(accountId) && !repository.existsById(accountId)) {
+                store.set(accountId, legacy.get(accountId));
+                imported++;
+            }
+        }
+        if (imported > 0) {
+            log.info("Imported {} Google credentials from {}. The directory is no longer used and can be deleted",
+                    imported, directory.getAbsolutePath());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <V extends Serializable> DataStore<V> createDataStore(String id) {
+        if (!StoredCredential.DEFAULT_DATA_STORE_ID.equals(id)) {
+            throw new IllegalArgumentException("Unsupported data store: " + id);
+        }
+        return (DataStore<V>) new CredentialStore(id);
+    }
+
+    private Loaded load(String accountId) {
+        // 同じアカウントを同時に読んだ場合も DB への問い合わせは 1 回 (ない場合はキャッシュしない)
+        return cache.get(accountId, id -> repository.findById(id).map(this::decode).orElse(null));
+    }
+
+    private void write(String accountId, StoredCredential credential) throws IOException {
+        Loaded current = cache.getIfPresent(accountId);
+        for (int attempt = 1; ; attempt++) {
+            GoogleCredential row;
+            if (current != null) {
+                row = new GoogleCredential(accountId, GoogleCalendarClient.userIdOf(accountId));
+                row.setVersion(current.version());
+            } else {
+                row = repository.findById(accountId)
+                        .orElseGet(() -> new GoogleCredential(accountId, GoogleCalendarClient.userIdOf(accountId)));
+            }
+            row.setAccessToken(cipher.encrypt(credential.getAccessToken(), accountId));
+            row.setRefreshToken(cipher.encrypt(credential.getRefreshToken(), accountId));
+            row.setExpirationTimeMilliseconds(credential.getExpirationTimeMilliseconds());
+            try {
+                GoogleCredential saved = repository.saveAndFlush(row);
+                cache.put(accountId, new Loaded(copy(credential), saved.getVersion()));
+                return;
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                // 他のインスタンスが先に書き込んだ。同じ認可のトークンを先に更新していたなら、そちらをそのまま使う
+                cache.invalidate(accountId);
+                current = load(accountId);
+                if (current != null && supersedes(current.credential(), credential)) {
+                    return;
+                }
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    throw new IOException("Failed to store the Google credential for " + accountId, e);
+                }
+            }
+        }
+    }
+
+    private static boolean supersedes(StoredCredential stored, StoredCredential written) {
+        return Objects.equals(stored.getRefreshToken(), written.getRefreshToken())
+                && stored.getExpirationTimeMilliseconds() != null
+                && (written.getExpirationTimeMilliseconds() == null
+                        || stored.getExpirationTimeMilliseconds() >= written.getExpirationTimeMilliseconds());
+    }
+
+    private Loaded decode(GoogleCredential row) {
+        StoredCredential credential = new StoredCredential()
+                .setAccessToken(cipher.decrypt(row.getAccessToken(), row.getAccountId()))
+                .setRefreshToken(cipher.decrypt(row.getRefreshToken(), row.getAccountId()))
+                .setExpirationTimeMilliseconds(row.getExpirationTimeMilliseconds());
+        return new Loaded(credential, row.getVersion());
+    }
+
+    // 呼び出し元が渡したインスタンスを後から書き換えても、キャッシュの内容は変わらないようにする
+    private static StoredCredential copy(StoredCredential credential) {
+        return new StoredCredential()
+                .setAccessToken(credential.getAccessToken())
+                .setRefreshToken(credential.getRefreshToken())
+                .setExpirationTimeMilliseconds(credential.getExpirationTimeMilliseconds());
+    }
+
+    private record Loaded(StoredCredential credential, long version) {
+    }
+
+    private final class CredentialStore extends AbstractDataStore<StoredCredential> {
+
+        CredentialStore(String id) {
+            super(DatabaseCredentialStoreFactory.this, id);
+        }
+
+        @Override
+        public StoredCredential get(String key) {
+            Loaded loaded = load(key);
+            return loaded != null ? loaded.credential() : null;
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return load(key) != null;
+        }
+
+        @Override
+        public DataStore<StoredCredential> set(String key, StoredCredential value) throws IOException {
+            write(key, value);
+            return this;
+        }
+
+        @Override
+        public DataStore<StoredCredential> delete(String key) {
+            repository.deleteById(key);
+            cache.invalidate(key);
+            return this;
+        }
+
+        @Override
+        public DataStore<StoredCredential> clear() {
+            repository.deleteAllInBatch();
+            cache.invalidateAll();
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return (int) repository.count();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return repository.findAll().stream()
+                    .map(GoogleCredential::getAccountId)
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+
+        @Override
+        public Collection<StoredCredential> values() {
+            return repository.findAll().stream()
+                    .map(row -> decode(row).credential())
+                    .toList();
+        }
+    }
+}
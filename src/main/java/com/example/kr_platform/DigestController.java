@@ -0,0 +1,171 @@
+package com.example.kr_platform;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// 毎日のダイジェストの購読設定と、各ユーザーの Google / Twitter の連携
+@RestController
+@RequestMapping("/digest")
+public class DigestController {
+
+    private final UserRepository userRepository;
+    private final TwitterCredentialRepository twitterCredentials;
+    private final DigestPipeline pipeline;
+    private final GoogleOAuthStates oauthStates;
+    private final CredentialCipher cipher;
+    private final Set<String> admins;
+
+    public DigestController(UserRepository userRepository, TwitterCredentialRepository twitterCredentials,
+                            DigestPipeline pipeline, GoogleOAuthStates oauthStates, CredentialCipher cipher,
+                            @Value("${digest.admins:}") String admins) {
+        this.userRepository = userRepository;
+        this.twitterCredentials = twitterCredentials;
+        this.pipeline = pipeline;
+        this.oauthStates = oauthStates;
+        this.cipher = cipher;
+        this.admins = Arrays.stream(admins.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @PutMapping("/subscription")
+    @Transactional
+    public ResponseEntity<?> subscribe(@RequestBody SubscriptionRequest request, Authentication authentication) {
+        if (request.getTimeZone() != null && !request.getTimeZone().isEmpty()) {
+            try {
+                ZoneId.of(request.getTimeZone());
+            } catch (DateTimeException e) {
+                return ResponseEntity.badRequest().body("Invalid time zone: " + request.getTimeZone());
+            }
+        }
+        User user = userRepository.findById(currentUserId(authentication)).orElseThrow();
+        user.setDigestEnabled(request.isEnabled());
+        user.setTimeZone(request.getTimeZone() == null || request.getTimeZone().isEmpty() ? null : request.getTimeZone());
+        return ResponseEntity.ok(Map.of("enabled", user.isDigestEnabled(),
+                "timeZone", user.getTimeZone() == null ? "" : user.getTimeZone()));
+    }
+
+    // Twitter の開発者ポータルなどで取得した、このアプリ用のアクセストークンを登録する
+    @PutMapping("/twitter")
+    @Transactional
+    public ResponseEntity<?> linkTwitter(@RequestBody TwitterLinkRequest request, Authentication authentication) {
+        if (isBlank(request.getAccessToken()) || isBlank(request.getAccessTokenSecret())) {
+            return ResponseEntity.badRequest().body("accessToken and accessTokenSecret are required");
+        }
+        Long userId = currentUserId(authentication);
+        String context = TwitterCredential.cipherContext(userId);
+        String accessToken = cipher.encrypt(request.getAccessToken(), context);
+        String accessTokenSecret = cipher.encrypt(request.getAccessTokenSecret(), context);
+        TwitterCredential credential = twitterCredentials.findById(userId)
+                .orElseGet(() -> new TwitterCredential(userId, accessToken, accessTokenSecret));
+        credential.setAccessToken(accessToken);
+        credential.setAccessTokenSecret(accessTokenSecret);
+        twitterCredentials.save(credential);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/twitter")
+    public ResponseEntity<?> unlinkTwitter(Authentication authentication) {
+        twitterCredentials.deleteById(currentUserId(authentication));
+        return ResponseEntity.noContent().build();
+    }
+
+    // ブラウザで開く Google の認証 URL。state は自分のアカウント ID に結び付けた使い捨ての値で、
+    // コールバックではこの値からだけ保存先のアカウントを決める (他人のアカウントとして保存させない)
+    @GetMapping("/google")
+    public Map<String, String> linkGoogle(Authentication authentication) {
+        String state = oauthStates.issue(GoogleCalendarClient.accountIdOf(currentUserId(authentication)));
+        return Map.of("authorizationUrl", "/auth/google?state=" + state);
+    }
+
+    // 全ユーザー分の投稿を起こすので digest.admins に載っているユーザーだけが実行できる
+    @PostMapping("/run")
+    public ResponseEntity<?> run(Authentication authentication) {
+        if (!admins.contains(authentication.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!pipeline.runInBackground()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Digest is already running");
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<?> status(Authentication authentication) {
+        if (!admins.contains(authentication.getName())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return pipeline.status()
+                .<ResponseEntity<?>>map(run -> ResponseEntity.ok(Map.of("running", pipeline.isRunning(), "run", run)))
+                .orElseGet(() -> ResponseEntity.ok(Map.of("running", pipeline.isRunning())));
+    }
+
+    static Long currentUserId(Authentication authentication) {
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof JwtPrincipal jwtPrincipal) {
+            return jwtPrincipal.userId();
+        }
+        if (principal instanceof AppUserDetails userDetails) {
+            return userDetails.getUserId();
+        }
+        throw new IllegalStateException("Unsupported principal: " + principal.getClass().getName());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
+
+class SubscriptionRequest {
+    private boolean enabled;
+    private String timeZone;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getTimeZone() {
+        return timeZone;
+    }
+    
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
+}
+
+class TwitterLinkRequest {
+    private String accessToken;
+    private String accessTokenSecret;
+    
+    public String getAccessToken() {
+        return accessToken;
+    }
+    
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+    
+    public String getAccessTokenSecret() {
+        return accessTokenSecret;
+    }
+    
+    public void setAccessTokenSecret(String accessTokenSecret) {
+        this.accessTokenSecret = accessTokenSecret;
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.kr_platform;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.calendar.model.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 登録ユーザーごとの「今日の予定」ダイジェスト。
+// 予定の取得 → 本文の組み立て → 投稿 を別々の段にして上限付きキューで繋ぎ、各段は決まった数の仮想スレッドで動かす。
+// Google と Twitter への呼び出しはそれぞれ RequestPacer で毎秒の回数を抑え、クォータを超えないようにする。
+// 429 が返ったら、その API への呼び出しは全ワーカーで Retry-After (Twitter は x-rate-limit-reset) まで止める。
+// 複数インスタンスでは各インスタンスがユーザー ID のハッシュで受け持つユーザーだけを処理し、
+// ユーザー・日ごとの claim で同じ日のダイジェストを二重に投稿しない
+@Component
+public class DigestPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(DigestPipeline.class);
+
+    private static final Duration POST_TIMEOUT = Duration.ofSeconds(30);
+    // 429 に Retry-After が付いていない場合に止める時間
+    private static final long DEFAULT_RATE_LIMIT_PAUSE_MILLIS = 1000;
+
+    private final TwitterCredentialRepository targets;
+    private final CalendarService calendarService;
+    private final ScheduleRenderer renderer;
+    private final TwitterClient twitterClient;
+    private final ClusterCoordinator cluster;
+    private final CredentialCipher cipher;
+    private final int fetchWorkers;
+    private final int renderWorkers;
+    private final int postWorkers;
+    private final int queueCapacity;
+    private final int pageSize;
+    private final boolean skipEmpty;
+    private final int maxPostAttempts;
+    private final long maxRateLimitWaitMillis;
+    private final RequestPacer calendarPacer;
+    private final RequestPacer twitterPacer;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile List<DigestStage<?, ?>> activeStages = List.of();
+    private volatile Run lastRun;
+
+    public DigestPipeline(
+            TwitterCredentialRepository targets,
+            CalendarService calendarService,
+            ScheduleRenderer renderer,
+            TwitterClient twitterClient,
+            ClusterCoordinator cluster,
+            CredentialCipher cipher,
+            @Value("${digest.fetch-workers:32}") int fetchWorkers,
+            @Value("${digest.render-workers:2}") int renderWorkers,
+            @Value("${digest.post-workers:16}") int postWorkers,
+            @Value("${digest.queue-capacity:256}") int queueCapacity,
+            @Value("${digest.page-size:500}") int pageSize,
+            @Value("${digest.skip-empty:true}") boolean skipEmpty,
+            @Value("${digest.post-max-attempts:3}") int maxPostAttempts,
+            @Value("${digest.max-rate-limit-wait-ms:60000}") long maxRateLimitWaitMillis,
+            @Value("${digest.calendar.requests-per-second:50}") double calendarRequestsPerSecond,
+            @Value("${digest.twitter.posts-per-second:50}") double twitterPostsPerSecond) {
+        this.targets = targets;
+        this.calendarService = calendarService;
+        this.renderer = renderer;
+        this.twitterClient = twitterClient;
+        this.cluster = cluster;
+        this.cipher = cipher;
+        this.fetchWorkers = fetchWorkers;
+        this.renderWorkers = renderWorkers;
+        this.postWorkers = postWorkers;
+        this.queueCapacity = queueCapacity;
+        this.pageSize = pageSize;
+        this.skipEmpty = skipEmpty;
+        this.maxPostAttempts = maxPostAttempts;
+        this.maxRateLimitWaitMillis = maxRateLimitWaitMillis;
+        this.calendarPacer = new RequestPacer(calendarRequestsPerSecond);
+        this.twitterPacer = new RequestPacer(twitterPostsPerSecond);
+    }
+
+    // digest.cron が "-" (既定) なら定期実行しない
+    @Scheduled(cron = "${digest.cron:-}")
+    public void scheduledRun() {
+        if (run().isEmpty()) {
+            log.warn("Digest skipped: previous run is still in progress");
+        }
+    }
+
+    // 実行中なら何もせず empty を返す
+    public Optional<Run> run() {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(execute());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // バックグラウンドで実行する。実行中なら false
+    public boolean runInBackground() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread.ofVirtual().name("digest-run").start(() -> {
+            try {
+                execute();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    // 実行中なら各段の途中経過、そうでなければ前回の結果
+    public Optional<Run> status() {
+        List<DigestStage<?, ?>> stages = activeStages;
+        if (!stages.isEmpty()) {
+            return Optional.of(new Run(null, null, -1, stages.stream().map(DigestStage::metrics).toList()));
+        }
+        return Optional.ofNullable(lastRun);
+    }
+
+    private Run execute() {
+        Instant startedAt = Instant.now();
+        BlockingQueue<Object> toFetch = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> toRender = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> toPost = new ArrayBlockingQueue<>(queueCapacity);
+        DigestStage<DigestTarget, Fetched> fetch = new DigestStage<>("fetch", fetchWorkers, toFetch, toRender, this::fetch);
+        DigestStage<Fetched, Rendered> render = new DigestStage<>("render", renderWorkers, toRender, toPost, this::render);
+        DigestStage<Rendered, Rendered> post = new DigestStage<>("post", postWorkers, toPost, null, this::post);
+        List<DigestStage<?, ?>> stages = List.of(fetch, render, post);
+        activeStages = stages;
+
+        long enqueued = 0;
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("digest-", 0).factory())) {
+            stages.forEach(stage -> stage.start(executor));
+            try {
+                enqueued = enqueueTargets(toFetch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                putEnd(toFetch);
+            }
+        } finally {
+            activeStages = List.of();
+        }
+
+        Run run = new Run(startedAt, Instant.now(), enqueued, stages.stream().map(DigestStage::metrics).toList());
+        lastRun = run;
+        log.info("Digest finished: {}", run);
+        return run;
+    }
+
+    // 対象ユーザーを ID 順にページ単位で読み、受け持ちのものを取得段のキューに積む (キューが一杯なら空くまで待つ)
+    private long enqueueTargets(BlockingQueue<Object> toFetch) throws InterruptedException {
+        long count = 0;
+        long afterId = 0;
+        while (true) {
+            List<DigestTarget> page = targets.findDigestTargets(afterId, PageRequest.of(0, pageSize));
+            for (DigestTarget target : page) {
+                if (!cluster.owns(target.tenantKey())) {
+                    continue;
+                }
+                toFetch.put(target);
+                count++;
+            }
+            if (page.size() < pageSize) {
+                return count;
+            }
+            afterId = page.get(page.size() - 1).userId();
+        }
+    }
+
+    private static void putEnd(BlockingQueue<Object> queue) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                queue.put(DigestStage.END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 他のインスタンスがその日の分を処理済み (または処理中) なら読み飛ばす。
+    // 取得・整形・投稿に失敗した場合は claim を戻し、次の実行でやり直せるようにする
+    private Fetched fetch(DigestTarget target) throws Exception {
+        ZoneId zone = renderer.zoneOf(target.timeZone());
+        LocalDate today = LocalDate.now(zone);
+        if (!cluster.claimOnce(target.tenantKey(), today.toString())) {
+            return null;
+        }
+        try {
+            calendarPacer.acquire();
+            List<Event> events = calendarService.listDay(CalendarSource.primary(target.googleAccountId()), today, zone);
+            if (events.isEmpty() && skipEmpty) {
+                return null;
+            }
+            return new Fetched(target, today, zone, events);
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() == 429) {
+                pause(calendarPacer, retryAfterMillis(e));
+            }
+            cluster.release(target.tenantKey(), today.toString());
+            throw e;
+        } catch (Exception e) {
+            cluster.release(target.tenantKey(), today.toString());
+            throw e;
+        }
+    }
+
+    private Rendered render(Fetched fetched) {
+        try {
+            List<String> parts = renderer.renderThread(ScheduleRenderer.Kind.TODAY,
+                    new CalendarFanOut.Result(fetched.events(), List.of(), 1), fetched.zone(), Instant.now());
+            return new Rendered(fetched.target(), fetched.date(), parts);
+        } catch (RuntimeException e) {
+            // まだ何も投稿していない
+            cluster.release(fetched.target().tenantKey(), fetched.date().toString());
+            throw e;
+        }
+    }
+
+    // スレッドの 2 件目以降は直前のツイートへの返信にする
+    private Rendered post(Rendered rendered) throws InterruptedException {
+        DigestTarget target = rendered.target();
+        // トークンは DB に暗号化して保存してあるので、投稿する直前に復号する
+        String context = TwitterCredential.cipherContext(target.userId());
+        OAuth1Signer signer;
+        try {
+            signer = twitterClient.signerFor(cipher.decrypt(target.accessToken(), context),
+                    cipher.decrypt(target.accessTokenSecret(), context));
+        } catch (RuntimeException e) {
+            cluster.release(target.tenantKey(), rendered.date().toString());
+            throw e;
+        }
+        String replyTo = null;
+        for (int i = 0; i < rendered.parts().size(); i++) {
+            TwitterClient.TweetResult result = postWithRetry(signer, rendered.parts().get(i), replyTo);
+            if (!result.isSuccessful()) {
+                // 1 件も投稿できていなければやり直せる。途中まで投稿したスレッドと、投稿されたか分からないものはやり直さない
+                if (i == 0 && !result.outcomeUnknown()) {
+                    cluster.release(target.tenantKey(), rendered.date().toString());
+                }
+                throw new IllegalStateException(result.describe());
+            }
+            replyTo = result.tweetId();
+            if (replyTo == null && rendered.parts().size() > 1) {
+                throw new IllegalStateException("No tweet id in response: " + result.body());
+            }
+        }
+        return rendered;
+    }
+
+    private TwitterClient.TweetResult postWithRetry(OAuth1Signer signer, String text, String replyTo)
+            throws InterruptedException {
+        TwitterClient.TweetResult result = null;
+        for (int attempt = 1; attempt <= maxPostAttempts; attempt++) {
+            twitterPacer.acquire();
+            try {
+                result = twitterClient.post(signer, text, replyTo).block(POST_TIMEOUT);
+            } catch (RuntimeException e) {
+                // 応答がタイムアウトした場合。送ったかどうか分からないので再試行しない
+                result = TwitterClient.TweetResult.unknownOutcome(e);
+            }
+            if (result.isSuccessful() || !result.isRetryable()) {
+                break;
+            }
+            long wait = retryWaitMillis(result, attempt);
+            if (wait > maxRateLimitWaitMillis) {
+                break;
+            }
+            if (result.statusCode() == 429) {
+                // 他のワーカーの投稿も止める。このワーカーは次の twitterPacer.acquire() で同じ時刻まで待つ
+                pause(twitterPacer, wait);
+                continue;
+            }
+            TimeUnit.MILLISECONDS.sleep(wait);
+        }
+        return result;
+    }
+
+    // 止める時間は max-rate-limit-wait-ms までにする (それより先のリセットは次の実行に任せる)
+    private void pause(RequestPacer pacer, long millis) {
+        pacer.pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(millis, maxRateLimitWaitMillis)));
+    }
+
+    // Google は Retry-After を秒数で返す。日時形式や付いていない場合は既定の時間にする
+    private static long retryAfterMillis(HttpResponseException e) {
+        String retryAfter = e.getHeaders().getRetryAfter();
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException ignored) {
+                // 日時形式
+            }
+        }
+        return DEFAULT_RATE_LIMIT_PAUSE_MILLIS;
+    }
+
+    // 429 はこのユーザーの枠が戻るまで待つ。それ以外は試行回数に応じて 1 秒ずつ延ばす
+    private static long retryWaitMillis(TwitterClient.TweetResult result, int attempt) {
+        if (result.statusCode() == 429 && result.rateLimitResetEpochSeconds() != null) {
+            return Math.max(0, result.rateLimitResetEpochSeconds() * 1000 - System.currentTimeMillis());
+        }
+        return 1000L * attempt;
+    }
+
+    private record Fetched(DigestTarget target, LocalDate date, ZoneId zone, List<Event> events) {
+
+        @Override
+        public String toString() {
+            return target.toString();
+        }
+    }
+
+    private record Rendered(DigestTarget target, LocalDate date, List<String> parts) {
+
+        @Override
+        public String toString() {
+            return target.toString();
+        }
+    }
+
+    // 実行中の途中経過では startedAt / finishedAt は null、targets は -1
+    public record Run(Instant startedAt, Instant finishedAt, long targets, List<DigestStage.Metrics> stages) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.kr_platform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// ダイジェストのパイプラインの 1 段。決まった数のワーカーが入力キューから取り出して処理し、結果を次段のキューに積む。
+// キューは上限付きなので、後段が詰まると前段の put が待たされる (上流の API を先に使い切らない)。
+// 入力の終わりは END で伝え、最後に抜けたワーカーが次段へ END を渡す
+final class DigestStage<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(DigestStage.class);
+
+    static final Object END = new Object();
+
+    // null を返すとその項目は次段に渡さない (skipped として数える)
+    @FunctionalInterface
+    interface Step<I, O> {
+        O apply(I item) throws Exception;
+    }
+
+    private final String name;
+    private final int workers;
+    private final BlockingQueue<Object> input;
+    private final BlockingQueue<Object> output;
+    private final Step<I, O> step;
+    private final AtomicInteger running;
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    DigestStage(String name, int workers, BlockingQueue<Object> input, BlockingQueue<Object> output, Step<I, O> step) {
+        this.name = name;
+        this.workers = workers;
+        this.input = input;
+        this.output = output;
+        this.step = step;
+        this.running = new AtomicInteger(workers);
+    }
+
+    void start(ExecutorService executor) {
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work() {
+        try {
+            while (true) {
+                Object item = input.take();
+                if (item == END) {
+                    // 同じ段の他のワーカーにも終わりを伝える
+                    input.put(END);
+                    break;
+                }
+                O result = process((I) item);
+                if (result != null && output != null) {
+                    long blockedFrom = System.nanoTime();
+                    output.put(result);
+                    blockedNanos.add(System.nanoTime() - blockedFrom);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (running.decrementAndGet() == 0 && output != null) {
+                try {
+                    output.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private O process(I item) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            O result = step.apply(item);
+            if (result == null) {
+                skipped.increment();
+            } else {
+                processed.increment();
+            }
+            return result;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Digest {} failed for {}: {}", name, item, e.getMessage());
+            return null;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            busyNanos.add(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    Metrics metrics() {
+        long handled = processed.sum() + skipped.sum() + failed.sum();
+        return new Metrics(name, workers, processed.sum(), skipped.sum(), failed.sum(),
+                handled == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(busyNanos.sum()) / (double) handled,
+                TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()),
+                input.size());
+    }
+
+    // blockedMillis は次段のキューが一杯で待たされた合計時間 (次段がボトルネックかどうかの目安)
+    record Metrics(String stage, int workers, long processed, long skipped, long failed,
+                   double avgMillis, long maxMillis, long blockedMillis, int queueDepth) {
+    }
+}
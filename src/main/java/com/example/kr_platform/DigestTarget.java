@@ -0,0 +1,23 @@
+package com.example.kr_platform;
+
+// ダイジェストを投稿するユーザー 1 人分。timeZone が null なら schedule.time-zone を使う。
+// accessToken / accessTokenSecret は DB のままの暗号化した値 (TwitterCredential.cipherContext で復号する)
+public record DigestTarget(Long userId, String username, String timeZone, String accessToken,
+                           String accessTokenSecret) {
+
+    // インスタンス間の振り分けと、日ごとの二重投稿防止 (job_claims) のキー
+    public String tenantKey() {
+        return "digest:" + userId;
+    }
+
+    // Google の認証情報はこのアカウント ID で保存する (/digest/google で連携)
+    public String googleAccountId() {
+        return GoogleCalendarClient.accountIdOf(userId);
+    }
+
+    @Override
+    public String toString() {
+        // トークンをログに出さない
+        return "DigestTarget[userId=" + userId + ", username=" + username + "]";
+    }
+}
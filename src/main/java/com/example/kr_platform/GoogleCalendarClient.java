@@ -0,0 +1,299 @@
+package com.example.kr_platform;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.store.DataStoreFactory;
+import com.google.api.client.util.store.MemoryDataStoreFactory;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.CalendarScopes;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Google Calendar クライアントをアプリ全体で共有する。
+// トランスポート・認証フロー・Calendar クライアントは一度だけ生成し、リクエストごとには作り直さない。
+// google.calendar.platform-threads を指定すると、仮想スレッドからの API 呼び出しをその数のプラットフォームスレッドで実行する。
+// ライブラリ内の synchronized の中でブロックしても、仮想スレッドのキャリアスレッドを占有しない
+@Component
+public class GoogleCalendarClient {
+
+    private static final Logger log = LoggerFactory.getLogger(GoogleCalendarClient.class);
+    static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    static final List<String> SCOPES = Collections.singletonList(CalendarScopes.CALENDAR_READONLY);
+    static final String DEFAULT_USER_ID = "user";
+    private static final String USER_ACCOUNT_PREFIX = "user-";
+
+    // 有効期限の5分前になったらバックグラウンドで更新する
+    private static final long REFRESH_AHEAD_SECONDS = 300;
+
+    @Value("${google.calendar.credentials.file.path}")
+    private String credentialsFilePath;
+
+    @Value("${google.calendar.application.name}")
+    private String applicationName;
+
+    // 0 なら呼び出し元のスレッドでそのまま実行する
+    @Value("${google.calendar.platform-threads:0}")
+    private int platformThreads;
+
+    // API 呼び出しごとの所要時間 (google.calendar.requests) とトレースのスパン
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    // 応答の遅い API を待ち続けないよう、接続と読み込みに上限を設ける (0 ならライブラリの既定値の 20 秒)
+    @Value("${google.calendar.connect-timeout-ms:3000}")
+    private int connectTimeoutMillis;
+
+    @Value("${google.calendar.read-timeout-ms:10000}")
+    private int readTimeoutMillis;
+
+    // 認証情報の保存先 (DatabaseCredentialStoreFactory)。アプリの外で使う場合はメモリに保存する
+    @Autowired(required = false)
+    private DataStoreFactory credentialStoreFactory = MemoryDataStoreFactory.getDefaultInstance();
+
+    // 障害中は API を呼ばずにすぐ失敗させる (ResilienceConfig)
+    @Autowired(required = false)
+    @Qualifier("googleCalendarCircuitBreaker")
+    private CircuitBreaker breaker;
+
+    // NetHttpTransport はスレッドセーフで、HttpURLConnection の keep-alive プールを共有する
+    private volatile NetHttpTransport httpTransport;
+    private volatile GoogleAuthorizationCodeFlow authorizationFlow;
+    private final Map<String, CachedClient> clients = new ConcurrentHashMap<>();
+    // 初期化中はファイルの読み込みを伴うので、synchronized ではなくロックを使う (仮想スレッドを固定しない)
+    private final ReentrantLock initLock = new ReentrantLock();
+    private ExecutorService platformCalls;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T execute() throws IOException;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (platformThreads > 0) {
+            platformCalls = Executors.newFixedThreadPool(platformThreads, Thread.ofPlatform().name("google-api-", 0).factory());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (platformCalls != null) {
+            platformCalls.shutdownNow();
+        }
+    }
+
+    // 登録ユーザーが自分で連携したカレンダーのアカウント ID
+    public static String accountIdOf(Long userId) {
+        return USER_ACCOUNT_PREFIX + userId;
+    }
+
+    // accountIdOf の逆。登録ユーザーのアカウントでなければ null
+    public static Long userIdOf(String accountId) {
+        if (accountId == null || !accountId.startsWith(USER_ACCOUNT_PREFIX)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(accountId.substring(USER_ACCOUNT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public NetHttpTransport getHttpTransport() throws GeneralSecurityException, IOException {
+        NetHttpTransport transport = httpTransport;
+        if (transport == null) {
+            initLock.lock();
+            try {
+                transport = httpTransport;
+                if (transport == null) {
+                    transport = GoogleNetHttpTransport.newTrustedTransport();
+                    httpTransport = transport;
+                }
+            } finally {
+                initLock.unlock();
+            }
+        }
+        return transport;
+    }
+
+    public GoogleAuthorizationCodeFlow getAuthorizationFlow() throws GeneralSecurityException, IOException {
+        GoogleAuthorizationCodeFlow flow = authorizationFlow;
+        if (flow == null) {
+            initLock.lock();
+            try {
+                flow = authorizationFlow;
+                if (flow == null) {
+                    GoogleClientSecrets clientSecrets;
+                    try (InputStream in = new ClassPathResource(credentialsFilePath).getInputStream()) {
+                        clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
+                    }
+                    flow = new GoogleAuthorizationCodeFlow.Builder(
+                            getHttpTransport(), JSON_FACTORY, clientSecrets, SCOPES)
+                            .setDataStoreFactory(credentialStoreFactory)
+                            .setAccessType("offline")
+                            .build();
+                    authorizationFlow = flow;
+                }
+            } finally {
+                initLock.unlock();
+            }
+        }
+        return flow;
+    }
+
+    public Calendar getCalendar(String userId) throws GeneralSecurityException, IOException {
+        CachedClient cached = clients.get(userId);
+        if (cached != null) {
+            return cached.calendar();
+        }
+
+        // Load stored credentials instead of prompting for authorization
+        Credential credential = getAuthorizationFlow().loadCredential(userId);
+        if (credential == null) {
+            throw new IOException("認証が必要です。まず /auth/google にアクセスしてGoogleアカウントを認証してください。");
+        }
+
+        Calendar calendar = new Calendar.Builder(getHttpTransport(), JSON_FACTORY, request -> {
+                    credential.initialize(request);
+                    if (connectTimeoutMillis > 0) {
+                        request.setConnectTimeout(connectTimeoutMillis);
+                    }
+                    if (readTimeoutMillis > 0) {
+                        request.setReadTimeout(readTimeoutMillis);
+                    }
+                })
+                .setApplicationName(applicationName)
+                .build();
+        CachedClient existing = clients.putIfAbsent(userId, new CachedClient(credential, calendar));
+        return existing != null ? existing.calendar() : calendar;
+    }
+
+    // API 呼び出し (request::execute など) は必ずここを通す。operation は計測のタグ (events.list など)。
+    // サーキットブレーカーが開いている間は CircuitBreaker.OpenException ですぐに失敗する。
+    // 仮想スレッドから呼ばれた場合はプラットフォームスレッドに渡して結果を待つ (待っている間はキャリアスレッドを手放す)
+    public <T> T execute(String operation, Call<T> call) throws IOException {
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw breaker.openException();
+        }
+        Observation observation = Observation.createNotStarted("google.calendar.requests", observationRegistry)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        String status = "200";
+        try (Observation.Scope scope = observation.openScope()) {
+            T result = run(call);
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            status = e instanceof HttpResponseException response ? String.valueOf(response.getStatusCode()) : "IO_ERROR";
+            if (breaker != null) {
+                // 4xx (429 を含む) は API 自体は応答しているので障害とは数えない
+                if (e instanceof HttpResponseException response && response.getStatusCode() < 500) {
+                    breaker.onSuccess();
+                } else {
+                    breaker.onFailure();
+                }
+            }
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.lowCardinalityKeyValue("status", status).stop();
+        }
+    }
+
+    // 一覧の取得 1 回で辿ったページ数
+    public void recordPages(String operation, int pages) {
+        DistributionSummary.builder("google.calendar.pages")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(pages);
+    }
+
+    private <T> T run(Call<T> call) throws IOException {
+        if (platformCalls == null || !Thread.currentThread().isVirtual()) {
+            return call.execute();
+        }
+        Future<T> result = platformCalls.submit(call::execute);
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Google API");
+        }
+    }
+
+    // 再認証などで保存済みの認証情報が変わったときに呼び出す
+    public void evict(String userId) {
+        clients.remove(userId);
+    }
+
+    // リクエスト処理中にトークン更新の待ち時間が発生しないよう、期限が近いものを先に更新しておく
+    @Scheduled(fixedDelayString = "${google.calendar.credential-refresh-interval-ms:60000}")
+    public void refreshExpiringCredentials() {
+        clients.forEach((userId, cached) -> {
+            Credential credential = cached.credential();
+            Long expiresIn = credential.getExpiresInSeconds();
+            if (expiresIn != null && expiresIn > REFRESH_AHEAD_SECONDS) {
+                return;
+            }
+            try {
+                if (!execute("token.refresh", credential::refreshToken)) {
+                    log.warn("Google credential refresh was rejected for {}", userId);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to refresh Google credential for {}: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    private record CachedClient(Credential credential, Calendar calendar) {
+    }
+}
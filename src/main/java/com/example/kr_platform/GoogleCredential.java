@@ -0,0 +1,92 @@
+package com.example.kr_platform;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// Google の OAuth 認証情報。アカウント ID ごとに 1 行で、トークンは CredentialCipher で暗号化した値を持つ。
+// 登録ユーザーのアカウント (user-<ユーザー ID>) は user_id でユーザーに紐付き、ユーザーを削除すると一緒に消える
+@Entity
+@Table(name = "google_credentials")
+public class GoogleCredential {
+
+    @Id
+    @Column(name = "account_id", length = 64)
+    private String accountId;
+    
+    @Column(name = "user_id", unique = true)
+    private Long userId;
+    
+    @Column(name = "access_token", length = 4096)
+    private String accessToken;
+    
+    @Column(name = "refresh_token", length = 2048)
+    private String refreshToken;
+    
+    @Column(name = "expires_at_ms")
+    private Long expirationTimeMilliseconds;
+    
+    // 他のインスタンスが先に更新していたら、保存時に ObjectOptimisticLockingFailureException になる
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        updatedAt = Instant.now();
+    }
+    
+    public GoogleCredential() {}
+    
+    public GoogleCredential(String accountId, Long userId) {
+        this.accountId = accountId;
+        this.userId = userId;
+    }
+    
+    public String getAccountId() {
+        return accountId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getAccessToken() {
+        return accessToken;
+    }
+    
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+    
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+    
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+    
+    public Long getExpirationTimeMilliseconds() {
+        return expirationTimeMilliseconds;
+    }
+    
+    public void setExpirationTimeMilliseconds(Long expirationTimeMilliseconds) {
+        this.expirationTimeMilliseconds = expirationTimeMilliseconds;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
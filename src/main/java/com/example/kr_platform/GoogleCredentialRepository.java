@@ -0,0 +1,8 @@
+package com.example.kr_platform;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface GoogleCredentialRepository extends JpaRepository<GoogleCredential, String> {
+}
@@ -1,38 +1,49 @@
 package com.example.kr_platform;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.client.util.store.FileDataStoreFactory;
-import com.google.api.services.calendar.CalendarScopes;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.view.RedirectView;
 
 import jakarta.servlet.http.HttpSession;
-import java.io.File;
-import java.io.InputStreamReader;
-import java.security.GeneralSecurityException;
-import java.util.Collections;
 
 @RestController
 public class GoogleOAuthController {
 
-    @Value("${google.calendar.credentials.file.path}")
-    private String credentialsFilePath;
-    
-    private static final String TOKENS_DIRECTORY_PATH = "tokens";
     private static final String REDIRECT_URI = "http://localhost:8888/auth/google/callback";
 
+    private final GoogleCalendarClient calendarClient;
+    private final GoogleOAuthStates oauthStates;
+
+    public GoogleOAuthController(GoogleCalendarClient calendarClient, GoogleOAuthStates oauthStates) {
+        this.calendarClient = calendarClient;
+        this.oauthStates = oauthStates;
+    }
+
+    // state があれば GET /digest/google で発行したもの (登録ユーザー自身のアカウント)。
+    // なければ account (既定は user) のアカウントとして認証する。登録ユーザーのアカウント (user-<ID>) はここでは指定できない
     @GetMapping("/auth/google")
-    public RedirectView initiateGoogleAuth(HttpSession session) throws Exception {
+    public RedirectView initiateGoogleAuth(
+            @RequestParam(value = "account", defaultValue = GoogleCalendarClient.DEFAULT_USER_ID) String account,
+            @RequestParam(value = "state", required = false) String state,
+            HttpSession session) throws Exception {
+        if (state != null) {
+            if (!oauthStates.isIssued(state)) {
+                throw new IllegalArgumentException("Unknown or expired state");
+            }
+        } else {
+            if (GoogleCalendarClient.userIdOf(account) != null) {
+                throw new IllegalArgumentException("Use GET /digest/google to link your own calendar");
+            }
+            state = oauthStates.issue(account);
+        }
         GoogleAuthorizationCodeFlow flow = getGoogleAuthorizationFlow();
         
+        // 認証後のコールバックでどのアカウントとして保存するかは、state に結び付けてサーバー側で覚えておく
         String authUrl = flow.newAuthorizationUrl()
             .setRedirectUri(REDIRECT_URI)
+            .setState(state)
             .build();
         
         return new RedirectView(authUrl);
@@ -42,12 +53,19 @@ public class GoogleOAuthController {
     public String handleGoogleCallback(
             @RequestParam("code") String authCode,
             @RequestParam(value = "error", required = false) String error,
+            @RequestParam(value = "state", required = false) String state,
             HttpSession session) {
         
         if (error != null) {
             return "認証がキャンセルされました: " + error;
         }
         
+        // 発行していない state (アカウント ID そのものなど) や期限切れ、使用済みのものは受け付けない
+        String account = oauthStates.consume(state).orElse(null);
+        if (account == null) {
+            return "認証失敗: 認証の有効期限が切れたか、不正なリクエストです。もう一度最初からやり直してください";
+        }
+        
         try {
             GoogleAuthorizationCodeFlow flow = getGoogleAuthorizationFlow();
             
@@ -56,7 +74,8 @@ public class GoogleOAuthController {
                 .execute();
             
             // トークンを保存
-            flow.createAndStoreCredential(tokenResponse, "user");
+            flow.createAndStoreCredential(tokenResponse, account);
+            calendarClient.evict(account);
             
             return """
                 <!DOCTYPE html>
@@ -86,22 +105,12 @@ public class GoogleOAuthController {
         }
     }
     
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
     private GoogleAuthorizationCodeFlow getGoogleAuthorizationFlow() throws Exception {
-        var in = new ClassPathResource(credentialsFilePath).getInputStream();
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(
-            GsonFactory.getDefaultInstance(), 
-            new InputStreamReader(in)
-        );
-        
-        File tokensDirectory = new File(TOKENS_DIRECTORY_PATH);
-        
-        return new GoogleAuthorizationCodeFlow.Builder(
-            GoogleNetHttpTransport.newTrustedTransport(), 
-            GsonFactory.getDefaultInstance(), 
-            clientSecrets, 
-            Collections.singletonList(CalendarScopes.CALENDAR_READONLY))
-            .setDataStoreFactory(new FileDataStoreFactory(tokensDirectory))
-            .setAccessType("offline")
-            .build();
+        return calendarClient.getAuthorizationFlow();
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+// Google の認証 (/auth/google) で state として渡すワンタイムの値。
+// どのアカウントとして認証情報を保存するかはサーバー側で state に結び付けておき、コールバックで受け取った値からだけ決める。
+// 期限付きで、一度使うと消える。このインスタンスのメモリにだけ持つので、コールバックは認証を始めたインスタンスに届くこと
+@Component
+public class GoogleOAuthStates {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Cache<String, String> accounts;
+
+    public GoogleOAuthStates(
+            @Value("${google.oauth.state-ttl-seconds:600}") long ttlSeconds,
+            @Value("${google.oauth.state-max-size:10000}") long maxSize) {
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public String issue(String accountId) {
+        if (!CalendarSource.isValidAccountId(accountId)) {
+            throw new IllegalArgumentException("Invalid account id: " + accountId);
+        }
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String state = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        accounts.put(state, accountId);
+        return state;
+    }
+
+    // 発行済みで期限内なら true。消費はしない (認証画面に進む前の確認用)
+    public boolean isIssued(String state) {
+        return state != null && accounts.getIfPresent(state) != null;
+    }
+
+    // state に結び付けたアカウント ID を返し、state を無効にする。知らない値や期限切れ、使用済みなら empty
+    public Optional<String> consume(String state) {
+        if (state == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(accounts.asMap().remove(state));
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// 投稿リクエストの冪等性キー -> 最初のリクエストの結果 (ジョブ ID や予約 ID)。
+// キーは SHA-256 の先頭 16 バイトだけを持ち、期限付きで保持する。
+// 確定した記録は追記専用のログに非同期で書き (write-behind)、再起動時にログから復元する。
+// リクエストの処理を書き込みで待たせないため、停止直前の記録は失われることがある
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final Entry PENDING = new Entry(null, Long.MAX_VALUE);
+    // 書き込みスレッドに停止を伝える (ファイルへの書き込み中に割り込むとチャネルが閉じられるので interrupt は使わない)
+    private static final Object END = new Object();
+    // 処理中のまま応答が返らなかったリクエストがキーを塞ぎ続けないようにする
+    private static final long PENDING_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final Cache<Key, Entry> entries;
+    private final Duration explicitTtl;
+    private final Duration window;
+    private final Path logFile;
+    private final BlockingQueue<Object> pendingWrites = new LinkedBlockingQueue<>();
+    private Thread writer;
+    // 以下は書き込みスレッドだけが触る (起動時は書き込みスレッドを開始する前に使う)
+    private BufferedWriter logWriter;
+    private long linesSinceCompaction;
+
+    public IdempotencyStore(
+            @Value("${idempotency.max-entries:100000}") long maxEntries,
+            @Value("${idempotency.ttl-hours:24}") long ttlHours,
+            @Value("${idempotency.window-seconds:300}") long windowSeconds,
+            @Value("${idempotency.log-file:}") String logFile) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new UntilEntryExpires())
+                .build();
+        this.explicitTtl = Duration.ofHours(ttlHours);
+        this.window = Duration.ofSeconds(windowSeconds);
+        this.logFile = logFile.isEmpty() ? null : Path.of(logFile);
+    }
+
+    public record Key(long high, long low) {
+    }
+
+    // reference が null のものは処理中 (まだ結果がない)
+    public record Entry(String reference, long expiresAtMillis) {
+
+        public boolean isPending() {
+            return reference == null;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (logFile == null) {
+            return;
+        }
+        if (Files.exists(logFile)) {
+            replay();
+        }
+        Files.createDirectories(logFile.toAbsolutePath().getParent());
+        compact();
+        writer = new Thread(this::writeLoop, "idempotency-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer != null) {
+            pendingWrites.add(END);
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    // 呼び出し元が付けたキー。同じ操作の中でだけ一致させる
+    public Key explicitKey(String operation, String idempotencyKey) {
+        return hash(operation + "\n" + idempotencyKey);
+    }
+
+    // キーが付いていない場合は内容と時間枠 (idempotency.window-seconds) から作る。
+    // 同じ枠の中で同じ内容が繰り返し来たものを重複とみなす
+    public Key derivedKey(String operation, String... content) {
+        long bucket = System.currentTimeMillis() / window.toMillis();
+        return hash(operation + "\n" + bucket + "\n" + String.join("\n", content));
+    }
+
+    public Duration ttlFor(boolean explicit) {
+        return explicit ? explicitTtl : window;
+    }
+
+    // 初めてのキーなら処理中として登録して null を返す。既にあればその記録を返す
+    public Entry begin(Key key) {
+        return entries.asMap().putIfAbsent(key, PENDING);
+    }
+
+    public void complete(Key key, String reference, Duration ttl) {
+        Entry entry = new Entry(reference, System.currentTimeMillis() + ttl.toMillis());
+        entries.put(key, entry);
+        if (logFile != null) {
+            pendingWrites.add(line(key, entry));
+        }
+    }
+
+    // 処理に失敗した場合は記録を消し、同じキーでやり直せるようにする
+    public void abandon(Key key) {
+        entries.asMap().remove(key, PENDING);
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private static Key hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            return new Key(buffer.getLong(), buffer.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String line(Key key, Entry entry) {
+        return Long.toHexString(key.high()) + " " + Long.toHexString(key.low()) + " "
+                + entry.expiresAtMillis() + " " + entry.reference();
+    }
+
+    private void replay() throws IOException {
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length != 4) {
+                    // 停止時に書きかけだった最後の行
+                    continue;
+                }
+                try {
+                    Key key = new Key(Long.parseUnsignedLong(fields[0], 16), Long.parseUnsignedLong(fields[1], 16));
+                    Entry entry = new Entry(fields[3], Long.parseLong(fields[2]));
+                    if (entry.expiresAtMillis() > now) {
+                        entries.put(key, entry);
+                    }
+                } catch (NumberFormatException e) {
+                    // 壊れた行は読み飛ばす
+                }
+            }
+        }
+    }
+
+    // 期限内の記録だけでログを書き直す
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        long now = System.currentTimeMillis();
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Key, Entry> entry : entries.asMap().entrySet()) {
+                if (!entry.getValue().isPending() && entry.getValue().expiresAtMillis() > now) {
+                    out.write(line(entry.getKey(), entry.getValue()));
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        linesSinceCompaction = 0;
+    }
+
+    // 溜まった記録をまとめて書き、まとめて flush する
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            boolean ended = false;
+            while (!ended) {
+                batch.add(pendingWrites.take());
+                pendingWrites.drainTo(batch);
+                // END より前に積まれた分は書いてから抜ける
+                ended = batch.remove(END);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLog();
+        }
+    }
+
+    // 期限切れや上限で追い出された記録もログには残るので、有効な件数より大きくなったら書き直す
+    private void write(List<Object> batch) {
+        try {
+            for (Object line : batch) {
+                if (linesSinceCompaction > Math.max(10_000, 2 * entries.estimatedSize())) {
+                    closeLog();
+                    compact();
+                }
+                if (logWriter == null) {
+                    logWriter = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                logWriter.write((String) line);
+                logWriter.newLine();
+                linesSinceCompaction++;
+            }
+            if (logWriter != null) {
+                logWriter.flush();
+            }
+        } catch (IOException e) {
+            // 書けなかった記録はメモリ上にだけ残る (再起動すると重複を検出できない)
+            log.error("Failed to write idempotency log {}", logFile, e);
+            closeLog();
+        }
+    }
+
+    private void closeLog() {
+        if (logWriter == null) {
+            return;
+        }
+        try {
+            logWriter.close();
+        } catch (IOException e) {
+            log.warn("Failed to close idempotency log {}: {}", logFile, e.getMessage());
+        }
+        logWriter = null;
+    }
+
+    private static final class UntilEntryExpires implements Expiry<Key, Entry> {
+
+        @Override
+        public long expireAfterCreate(Key key, Entry value, long currentTime) {
+            if (value.isPending()) {
+                return PENDING_TIMEOUT_NANOS;
+            }
+            long remainingMillis = value.expiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,56 +1,114 @@
 package com.example.kr_platform;
 
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
-    @Autowired
-    private JwtUtil jwtUtil;
+    private final JwtUtil jwtUtil;
+    private final CustomUserDetailsService userDetailsService;
+    private final TokenRevocationIndex revocationIndex;
+    // トークンの検証と認証情報の組み立てにかかった時間 (後続のフィルターとコントローラーの時間は含まない)。
+    // 毎回タグから引かないよう、結果ごとの Timer を先に作っておく
+    private final Timer authenticated;
+    private final Timer rejected;
+    private final Timer anonymous;
     
-    @Autowired
-    private CustomUserDetailsService userDetailsService;
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService,
+                                   TokenRevocationIndex revocationIndex, MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.revocationIndex = revocationIndex;
+        this.authenticated = filterTimer(meterRegistry, "authenticated");
+        this.rejected = filterTimer(meterRegistry, "rejected");
+        this.anonymous = filterTimer(meterRegistry, "anonymous");
+    }
+    
+    private static Timer filterTimer(MeterRegistry registry, String result) {
+        return Timer.builder("auth.jwt.filter")
+                .description("Time spent verifying the bearer token")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
     
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
         
         final String authorizationHeader = request.getHeader("Authorization");
+        long started = System.nanoTime();
+        Timer timer = anonymous;
         
-        String username = null;
-        String jwt = null;
-        
+        // 署名と有効期限の検証はリクエストごとに一度だけ行う
+        JwtUtil.VerifiedToken token = null;
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
             try {
-                username = jwtUtil.extractUsername(jwt);
-            } catch (Exception e) {
-                logger.error("JWT Token extraction failed", e);
+                token = jwtUtil.verify(authorizationHeader.substring(7));
+            } catch (JwtException | IllegalArgumentException e) {
+                timer = rejected;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("JWT verification failed: " + e.getMessage());
+                }
             }
         }
         
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-            
-            if (jwtUtil.validateToken(jwt, userDetails.getUsername())) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
+        if (token != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UsernamePasswordAuthenticationToken authToken = authenticate(token);
+            if (authToken != null) {
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
+                timer = authenticated;
+            } else {
+                timer = rejected;
             }
         }
+        timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         chain.doFilter(request, response);
     }
-}
\ No newline at end of file
+    
+    // 通常はクレームだけで認証情報を組み立てる。uid を持たない以前の形式のトークンのみ
+    // ユーザー情報 (キャッシュ経由) を引く
+    private UsernamePasswordAuthenticationToken authenticate(JwtUtil.VerifiedToken token) {
+        // ログアウトなどで失効させたトークン (メモリ上の索引だけを見る)
+        if (revocationIndex.isRevoked(token.id())) {
+            return null;
+        }
+        Long userId = token.userId();
+        List<GrantedAuthority> authorities;
+        if (userId != null) {
+            authorities = token.authorities().stream()
+                    .<GrantedAuthority>map(SimpleGrantedAuthority::new)
+                    .toList();
+        } else {
+            AppUserDetails userDetails;
+            try {
+                userDetails = userDetailsService.loadUserByUsername(token.username());
+            } catch (UsernameNotFoundException e) {
+                return null;
+            }
+            userId = userDetails.getUserId();
+            authorities = List.copyOf(userDetails.getAuthorities());
+        }
+        return new UsernamePasswordAuthenticationToken(
+                new JwtPrincipal(userId, token.username()), null, authorities);
+    }
+}
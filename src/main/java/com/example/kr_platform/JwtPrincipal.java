@@ -0,0 +1,13 @@
+package com.example.kr_platform;
+
+import java.io.Serializable;
+import java.security.Principal;
+
+// JWT のクレームだけから組み立てる認証済みユーザー。リクエストごとに DB を引かない
+public record JwtPrincipal(Long userId, String username) implements Principal, Serializable {
+    
+    @Override
+    public String getName() {
+        return username;
+    }
+}
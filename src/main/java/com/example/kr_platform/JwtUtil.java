@@ -1,34 +1,97 @@
 package com.example.kr_platform;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
     
-    @Value("${jwt.secret:404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970}")
-    private String SECRET_KEY;
+    private final long jwtExpiration;
+    // 鍵とパーサーは起動時に一度だけ作る (JwtParser はスレッドセーフ)
+    private final Key signKey;
+    private final JwtParser parser;
+    // 検証済みトークンのキャッシュ。キーはトークンの SHA-256 で、各エントリーはトークンの有効期限で消える
+    private final Cache<String, VerifiedToken> verified;
     
-    @Value("${jwt.expiration:86400000}")
-    private long JWT_EXPIRATION;
+    public JwtUtil(
+            @Value("${jwt.secret:404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970}") String secretKey,
+            @Value("${jwt.expiration:900000}") long jwtExpiration,
+            @Value("${jwt.verified-cache.max-size:10000}") long verifiedCacheSize) {
+        this.jwtExpiration = jwtExpiration;
+        this.signKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.parser = Jwts.parserBuilder().setSigningKey(signKey).build();
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(new UntilTokenExpires())
+                .build();
+    }
+    
+    static final String USER_ID_CLAIM = "uid";
+    static final String AUTHORITIES_CLAIM = "auth";
+    
+    // id (jti) と userId は、それらを持たない (以前の形式の) トークンでは null
+    public record VerifiedToken(String id, Long userId, String username, List<String> authorities,
+                                Instant issuedAt, Instant expiresAt) {
+    }
+    
+    public record IssuedToken(String token, String id, Instant expiresAt) {
+    }
+    
+    // 署名と有効期限を検証する。同じトークンが有効期限内に再度来た場合は署名検証を省略する
+    public VerifiedToken verify(String token) {
+        String key = sha256(token);
+        VerifiedToken cached = verified.getIfPresent(key);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return cached;
+        }
+        
+        Claims claims = extractAllClaims(token);
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            throw new JwtException("Token must carry a subject and an expiration");
+        }
+        VerifiedToken result = new VerifiedToken(
+                claims.getId(),
+                claims.get(USER_ID_CLAIM, Long.class),
+                claims.getSubject(),
+                authorities(claims),
+                claims.getIssuedAt() == null ? null : claims.getIssuedAt().toInstant(),
+                claims.getExpiration().toInstant());
+        verified.put(key, result);
+        return result;
+    }
     
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).username();
     }
     
     public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        return Date.from(verify(token).expiresAt());
     }
     
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -37,40 +100,86 @@ public class JwtUtil {
     }
     
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
     
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    // ユーザー ID と権限をクレームに入れておき、リクエスト時にユーザーを DB から引かずに済ませる
+    public String generateToken(Long userId, String username, Collection<? extends GrantedAuthority> authorities) {
+        return issue(userId, username, authorities).token();
     }
     
-    public String generateToken(String username) {
+    public String generateToken(AppUserDetails user) {
+        return generateToken(user.getUserId(), user.getUsername(), user.getAuthorities());
+    }
+    
+    // アクセストークンには失効させられるよう ID (jti) を付ける
+    public IssuedToken issue(Long userId, String username, Collection<? extends GrantedAuthority> authorities) {
         Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, userId);
+        claims.put(AUTHORITIES_CLAIM, authorities.stream().map(GrantedAuthority::getAuthority).toList());
         return createToken(claims, username);
     }
     
-    private String createToken(Map<String, Object> claims, String subject) {
-        return Jwts.builder()
+    public IssuedToken issue(AppUserDetails user) {
+        return issue(user.getUserId(), user.getUsername(), user.getAuthorities());
+    }
+    
+    private IssuedToken createToken(Map<String, Object> claims, String subject) {
+        String id = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        Date expiration = new Date(now + jwtExpiration);
+        String token = Jwts.builder()
                 .setClaims(claims)
+                .setId(id)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + JWT_EXPIRATION))
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .setIssuedAt(new Date(now))
+                .setExpiration(expiration)
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
+        return new IssuedToken(token, id, expiration.toInstant());
     }
     
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        try {
+            return verify(token).username().equals(username);
+        } catch (JwtException e) {
+            return false;
+        }
+    }
+    
+    private static List<String> authorities(Claims claims) {
+        Object value = claims.get(AUTHORITIES_CLAIM);
+        if (!(value instanceof Collection<?> collection)) {
+            return List.of();
+        }
+        return collection.stream().map(String::valueOf).toList();
+    }
+    
+    static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
     
-    private Key getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(SECRET_KEY);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static final class UntilTokenExpires implements Expiry<String, VerifiedToken> {
+        
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.expiresAt().toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+        
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+        
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.example.kr_platform;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// OAuth 1.0a (HMAC-SHA1) の Authorization ヘッダーを生成する。
+// JSON ボディは署名対象に含まれないため、メソッド・URL・クエリと oauth_* パラメーターだけで署名する。
+public class OAuth1Signer {
+
+    private static final String HMAC_SHA1 = "HmacSHA1";
+
+    private final String consumerKey;
+    private final String accessToken;
+    private final SecretKeySpec signingKey;
+
+    public OAuth1Signer(String consumerKey, String consumerSecret, String accessToken, String accessTokenSecret) {
+        this.consumerKey = consumerKey;
+        this.accessToken = accessToken;
+        String key = percentEncode(consumerSecret) + "&" + percentEncode(accessTokenSecret);
+        this.signingKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC_SHA1);
+    }
+
+    public String authorizationHeader(String method, URI uri) {
+        return authorizationHeader(method, uri, nonce(), System.currentTimeMillis() / 1000);
+    }
+
+    String authorizationHeader(String method, URI uri, String nonce, long timestamp) {
+        Map<String, String> oauthParams = new TreeMap<>();
+        oauthParams.put("oauth_consumer_key", consumerKey);
+        oauthParams.put("oauth_nonce", nonce);
+        oauthParams.put("oauth_signature_method", "HMAC-SHA1");
+        oauthParams.put("oauth_timestamp", String.valueOf(timestamp));
+        oauthParams.put("oauth_token", accessToken);
+        oauthParams.put("oauth_version", "1.0");
+
+        // 署名対象のパラメーターはエンコード済みの名前・値でソートして連結する
+        Map<String, String> signed = new TreeMap<>();
+        oauthParams.forEach((name, value) -> signed.put(percentEncode(name), percentEncode(value)));
+        if (uri.getRawQuery() != null) {
+            for (String pair : uri.getRawQuery().split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                signed.put(percentEncode(decode(name)), percentEncode(decode(value)));
+            }
+        }
+
+        StringBuilder parameters = new StringBuilder();
+        for (Map.Entry<String, String> entry : signed.entrySet()) {
+            if (parameters.length() > 0) {
+                parameters.append('&');
+            }
+            parameters.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        String baseUrl = uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase() + uri.getRawPath();
+        String baseString = method.toUpperCase() + "&" + percentEncode(baseUrl) + "&" + percentEncode(parameters.toString());
+        oauthParams.put("oauth_signature", sign(baseString));
+
+        StringBuilder header = new StringBuilder("OAuth ");
+        for (Map.Entry<String, String> entry : oauthParams.entrySet()) {
+            if (header.length() > 6) {
+                header.append(", ");
+            }
+            header.append(entry.getKey()).append("=\"").append(percentEncode(entry.getValue())).append('"');
+        }
+        return header.toString();
+    }
+
+    private String sign(String baseString) {
+        try {
+            // Mac はスレッドセーフではないので毎回生成する (鍵は使い回す)
+            Mac mac = Mac.getInstance(HMAC_SHA1);
+            mac.init(signingKey);
+            return Base64.getEncoder().encodeToString(mac.doFinal(baseString.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA1 is not available", e);
+        }
+    }
+
+    private static String nonce() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    // RFC 3986 のパーセントエンコード
+    static String percentEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+                .replace("+", "%20")
+                .replace("*", "%2A")
+                .replace("%7E", "~");
+    }
+}
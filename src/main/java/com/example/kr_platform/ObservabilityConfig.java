@@ -0,0 +1,89 @@
+package com.example.kr_platform;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+// メトリクスとトレースの設定。
+// トレースは ThreadLocal の現在の Observation を親にするので、処理が別のスレッドに移る箇所
+// (Reactor の Scheduler、CalendarFanOut の仮想スレッド、TweetDispatcher のワーカー) では
+// CONTEXT_SNAPSHOTS で呼び出し元の ThreadLocal を写して引き継ぐ
+@Configuration
+public class ObservabilityConfig {
+
+    static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    private static final String SCHEDULE_HOOK = "kr-platform-context";
+
+    // subscribeOn(Schedulers.boundedElastic()) などで実行されるタスクに、スケジュールした時点の ThreadLocal を引き継ぐ
+    @PostConstruct
+    public void propagateContextToSchedulers() {
+        Schedulers.onScheduleHook(SCHEDULE_HOOK, task -> CONTEXT_SNAPSHOTS.captureAll().wrap(task));
+    }
+
+    @PreDestroy
+    public void removeScheduleHook() {
+        Schedulers.resetOnScheduleHook(SCHEDULE_HOOK);
+    }
+
+    // キューの長さ、キャッシュのヒット数、サーキットブレーカーの状態、Twitter の残り回数 (計測のたびに各コンポーネントから読む)
+    @Bean
+    public MeterBinder queueMetrics(TweetDispatcher dispatcher, TwitterRateLimiter rateLimiter, TweetScheduler scheduler,
+                                    CalendarEventCache eventCache, CalendarService calendarService,
+                                    CalendarWatchService watchService,
+                                    IdempotencyStore idempotencyStore, List<CircuitBreaker> breakers) {
+        return registry -> {
+            for (CircuitBreaker breaker : breakers) {
+                Gauge.builder("circuit.breaker.state", breaker, b -> b.state().ordinal())
+                        .description("0 = closed, 1 = open, 2 = half-open")
+                        .tag("name", breaker.getName())
+                        .register(registry);
+            }
+            Gauge.builder("tweet.dispatcher.queue.depth", dispatcher, TweetDispatcher::queueDepth)
+                    .description("Tweets waiting to be sent")
+                    .register(registry);
+            Gauge.builder("twitter.rate.limit.remaining", rateLimiter, TwitterRateLimiter::availableTokens)
+                    .description("Tweets that can be sent before the rate limit window resets")
+                    .register(registry);
+            Gauge.builder("tweet.scheduler.queue.depth", scheduler, TweetScheduler::pendingCount)
+                    .description("Scheduled tweets loaded into the delay queue")
+                    .register(registry);
+            Gauge.builder("idempotency.entries", idempotencyStore, IdempotencyStore::size)
+                    .register(registry);
+            FunctionCounter.builder("calendar.cache.lookups", eventCache, cache -> cache.stats().hits())
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("calendar.cache.lookups", eventCache, cache -> cache.stats().misses())
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("calendar.cache.syncs", eventCache, cache -> cache.stats().refreshes())
+                    .tag("type", "incremental")
+                    .register(registry);
+            FunctionCounter.builder("calendar.cache.syncs", eventCache, cache -> cache.stats().fullSyncs())
+                    .tag("type", "full")
+                    .register(registry);
+            FunctionCounter.builder("calendar.lookups.coalesced", calendarService, CalendarService::coalescedLookups)
+                    .description("Calendar lookups that shared the result of an identical in-flight lookup")
+                    .register(registry);
+            FunctionCounter.builder("calendar.cache.stale.served", eventCache, cache -> cache.stats().staleServed())
+                    .description("Lookups answered from the last synced events because the calendar was unavailable")
+                    .register(registry);
+            Gauge.builder("calendar.watch.channels", watchService, CalendarWatchService::activeChannels)
+                    .description("Calendars with an open change notification channel")
+                    .register(registry);
+            FunctionCounter.builder("calendar.watch.notifications", watchService, CalendarWatchService::notificationCount)
+                    .register(registry);
+            FunctionCounter.builder("calendar.watch.resyncs", watchService, CalendarWatchService::resyncCount)
+                    .description("Calendars synced in the background after a change notification")
+                    .register(registry);
+        };
+    }
+}
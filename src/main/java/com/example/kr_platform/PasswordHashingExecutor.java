@@ -0,0 +1,93 @@
+package com.example.kr_platform;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// パスワードのハッシュ計算 (ログイン・登録) 専用のスレッドプール。
+// 同時に計算する数と待ち行列の長さを制限し、あふれた分はすぐに断って他のエンドポイントの CPU を守る。
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long maxQueueWaitNanos;
+
+    public PasswordHashingExecutor(
+            @Value("${auth.hashing.threads:0}") int threads,
+            @Value("${auth.hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${auth.hashing.max-queue-wait-ms:2000}") long maxQueueWaitMillis) {
+        // 0 のときは CPU の半分まで (他のリクエストの処理分を残す)
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // 待ち行列が一杯なら 429、待ち時間が長すぎた場合は 503 (SaturatedException) で失敗する
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                // 呼び出し元がタイムアウトしている可能性が高いので、計算せずに捨てる
+                if (System.nanoTime() - enqueuedAt > maxQueueWaitNanos) {
+                    result.completeExceptionally(new SaturatedException(HttpStatus.SERVICE_UNAVAILABLE,
+                            "Password hashing is overloaded, please retry later"));
+                    return;
+                }
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new SaturatedException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many login or registration requests, please retry later");
+        }
+        return result;
+    }
+
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    public static class SaturatedException extends RuntimeException {
+
+        private final HttpStatus status;
+
+        public SaturatedException(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.kr_platform;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// リフレッシュトークン。値そのものは保存せず SHA-256 だけを持つ。
+// 使うたびに同じ family の新しいトークンに置き換え、使用済みのものが再度使われたら family ごと失効させる
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_hash", columnList = "token_hash", unique = true),
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id")
+})
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+    
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(nullable = false)
+    private String username;
+    
+    // 同時に発行したアクセストークンの jti。ログアウト時にまとめて失効させる
+    @Column(name = "access_token_id", length = 36)
+    private String accessTokenId;
+    
+    @Column(name = "access_expires_at")
+    private Instant accessExpiresAt;
+    
+    @Column(name = "issued_at", nullable = false)
+    private Instant issuedAt;
+    
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+    
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+    
+    public RefreshToken() {}
+    
+    public RefreshToken(String tokenHash, String familyId, Long userId, String username,
+                        JwtUtil.IssuedToken accessToken, Instant issuedAt, Instant expiresAt) {
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.userId = userId;
+        this.username = username;
+        this.accessTokenId = accessToken.id();
+        this.accessExpiresAt = accessToken.expiresAt();
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getTokenHash() {
+        return tokenHash;
+    }
+    
+    public String getFamilyId() {
+        return familyId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getAccessTokenId() {
+        return accessTokenId;
+    }
+    
+    public Instant getAccessExpiresAt() {
+        return accessExpiresAt;
+    }
+    
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+    
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.kr_platform;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+// 短命なアクセストークンと、使うたびに置き換わるリフレッシュトークンを発行する。
+// 使用済みのリフレッシュトークンが再度使われた場合は漏えいとみなし、同じ family をすべて失効させる。
+// 失効は DB に記録し、アクセストークンの jti は TokenRevocationIndex 経由で他のインスタンスにも伝わる
+@Service
+public class RefreshTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository repository;
+    private final TokenRevocationIndex revocationIndex;
+    private final CustomUserDetailsService userDetailsService;
+    private final JwtUtil jwtUtil;
+    private final Duration refreshLifetime;
+
+    public RefreshTokenService(
+            RefreshTokenRepository repository,
+            TokenRevocationIndex revocationIndex,
+            CustomUserDetailsService userDetailsService,
+            JwtUtil jwtUtil,
+            @Value("${jwt.refresh-expiration:2592000000}") long refreshLifetimeMillis) {
+        this.repository = repository;
+        this.revocationIndex = revocationIndex;
+        this.userDetailsService = userDetailsService;
+        this.jwtUtil = jwtUtil;
+        this.refreshLifetime = Duration.ofMillis(refreshLifetimeMillis);
+    }
+
+    public record TokenPair(String accessToken, Instant accessExpiresAt, String refreshToken, Instant refreshExpiresAt) {
+    }
+
+    public TokenPair issue(AppUserDetails user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    public TokenPair refresh(String refreshToken) {
+        RefreshToken current = repository.findByTokenHash(JwtUtil.sha256(refreshToken))
+                .orElseThrow(() -> new InvalidRefreshTokenException("Unknown refresh token"));
+        Instant now = Instant.now();
+        if (current.getRevokedAt() != null || repository.markUsed(current.getId(), now) != 1) {
+            revokeFamily(current.getFamilyId());
+            throw new InvalidRefreshTokenException("Refresh token was already used");
+        }
+        if (!current.getExpiresAt().isAfter(now)) {
+            throw new InvalidRefreshTokenException("Refresh token expired");
+        }
+
+        AppUserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(current.getUsername());
+        } catch (UsernameNotFoundException e) {
+            throw new InvalidRefreshTokenException("User no longer exists");
+        }
+        return issue(user, current.getFamilyId());
+    }
+
+    // このリフレッシュトークンの family と、そこから発行したアクセストークンをすべて失効させる
+    public void logout(String refreshToken) {
+        repository.findByTokenHash(JwtUtil.sha256(refreshToken))
+                .ifPresent(token -> revokeFamily(token.getFamilyId()));
+    }
+
+    // すべての端末からログアウトする。ユーザーのリフレッシュトークンと、そこから発行した期限内のアクセストークンをすべて失効させる
+    public void logoutAll(Long userId) {
+        Instant now = Instant.now();
+        repository.revokeUser(userId, now);
+        for (RefreshToken token : repository.findByUserIdAndAccessExpiresAtAfter(userId, now)) {
+            revocationIndex.revoke(token.getAccessTokenId(), token.getAccessExpiresAt());
+        }
+        userDetailsService.evict(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:30000}")
+    public void purgeExpired() {
+        repository.deleteExpired(Instant.now());
+    }
+
+    private TokenPair issue(AppUserDetails user, String familyId) {
+        JwtUtil.IssuedToken access = jwtUtil.issue(user);
+        String value = newTokenValue();
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(refreshLifetime);
+        repository.save(new RefreshToken(JwtUtil.sha256(value), familyId, user.getUserId(), user.getUsername(),
+                access, now, expiresAt));
+        return new TokenPair(access.token(), access.expiresAt(), value, expiresAt);
+    }
+
+    private void revokeFamily(String familyId) {
+        repository.revokeFamily(familyId, Instant.now());
+        for (RefreshToken token : repository.findByFamilyId(familyId)) {
+            revocationIndex.revoke(token.getAccessTokenId(), token.getAccessExpiresAt());
+        }
+    }
+
+    private static String newTokenValue() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public static class InvalidRefreshTokenException extends RuntimeException {
+
+        public InvalidRefreshTokenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.kr_platform;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 外部 API への呼び出しを一定間隔に均す。呼び出し元ごとに次の送信時刻の枠を予約し、その時刻まで待つ。
+// 枠の予約はロックを使わないので、仮想スレッドから呼んでもキャリアスレッドを占有しない
+public class RequestPacer {
+
+    private final long intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+    public RequestPacer(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public void acquire() throws InterruptedException {
+        long now = System.nanoTime();
+        long slot = nextSlot.getAndAccumulate(now, (next, current) -> Math.max(next, current) + intervalNanos);
+        long wait = Math.max(slot, now) - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    // 429 を受けたときなど、until (System.nanoTime 基準) までは誰にも枠を渡さない
+    public void pauseUntil(long untilNanos) {
+        nextSlot.accumulateAndGet(untilNanos, Math::max);
+    }
+}
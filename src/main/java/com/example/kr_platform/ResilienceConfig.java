@@ -0,0 +1,47 @@
+package com.example.kr_platform;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// 外部 API ごとのサーキットブレーカーと隔壁 (専用の上限付きスレッド)。
+// Google が遅くなっても、待たされるのはカレンダー用のスレッドだけで、Tomcat のスレッドや
+// 他のエンドポイント (/ping、/auth/login) が使う共有のスレッドは埋まらない。
+// Twitter への投稿は TweetDispatcher の送信キューと同時送信数の上限が隔壁になっている
+@Configuration
+public class ResilienceConfig {
+
+    @Bean
+    public CircuitBreaker googleCalendarCircuitBreaker(
+            @Value("${google.calendar.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${google.calendar.breaker.open-ms:30000}") long openMillis,
+            @Value("${google.calendar.breaker.half-open-probes:1}") int halfOpenProbes) {
+        return new CircuitBreaker("Google Calendar API", failureThreshold, openMillis, halfOpenProbes);
+    }
+
+    @Bean
+    public CircuitBreaker twitterCircuitBreaker(
+            @Value("${twitter.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${twitter.breaker.open-ms:30000}") long openMillis,
+            @Value("${twitter.breaker.half-open-probes:1}") int halfOpenProbes) {
+        return new CircuitBreaker("Twitter API", failureThreshold, openMillis, halfOpenProbes);
+    }
+
+    // 予定の取得を伴うリクエストの処理用。待ち行列も一杯なら RejectedExecutionException (503) ですぐに断る
+    @Bean(destroyMethod = "dispose")
+    public Scheduler calendarScheduler(
+            @Value("${calendar.bulkhead.threads:16}") int threads,
+            @Value("${calendar.bulkhead.queue-capacity:64}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("calendar-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return Schedulers.fromExecutorService(executor, "calendar");
+    }
+}
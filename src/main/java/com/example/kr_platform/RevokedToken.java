@@ -0,0 +1,40 @@
+package com.example.kr_platform;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// 期限前に失効させたアクセストークンの jti。TokenRevocationIndex の永続化先
+@Entity
+@Table(name = "revoked_tokens", indexes = @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at"))
+public class RevokedToken {
+
+    @Id
+    @Column(length = 36)
+    private String jti;
+    
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+    
+    @Column(name = "revoked_at", nullable = false)
+    private Instant revokedAt;
+    
+    public RevokedToken() {}
+    
+    public RevokedToken(String jti, Instant expiresAt, Instant revokedAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+        this.revokedAt = revokedAt;
+    }
+    
+    public String getJti() {
+        return jti;
+    }
+    
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.kr_platform;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// 予定一覧とツイート本文の組み立て。書式は起動時にコンパイルしたテンプレートと共有のフォーマッターを使い、
+// 1 回の描画では StringBuilder を 1 つだけ使い回す。時刻は呼び出し元が渡したタイムゾーンで表示する
+@Component
+public class ScheduleRenderer {
+
+    public static final String DEFAULT_DAY_EVENT = "• {title} ({time})[ 📍{location}]";
+    public static final String DEFAULT_UPCOMING_EVENT = "• {title} ({date} {time})";
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("MM/dd");
+
+    public enum Kind {
+        TODAY("今日", "📅 今日の予定 ({now})", "#予定 #カレンダー"),
+        TOMORROW("明日", "📅 明日の予定", "#明日の予定 #カレンダー"),
+        UPCOMING("今後", "📋 今後の予定", "#予定 #スケジュール");
+
+        private final String label;
+        private final ScheduleTemplate header;
+        private final ScheduleTemplate footer;
+
+        Kind(String label, String header, String footer) {
+            this.label = label;
+            this.header = ScheduleTemplate.compile(header);
+            this.footer = ScheduleTemplate.compile(footer);
+        }
+    }
+
+    private final ScheduleTemplate dayEvent;
+    private final ScheduleTemplate upcomingEvent;
+    private final ZoneId defaultZone;
+
+    public ScheduleRenderer(
+            @Value("${schedule.template.day-event:}") String dayEvent,
+            @Value("${schedule.template.upcoming-event:}") String upcomingEvent,
+            @Value("${schedule.time-zone:}") String defaultZone) {
+        this.dayEvent = ScheduleTemplate.compile(dayEvent.isEmpty() ? DEFAULT_DAY_EVENT : dayEvent);
+        this.upcomingEvent = ScheduleTemplate.compile(upcomingEvent.isEmpty() ? DEFAULT_UPCOMING_EVENT : upcomingEvent);
+        this.defaultZone = defaultZone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(defaultZone);
+    }
+
+    public ZoneId defaultZone() {
+        return defaultZone;
+    }
+
+    // ユーザーごとのタイムゾーン (未設定なら schedule.time-zone)
+    public ZoneId zoneOf(User user) {
+        return zoneOf(user.getTimeZone());
+    }
+
+    public ZoneId zoneOf(String timeZone) {
+        return timeZone == null || timeZone.isEmpty() ? defaultZone : ZoneId.of(timeZone);
+    }
+
+    // /test-today などで返す予定一覧
+    public String render(Kind kind, CalendarFanOut.Result fetched, ZoneId zone) {
+        return String.join("\n", lines(kind, fetched, zone));
+    }
+
+    // ツイート用。280 (重み付き) に収まらない場合は返信で繋ぐスレッドに分割する
+    public List<String> renderThread(Kind kind, CalendarFanOut.Result fetched, ZoneId zone, Instant now) {
+        StringBuilder out = new StringBuilder(64);
+        HeaderValues values = new HeaderValues(kind, LocalDateTime.ofInstant(now, zone));
+        kind.header.appendTo(out, values);
+        String header = out.toString();
+        out.setLength(0);
+        kind.footer.appendTo(out, values);
+        return TweetText.split(header, lines(kind, fetched, zone), out.toString());
+    }
+
+    List<String> lines(Kind kind, CalendarFanOut.Result fetched, ZoneId zone) {
+        List<String> lines = new ArrayList<>(fetched.events().size() + 1);
+        if (fetched.isFailed()) {
+            StringBuilder message = new StringBuilder("カレンダーの取得に失敗: ");
+            for (int i = 0; i < fetched.failures().size(); i++) {
+                message.append(i == 0 ? "" : ", ").append(fetched.failures().get(i).reason());
+            }
+            lines.add(message.toString());
+            return lines;
+        }
+
+        if (fetched.events().isEmpty()) {
+            lines.add(kind.label + "の予定はありません。");
+        } else {
+            ScheduleTemplate template = kind == Kind.UPCOMING ? upcomingEvent : dayEvent;
+            EventValues values = new EventValues(zone);
+            StringBuilder out = new StringBuilder(64);
+            for (Event event : fetched.events()) {
+                values.event = event;
+                out.setLength(0);
+                template.appendTo(out, values);
+                lines.add(out.toString());
+            }
+        }
+
+        // 一部のカレンダーだけ取得できなかった場合は、その旨を末尾に添える
+        if (fetched.isPartial()) {
+            StringBuilder note = new StringBuilder("※ 取得できなかったカレンダー: ");
+            for (int i = 0; i < fetched.failures().size(); i++) {
+                note.append(i == 0 ? "" : ", ").append(fetched.failures().get(i).source());
+            }
+            lines.add(note.toString());
+        }
+        return lines;
+    }
+
+    // 予定 1 件分の値。描画中は同じインスタンスの event を差し替えて使う
+    private static final class EventValues implements ScheduleTemplate.Values {
+        private final ZoneId zone;
+        private Event event;
+
+        EventValues(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public boolean appendTo(ScheduleTemplate.Field field, StringBuilder out) {
+            DateTime dateTime = event.getStart().getDateTime();
+            switch (field) {
+                case TITLE -> out.append(event.getSummary() == null ? "(タイトルなし)" : event.getSummary());
+                case TIME -> {
+                    if (dateTime == null) {
+                        out.append("終日");
+                    } else {
+                        TIME.formatTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getValue()), zone), out);
+                    }
+                }
+                case DATE -> {
+                    if (dateTime == null) {
+                        // 終日の予定は日付だけを持ち、UTC の 0 時として表される
+                        DATE.formatTo(LocalDate.ofInstant(Instant.ofEpochMilli(event.getStart().getDate().getValue()),
+                                ZoneOffset.UTC), out);
+                    } else {
+                        DATE.formatTo(LocalDate.ofInstant(Instant.ofEpochMilli(dateTime.getValue()), zone), out);
+                    }
+                }
+                case LOCATION -> {
+                    String location = event.getLocation();
+                    if (location == null || location.isEmpty()) {
+                        return false;
+                    }
+                    out.append(location);
+                }
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private record HeaderValues(Kind kind, LocalDateTime now) implements ScheduleTemplate.Values {
+
+        @Override
+        public boolean appendTo(ScheduleTemplate.Field field, StringBuilder out) {
+            switch (field) {
+                case LABEL -> out.append(kind.label);
+                case NOW -> TIME.formatTo(now, out);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
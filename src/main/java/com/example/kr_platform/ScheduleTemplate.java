@@ -0,0 +1,121 @@
+package com.example.kr_platform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 予定 1 行分などの書式を起動時に一度だけ解析しておき、描画時は StringBuilder に追記するだけにする。
+// {title} {time} {date} {location} {label} {now} を値で置き換える。
+// [...] で囲んだ部分は、中の値が 1 つでも空なら丸ごと出力しない (例: "[ 📍{location}]")
+final class ScheduleTemplate {
+
+    enum Field {
+        TITLE, TIME, DATE, LOCATION, LABEL, NOW
+    }
+
+    // 値を out に追記する。値がない場合は何も追記せず false を返す
+    @FunctionalInterface
+    interface Values {
+        boolean appendTo(Field field, StringBuilder out);
+    }
+
+    private sealed interface Segment permits Literal, Placeholder, Optional {
+    }
+
+    private record Literal(String text) implements Segment {
+    }
+
+    private record Placeholder(Field field) implements Segment {
+    }
+
+    private record Optional(Segment[] segments) implements Segment {
+    }
+
+    private final String source;
+    private final Segment[] segments;
+
+    private ScheduleTemplate(String source, Segment[] segments) {
+        this.source = source;
+        this.segments = segments;
+    }
+
+    static ScheduleTemplate compile(String source) {
+        int[] position = {0};
+        Segment[] segments = parse(source, position, false);
+        return new ScheduleTemplate(source, segments);
+    }
+
+    private static Segment[] parse(String source, int[] position, boolean inOptional) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        while (position[0] < source.length()) {
+            char c = source.charAt(position[0]++);
+            if (c == '{') {
+                int close = source.indexOf('}', position[0]);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed placeholder in template: " + source);
+                }
+                flush(literal, segments);
+                segments.add(new Placeholder(field(source.substring(position[0], close), source)));
+                position[0] = close + 1;
+            } else if (c == '[') {
+                if (inOptional) {
+                    throw new IllegalArgumentException("Nested optional section in template: " + source);
+                }
+                flush(literal, segments);
+                segments.add(new Optional(parse(source, position, true)));
+            } else if (c == ']' && inOptional) {
+                flush(literal, segments);
+                return segments.toArray(Segment[]::new);
+            } else {
+                literal.append(c);
+            }
+        }
+        if (inOptional) {
+            throw new IllegalArgumentException("Unclosed optional section in template: " + source);
+        }
+        flush(literal, segments);
+        return segments.toArray(Segment[]::new);
+    }
+
+    private static void flush(StringBuilder literal, List<Segment> segments) {
+        if (!literal.isEmpty()) {
+            segments.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    private static Field field(String name, String source) {
+        for (Field field : Field.values()) {
+            if (field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown placeholder {" + name + "} in template: " + source);
+    }
+
+    void appendTo(StringBuilder out, Values values) {
+        appendTo(segments, out, values);
+    }
+
+    private static boolean appendTo(Segment[] segments, StringBuilder out, Values values) {
+        boolean complete = true;
+        for (Segment segment : segments) {
+            if (segment instanceof Literal literal) {
+                out.append(literal.text());
+            } else if (segment instanceof Placeholder placeholder) {
+                complete &= values.appendTo(placeholder.field(), out);
+            } else if (segment instanceof Optional optional) {
+                int mark = out.length();
+                if (!appendTo(optional.segments(), out, values)) {
+                    out.setLength(mark);
+                }
+            }
+        }
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
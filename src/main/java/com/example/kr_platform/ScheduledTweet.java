@@ -0,0 +1,112 @@
+package com.example.kr_platform;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "scheduled_tweets", indexes = @Index(name = "idx_scheduled_tweets_status_due", columnList = "status, due_at"))
+public class ScheduledTweet {
+
+    public enum Status {
+        PENDING,
+        SENDING,
+        SENT,
+        FAILED,
+        CANCELLED
+    }
+
+    // scheduled_tweets.text の長さ
+    public static final int MAX_TEXT_LENGTH = 1000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, length = MAX_TEXT_LENGTH)
+    private String text;
+    
+    @Column(name = "due_at", nullable = false)
+    private Instant dueAt;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.PENDING;
+    
+    @Column(length = 2000)
+    private String result;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+    
+    // 送信を引き受けたインスタンス (ClusterCoordinator のノード ID)
+    @Column(name = "claimed_by", length = 128)
+    private String claimedBy;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    public ScheduledTweet() {}
+    
+    public ScheduledTweet(String text, Instant dueAt) {
+        this.text = text;
+        this.dueAt = dueAt;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public Instant getDueAt() {
+        return dueAt;
+    }
+    
+    public void setDueAt(Instant dueAt) {
+        this.dueAt = dueAt;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    public String getResult() {
+        return result;
+    }
+    
+    public void setResult(String result) {
+        this.result = result;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+    
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+    
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+}
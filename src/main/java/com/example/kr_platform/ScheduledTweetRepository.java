@@ -0,0 +1,54 @@
+package com.example.kr_platform;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ScheduledTweetRepository extends JpaRepository<ScheduledTweet, Long> {
+
+    // 期限の近いものの読み込み用。本文は読まずに ID と予定時刻だけを取得する
+    interface DueJob {
+        Long getId();
+        Instant getDueAt();
+    }
+
+    // 期限が before までの投稿待ち (期限順)
+    @Query("select t.id as id, t.dueAt as dueAt from ScheduledTweet t "
+            + "where t.status = com.example.kr_platform.ScheduledTweet.Status.PENDING and t.dueAt <= :before "
+            + "order by t.dueAt")
+    List<DueJob> findPendingDueBefore(@Param("before") Instant before, Pageable pageable);
+
+    Page<ScheduledTweet> findByStatusOrderByDueAtAsc(ScheduledTweet.Status status, Pageable pageable);
+
+    // 状態が expected のときだけ遷移させる。更新件数が 0 なら他で処理済み (キャンセルなど)
+    @Transactional
+    @Modifying
+    @Query("update ScheduledTweet t set t.status = :next where t.id = :id and t.status = :expected")
+    int transition(@Param("id") Long id,
+                   @Param("expected") ScheduledTweet.Status expected,
+                   @Param("next") ScheduledTweet.Status next);
+
+    // 投稿待ちのものを送信中にし、引き受けたインスタンスを記録する。0 件なら他のインスタンスが先に引き受けた
+    @Transactional
+    @Modifying
+    @Query("update ScheduledTweet t set t.status = com.example.kr_platform.ScheduledTweet.Status.SENDING, t.claimedBy = :node "
+            + "where t.id = :id and t.status = com.example.kr_platform.ScheduledTweet.Status.PENDING")
+    int claim(@Param("id") Long id, @Param("node") String node);
+
+    // 送信中のまま止まったインスタンス (liveNodes に含まれない) のものを失敗にする
+    @Transactional
+    @Modifying
+    @Query("update ScheduledTweet t set t.status = com.example.kr_platform.ScheduledTweet.Status.FAILED, t.result = :result "
+            + "where t.status = com.example.kr_platform.ScheduledTweet.Status.SENDING "
+            + "and (t.claimedBy is null or t.claimedBy not in :liveNodes)")
+    int failOrphaned(@Param("liveNodes") List<String> liveNodes, @Param("result") String result);
+}
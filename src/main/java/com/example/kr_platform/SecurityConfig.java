@@ -1,18 +1,29 @@
 package com.example.kr_platform;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSecurity
@@ -23,10 +34,23 @@ public class SecurityConfig {
     
     @Autowired
     private JwtAuthenticationFilter jwtAuthFilter;
+
+    // GET /actuator/prometheus を許可する送信元 (IP アドレスまたは CIDR)
+    @Value("${management.prometheus.allowed-addresses:127.0.0.1,::1}")
+    private List<String> prometheusAllowedAddresses;
     
+    // 新しいハッシュは auth.password.encoder の方式で作る。それ以外の方式・低いコストで保存されたハッシュは
+    // ログイン成功時に UserDetailsPasswordService 経由で作り直される。接頭辞のない既存のハッシュは bcrypt とみなす
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Value("${auth.password.encoder:bcrypt}") String encodingId,
+            @Value("${auth.password.bcrypt-strength:10}") int bcryptStrength) {
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", new BCryptPasswordEncoder(bcryptStrength));
+        encoders.put("argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(encodingId, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
     }
     
     @Bean
@@ -35,25 +59,38 @@ public class SecurityConfig {
     }
     
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsService);
+        authProvider.setPasswordEncoder(passwordEncoder);
         return authProvider;
     }
     
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, DaoAuthenticationProvider authenticationProvider) throws Exception {
         http
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(authz -> authz
-                .requestMatchers("/auth/login", "/auth/register", "/ping", "/auth/google", "/auth/google/callback", "/tweet-schedule", "/test-tomorrow", "/test-today", "/tweet").permitAll()
+                .requestMatchers("/auth/login", "/auth/register", "/auth/refresh", "/auth/logout", "/ping", "/auth/google", "/auth/google/callback", "/tweet-schedule", "/test-tomorrow", "/test-today", "/tweet", "/tweet-jobs/*", "/calendar/notifications").permitAll()
+                // /actuator は管理用のポート (management.server.port) で返すので、パスではなくエンドポイントで指定する
+                .requestMatchers(EndpointRequest.to("health")).permitAll()
+                // メトリクスはさらに送信元のアドレスを限る
+                .requestMatchers(EndpointRequest.to("prometheus")).access((authentication, context) ->
+                        new AuthorizationDecision(isAllowedScraper(context.getRequest())))
                 .anyRequest().authenticated()
             )
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-            .authenticationProvider(authenticationProvider())
+            .authenticationProvider(authenticationProvider)
             .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
         
         return http.build();
     }
+
+    private boolean isAllowedScraper(HttpServletRequest request) {
+        return prometheusAllowedAddresses.stream()
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .anyMatch(address -> new IpAddressMatcher(address).matches(request));
+    }
 }
\ No newline at end of file
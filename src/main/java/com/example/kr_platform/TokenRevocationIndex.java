@@ -0,0 +1,86 @@
+package com.example.kr_platform;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 失効させたアクセストークンの jti をメモリ上に持ち、認証のたびの失効確認を I/O なしで行う。
+// jti は UUID として保持し (文字列より小さい)、トークンの有効期限が過ぎたものは捨てる。
+// 起動時に DB から再構築し、以降は revoke() と定期的な DB の差分取り込みで更新する
+@Component
+public class TokenRevocationIndex {
+
+    private final RevokedTokenRepository repository;
+    // jti -> アクセストークンの有効期限 (エポック秒)
+    private final Map<UUID, Long> revoked = new ConcurrentHashMap<>();
+    private volatile Instant syncedAt = Instant.EPOCH;
+
+    public TokenRevocationIndex(RevokedTokenRepository repository) {
+        this.repository = repository;
+    }
+
+    // Web サーバーがリクエストを受け付ける前に読み込んでおく
+    @PostConstruct
+    public void load() {
+        Instant now = Instant.now();
+        repository.findByExpiresAtAfter(now).forEach(this::add);
+        syncedAt = now;
+    }
+
+    public boolean isRevoked(String jti) {
+        UUID id = parse(jti);
+        return id != null && revoked.containsKey(id);
+    }
+
+    public void revoke(String jti, Instant expiresAt) {
+        if (jti == null || expiresAt == null || !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        RevokedToken token = new RevokedToken(jti, expiresAt, Instant.now());
+        if (!repository.existsById(jti)) {
+            repository.save(token);
+        }
+        add(token);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    // 他のインスタンスで追加された失効を取り込み、期限切れのものを捨てる
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:30000}")
+    public void sync() {
+        Instant now = Instant.now();
+        // revoked_at の書き込みと読み込みの時刻差を吸収するため、少し前から読み直す
+        Instant since = syncedAt.minusSeconds(5);
+        repository.findByRevokedAtGreaterThanEqualAndExpiresAtAfter(since, now).forEach(this::add);
+        syncedAt = now;
+
+        long nowSeconds = now.getEpochSecond();
+        revoked.values().removeIf(expiresAt -> expiresAt <= nowSeconds);
+        repository.deleteExpired(now);
+    }
+
+    private void add(RevokedToken token) {
+        UUID id = parse(token.getJti());
+        if (id != null) {
+            revoked.put(id, token.getExpiresAt().getEpochSecond());
+        }
+    }
+
+    private static UUID parse(String jti) {
+        if (jti == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(jti);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.context.ContextSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ツイート投稿の送信キュー。呼び出し元のスレッドでは投稿せず、1 本のワーカーが
+// レート制限を守りながら順に送り出す。送信自体はノンブロッキングで、同時に応答待ちにできる数を制限する。
+// 429 / 5xx と接続できなかったものはジッター付き指数バックオフで再試行する。
+// 応答のタイムアウトなど、送った後に失敗したものは投稿されている可能性があるので再試行しない。
+// キューが一杯のときは QueueFullException で呼び出し元に押し戻す。
+// Twitter のサーキットブレーカーが開いている間は新規の受付を CircuitBreaker.OpenException で断り、
+// 受付済みのジョブは試行回数を使わずに、ブレーカーが通すようになるまで (HALF_OPEN の試しの送信が終わるまで) 送信を待つ。
+@Component
+public class TweetDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(TweetDispatcher.class);
+    // HALF_OPEN で試しの送信の結果を待っている間、送り直すまでの間隔
+    private static final long CIRCUIT_PROBE_WAIT_MILLIS = 100;
+    // 送信が終わったジョブの結果を参照できる期間
+    private static final long COMPLETED_JOB_RETENTION_NANOS = Duration.ofHours(1).toNanos();
+
+    private final TwitterClient client;
+    private final TwitterRateLimiter rateLimiter;
+    private final BlockingQueue<TweetJob> queue;
+    // バックオフを終えた再試行分。受付済みのジョブなので容量制限はかけず、新規より優先して送る
+    private final Queue<TweetJob> retries = new ConcurrentLinkedQueue<>();
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService retryTimer;
+    private final Cache<String, TweetJob> jobs;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Thread worker;
+
+    public TweetDispatcher(
+            TwitterClient client,
+            TwitterRateLimiter rateLimiter,
+            @Value("${twitter.dispatcher.queue-capacity:1000}") int queueCapacity,
+            @Value("${twitter.dispatcher.max-attempts:5}") int maxAttempts,
+            @Value("${twitter.dispatcher.base-backoff-ms:1000}") long baseBackoffMillis,
+            @Value("${twitter.dispatcher.max-backoff-ms:300000}") long maxBackoffMillis,
+            @Value("${twitter.dispatcher.max-in-flight:8}") int maxInFlight) {
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // 送信が終わっていないジョブは重さ 0・期限なしにして、件数でも時間でも捨てない。
+        // 終わったジョブは終わった時点から保持期間が過ぎるか、終わったものが上限を超えたら捨てる
+        this.jobs = Caffeine.newBuilder()
+                .maximumWeight(queueCapacity * 10L)
+                .weigher((String id, TweetJob job) -> job.isDone() ? 1 : 0)
+                .expireAfter(new UntilRetentionEnds())
+                .build();
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tweet-dispatcher-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker = new Thread(this::workLoop, "tweet-dispatcher");
+        this.worker.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+        retryTimer.shutdownNow();
+    }
+
+    public TweetJob submit(String text) {
+        return submit(text, null);
+    }
+
+    public TweetJob submit(String text, String inReplyTo) {
+        CircuitBreaker breaker = client.circuitBreaker();
+        if (breaker.state() == CircuitBreaker.State.OPEN) {
+            throw breaker.openException();
+        }
+        TweetJob job = new TweetJob(text, inReplyTo);
+        jobs.put(job.getId(), job);
+        if (!queue.offer(job)) {
+            jobs.invalidate(job.getId());
+            throw new QueueFullException();
+        }
+        return job;
+    }
+
+    public Optional<TweetJob> find(String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TweetJob job = retries.poll();
+                if (job == null) {
+                    job = queue.poll(100, TimeUnit.MILLISECONDS);
+                }
+                if (job != null) {
+                    send(job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Tweet dispatcher error", e);
+            }
+        }
+    }
+
+    private void send(TweetJob job) throws InterruptedException {
+        long wait;
+        while ((wait = client.circuitBreaker().retryAfterMillis()) > 0) {
+            Thread.sleep(wait);
+        }
+        inFlight.acquire();
+        while ((wait = rateLimiter.tryAcquire()) > 0) {
+            Thread.sleep(wait);
+        }
+
+        job.markSending();
+        // 投稿を受け付けたリクエストのトレースの下に、Twitter API への呼び出しのスパンを作る
+        try (ContextSnapshot.Scope scope = job.getContext().setThreadLocals()) {
+            client.post(job.getText(), job.getInReplyTo())
+                    .contextCapture()
+                    .subscribe(result -> onResult(job, result));
+        } catch (RuntimeException e) {
+            onResult(job, TwitterClient.TweetResult.networkError(e));
+        }
+    }
+
+    private void onResult(TweetJob job, TwitterClient.TweetResult result) {
+        // 次の送信がこの応答のレート制限ヘッダーを使えるよう、枠を返す前に反映する
+        rateLimiter.update(result);
+        inFlight.release();
+
+        if (result.circuitOpen()) {
+            job.markNotSent();
+            long wait = Math.max(client.circuitBreaker().retryAfterMillis(), CIRCUIT_PROBE_WAIT_MILLIS);
+            retryTimer.schedule(() -> retries.add(job), wait, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (result.isSuccessful() || !result.isRetryable() || job.getAttempts() >= maxAttempts) {
+            job.complete(result);
+            // 入れ直して、重さと保持期間を終わったジョブのものにする
+            jobs.asMap().replace(job.getId(), job, job);
+            return;
+        }
+        job.markRetrying(result);
+        retryTimer.schedule(() -> retries.add(job), backoffMillis(job.getAttempts()), TimeUnit.MILLISECONDS);
+    }
+
+    // 指数バックオフ。待ち時間の半分をランダムにして、複数インスタンスの再試行が揃わないようにする
+    long backoffMillis(int attempt) {
+        long exponential = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1);
+    }
+
+    private static final class UntilRetentionEnds implements Expiry<String, TweetJob> {
+
+        @Override
+        public long expireAfterCreate(String id, TweetJob job, long currentTime) {
+            return job.isDone() ? COMPLETED_JOB_RETENTION_NANOS : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(String id, TweetJob job, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, job, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String id, TweetJob job, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    public static class QueueFullException extends RuntimeException {
+
+        public QueueFullException() {
+            super("Tweet queue is full");
+        }
+    }
+}
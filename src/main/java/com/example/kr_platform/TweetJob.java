@@ -0,0 +1,113 @@
+package com.example.kr_platform;
+
+import io.micrometer.context.ContextSnapshot;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// 投稿キューに積まれたツイート 1 件。呼び出し元には ID だけを返し、結果は後から参照する
+public class TweetJob {
+
+    public enum Status {
+        QUEUED,
+        SENDING,
+        RETRYING,
+        SENT,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String text;
+    private final String inReplyTo;
+    private final Instant submittedAt = Instant.now();
+    private final CompletableFuture<TwitterClient.TweetResult> completion = new CompletableFuture<>();
+    // 投稿を受け付けたスレッドのトレース。送信はワーカーのスレッドで行うので、そこで復元する
+    private final ContextSnapshot context = ObservabilityConfig.CONTEXT_SNAPSHOTS.captureAll();
+    private volatile Status status = Status.QUEUED;
+    private volatile int attempts;
+    private volatile String result;
+    private volatile String nextJobId;
+
+    public TweetJob(String text) {
+        this(text, null);
+    }
+
+    // inReplyTo はスレッドで直前のツイートの ID
+    public TweetJob(String text, String inReplyTo) {
+        this.text = text;
+        this.inReplyTo = inReplyTo;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getInReplyTo() {
+        return inReplyTo;
+    }
+
+    // スレッドの続きを投稿したジョブの ID (続きがなければ null)
+    public String getNextJobId() {
+        return nextJobId;
+    }
+
+    ContextSnapshot getContext() {
+        return context;
+    }
+
+    void continuedBy(TweetJob next) {
+        nextJobId = next.getId();
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    // SENT か FAILED になった
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    public CompletableFuture<TwitterClient.TweetResult> completion() {
+        return completion;
+    }
+
+    void markSending() {
+        attempts++;
+        status = Status.SENDING;
+    }
+
+    // 送る前に止められた (サーキットブレーカーが通さなかった) ので、試行回数に数えずに待ちに戻す
+    void markNotSent() {
+        attempts--;
+        status = Status.QUEUED;
+    }
+
+    void markRetrying(TwitterClient.TweetResult lastResult) {
+        status = Status.RETRYING;
+        result = lastResult.describe();
+    }
+
+    void complete(TwitterClient.TweetResult finalResult) {
+        status = finalResult.isSuccessful() ? Status.SENT : Status.FAILED;
+        result = finalResult.describe();
+        completion.complete(finalResult);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.kr_platform;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 予約ツイートを DB に保存し、DelayQueue から期限が来たものだけを取り出して投稿する。
+// 待機中の予約はキュー上の (ID, 予定時刻) だけなので、件数が増えてもスレッド数は変わらない。
+// 複数インスタンスで動かす場合、各インスタンスは定期的に DB から期限の近い予約を読み、ID のハッシュで自分が受け持つものだけをキューに積む。
+// 送信は claim (PENDING → SENDING の条件付き UPDATE) に成功したインスタンスだけが行うので、同じ予約が二重に投稿されることはない
+@Component
+public class TweetScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TweetScheduler.class);
+
+    private static final long QUEUE_FULL_RETRY_MILLIS = 30_000;
+    private static final int POLL_BATCH = 1000;
+
+    private final ScheduledTweetRepository repository;
+    private final TweetDispatcher dispatcher;
+    private final ClusterCoordinator cluster;
+    private final long lookaheadMillis;
+    private final DelayQueue<DueJob> queue = new DelayQueue<>();
+    // キューに積んでいる予約の ID (ポーリングで同じものを重ねて積まない)
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+    private final Thread dueThread;
+
+    public TweetScheduler(
+            ScheduledTweetRepository repository,
+            TweetDispatcher dispatcher,
+            ClusterCoordinator cluster,
+            @Value("${tweet.scheduler.workers:2}") int workerCount,
+            @Value("${tweet.scheduler.poll-interval-ms:5000}") long pollIntervalMillis) {
+        this.repository = repository;
+        this.dispatcher = dispatcher;
+        this.cluster = cluster;
+        // 次のポーリングまでに期限が来るものを先に積んでおく
+        this.lookaheadMillis = pollIntervalMillis * 2;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.dueThread = new Thread(this::dispatchLoop, "tweet-scheduler");
+        this.dueThread.setDaemon(true);
+    }
+
+    // 再起動前に登録された予約も含め、期限の近いものから読み込む。期限を過ぎたものはすぐに投稿される
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poll();
+        dueThread.start();
+    }
+
+    @Scheduled(fixedDelayString = "${tweet.scheduler.poll-interval-ms:5000}", initialDelayString = "${tweet.scheduler.poll-interval-ms:5000}")
+    public void poll() {
+        Instant before = Instant.now().plusMillis(lookaheadMillis);
+        for (ScheduledTweetRepository.DueJob job : repository.findPendingDueBefore(before, PageRequest.of(0, POLL_BATCH))) {
+            if (cluster.owns("scheduled-tweet:" + job.getId())) {
+                enqueue(job.getId(), job.getDueAt().toEpochMilli());
+            }
+        }
+        // 送信中のまま止まったインスタンスの予約は、二重投稿を避けるため再送せずに失敗扱いにする
+        if (cluster.isLeader()) {
+            repository.failOrphaned(cluster.liveNodes(), "Interrupted: instance stopped while sending");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        dueThread.interrupt();
+        workers.shutdownNow();
+    }
+
+    public ScheduledTweet schedule(String text, Instant dueAt) {
+        ScheduledTweet saved = repository.save(new ScheduledTweet(text, dueAt));
+        // 受け持ちでなくても、期限が近ければ自分で積んでおく (claim で二重投稿は防がれる)
+        if (dueAt.isBefore(Instant.now().plusMillis(lookaheadMillis))) {
+            enqueue(saved.getId(), dueAt.toEpochMilli());
+        }
+        return saved;
+    }
+
+    // キューからは取り除かず、期限が来たときに状態を見て読み飛ばす
+    public boolean cancel(Long id) {
+        return repository.transition(id, ScheduledTweet.Status.PENDING, ScheduledTweet.Status.CANCELLED) == 1;
+    }
+
+    public Page<ScheduledTweet> listPending(int page, int size) {
+        return repository.findByStatusOrderByDueAtAsc(ScheduledTweet.Status.PENDING, PageRequest.of(page, size));
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    private void enqueue(Long id, long dueAtMillis) {
+        if (queued.add(id)) {
+            queue.add(new DueJob(id, dueAtMillis));
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                DueJob job = queue.take();
+                queued.remove(job.id());
+                workers.execute(() -> send(job.id()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Failed to dispatch scheduled tweet", e);
+            }
+        }
+    }
+
+    private void send(Long id) {
+        if (repository.claim(id, cluster.nodeId()) != 1) {
+            return;
+        }
+        ScheduledTweet tweet;
+        TweetJob job;
+        try {
+            tweet = repository.findById(id).orElse(null);
+            if (tweet == null) {
+                return;
+            }
+            job = dispatcher.submit(tweet.getText());
+        } catch (TweetDispatcher.QueueFullException e) {
+            // 送信キューが空くまで少し待ってから再投入する
+            requeue(id, QUEUE_FULL_RETRY_MILLIS);
+            return;
+        } catch (CircuitBreaker.OpenException e) {
+            // Twitter が回復を試す (HALF_OPEN になる) まで待ってから再投入する
+            requeue(id, Math.max(e.getRetryAfterMillis(), QUEUE_FULL_RETRY_MILLIS));
+            return;
+        } catch (RuntimeException e) {
+            // 投稿キューに入る前に失敗したので、まだ送っていない。送信中のまま残さず、少し待ってから再投入する
+            log.error("Failed to submit scheduled tweet {}", id, e);
+            requeue(id, QUEUE_FULL_RETRY_MILLIS);
+            return;
+        }
+        job.completion().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                // 送ったかどうか分からないので、送り直さずに失敗にする
+                log.error("Scheduled tweet {} ended without a result", id, error);
+                complete(tweet, TwitterClient.TweetResult.unknownOutcome(error));
+            } else {
+                complete(tweet, result);
+            }
+        }, workers);
+    }
+
+    private void requeue(Long id, long delayMillis) {
+        if (repository.transition(id, ScheduledTweet.Status.SENDING, ScheduledTweet.Status.PENDING) == 1) {
+            enqueue(id, System.currentTimeMillis() + delayMillis);
+        }
+    }
+
+    private void complete(ScheduledTweet tweet, TwitterClient.TweetResult result) {
+        String description = result.describe();
+        tweet.setStatus(result.isSuccessful() ? ScheduledTweet.Status.SENT : ScheduledTweet.Status.FAILED);
+        tweet.setResult(description.length() > 2000 ? description.substring(0, 2000) : description);
+        tweet.setCompletedAt(LocalDateTime.now());
+        repository.save(tweet);
+    }
+
+    private record DueJob(Long id, long dueAtMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtMillis, ((DueJob) other).dueAtMillis);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.kr_platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Twitter の重み付き文字数 (上限 280) の計算と、長い本文のスレッド分割。
+// twitter-text v3 の規則に従い、ラテン文字などは 1、日本語や絵文字などそれ以外は 2、URL は一律 23 として数える。
+// 絵文字の結合シーケンスはコードポイントごとに数えるので、実際より多めになる (上限を超えない側に倒れる)
+public final class TweetText {
+
+    public static final int MAX_WEIGHTED_LENGTH = 280;
+
+    private static final int URL_WEIGHT = 23;
+    private static final Pattern URL = Pattern.compile("https?://\\S+");
+    private static final String ELLIPSIS = "…";
+    // 分割した場合に末尾へ付ける " (n/m)" の分として確保しておく重み
+    private static final int COUNTER_RESERVE = " (99/99)".length();
+
+    private TweetText() {
+    }
+
+    public static int weightedLength(CharSequence text) {
+        int length = 0;
+        int position = 0;
+        Matcher url = URL.matcher(text);
+        while (url.find()) {
+            length += weightOf(text, position, url.start()) + URL_WEIGHT;
+            position = url.end();
+        }
+        return length + weightOf(text, position, text.length());
+    }
+
+    private static int weightOf(CharSequence text, int from, int to) {
+        int weight = 0;
+        for (int i = from; i < to; ) {
+            int codePoint = Character.codePointAt(text, i);
+            weight += isLight(codePoint) ? 1 : 2;
+            i += Character.charCount(codePoint);
+        }
+        return weight;
+    }
+
+    private static boolean isLight(int codePoint) {
+        return codePoint <= 4351
+                || (codePoint >= 8192 && codePoint <= 8205)
+                || (codePoint >= 8208 && codePoint <= 8223)
+                || (codePoint >= 8242 && codePoint <= 8247);
+    }
+
+    // header は最初の投稿、footer は最後の投稿に付ける。lines は行の途中では分割しない。
+    // 1 行だけで上限を超える場合はその行を切り詰める。1 件に収まる場合は分割しない
+    public static List<String> split(String header, List<String> lines, String footer) {
+        String single = join(header, lines, footer);
+        if (weightedLength(single) <= MAX_WEIGHTED_LENGTH) {
+            return List.of(single);
+        }
+
+        int budget = MAX_WEIGHTED_LENGTH - COUNTER_RESERVE;
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder(header);
+        int currentWeight = weightedLength(header);
+        boolean currentHasLines = false;
+        for (String line : lines) {
+            String fitted = fit(line, budget);
+            int lineWeight = weightedLength(fitted);
+            // ヘッダーと本文の間は空行、本文の行どうしは改行 1 つで区切る
+            String separator = current.isEmpty() ? "" : (currentHasLines ? "\n" : "\n\n");
+            if (!current.isEmpty() && currentWeight + separator.length() + lineWeight > budget) {
+                parts.add(current.toString());
+                current.setLength(0);
+                currentWeight = 0;
+                separator = "";
+            }
+            current.append(separator).append(fitted);
+            currentWeight += separator.length() + lineWeight;
+            currentHasLines = true;
+        }
+        if (!footer.isEmpty()) {
+            if (!current.isEmpty() && currentWeight + 2 + weightedLength(footer) > budget) {
+                parts.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(current.isEmpty() ? "" : "\n\n").append(footer);
+        }
+        if (!current.isEmpty()) {
+            parts.add(current.toString());
+        }
+
+        int total = parts.size();
+        List<String> numbered = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            numbered.add(total == 1 ? parts.get(i) : parts.get(i) + " (" + (i + 1) + "/" + total + ")");
+        }
+        return numbered;
+    }
+
+    static String join(String header, List<String> lines, String footer) {
+        StringBuilder text = new StringBuilder(header);
+        if (!lines.isEmpty()) {
+            if (!text.isEmpty()) {
+                text.append("\n\n");
+            }
+            text.append(String.join("\n", lines));
+        }
+        if (!footer.isEmpty()) {
+            if (!text.isEmpty()) {
+                text.append("\n\n");
+            }
+            text.append(footer);
+        }
+        return text.toString();
+    }
+
+    // 上限を超える行はコードポイント単位で切り詰めて末尾を "…" にする
+    static String fit(String line, int budget) {
+        if (weightedLength(line) <= budget) {
+            return line;
+        }
+        int limit = budget - weightedLength(ELLIPSIS);
+        int weight = 0;
+        int end = 0;
+        while (end < line.length()) {
+            int codePoint = line.codePointAt(end);
+            int next = weight + (isLight(codePoint) ? 1 : 2);
+            if (next > limit) {
+                break;
+            }
+            weight = next;
+            end += Character.charCount(codePoint);
+        }
+        return line.substring(0, end) + ELLIPSIS;
+    }
+}
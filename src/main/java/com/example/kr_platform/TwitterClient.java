@@ -0,0 +1,221 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Twitter v2 /2/tweets への投稿 1 回分。レート制限ヘッダーも含めて結果を返す。
+// WebClient (Reactor Netty) のコネクションプールを共有し、呼び出し元のスレッドをブロックしない。
+// 接続と応答にはタイムアウトを設け、障害が続いてサーキットブレーカーが開いている間は送らずに失敗 (statusCode 0) を返す。
+@Component
+public class TwitterClient {
+
+    private final WebClient webClient;
+    private final String consumerKey;
+    private final String consumerSecret;
+    private final OAuth1Signer signer;
+    private final URI tweetsUri;
+    private final CircuitBreaker breaker;
+
+    public TwitterClient(
+            WebClient.Builder webClientBuilder,
+            @Value("${twitter.consumerKey}") String consumerKey,
+            @Value("${twitter.consumerSecret}") String consumerSecret,
+            @Value("${twitter.accessToken}") String accessToken,
+            @Value("${twitter.accessTokenSecret}") String accessTokenSecret,
+            @Value("${twitter.api.base-url:https://api.twitter.com}") String baseUrl,
+            @Value("${twitter.api.max-connections:50}") int maxConnections,
+            @Value("${twitter.api.connect-timeout-ms:3000}") int connectTimeoutMillis,
+            @Value("${twitter.api.response-timeout-ms:10000}") long responseTimeoutMillis,
+            @Qualifier("twitterCircuitBreaker") CircuitBreaker breaker) {
+        ConnectionProvider connections = ConnectionProvider.builder("twitter")
+                .maxConnections(maxConnections)
+                .build();
+        HttpClient httpClient = HttpClient.create(connections)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMillis));
+        this.webClient = webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        this.consumerKey = consumerKey;
+        this.consumerSecret = consumerSecret;
+        this.signer = new OAuth1Signer(consumerKey, consumerSecret, accessToken, accessTokenSecret);
+        this.tweetsUri = URI.create(baseUrl + "/2/tweets");
+        this.breaker = breaker;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return breaker;
+    }
+
+    public Mono<TweetResult> post(String text) {
+        return post(text, null);
+    }
+
+    // inReplyToTweetId を指定すると、そのツイートへの返信として投稿する (スレッドの 2 件目以降)
+    public Mono<TweetResult> post(String text, String inReplyToTweetId) {
+        return post(signer, text, inReplyToTweetId);
+    }
+
+    // 連携済みユーザーのアクセストークンで署名する (コンシューマーキーはこのアプリのもの)
+    public OAuth1Signer signerFor(String accessToken, String accessTokenSecret) {
+        return new OAuth1Signer(consumerKey, consumerSecret, accessToken, accessTokenSecret);
+    }
+
+    public Mono<TweetResult> post(OAuth1Signer signer, String text, String inReplyToTweetId) {
+        Map<String, Object> body = inReplyToTweetId == null
+                ? Map.of("text", text)
+                : Map.of("text", text, "reply", Map.of("in_reply_to_tweet_id", inReplyToTweetId));
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                return Mono.just(TweetResult.circuitOpen(breaker.openException()));
+            }
+            // 応答を受け取る前に購読が取り消された場合 (呼び出し元のタイムアウト) も失敗として数える
+            AtomicBoolean recorded = new AtomicBoolean();
+            return webClient.post()
+                    .uri(tweetsUri)
+                    .header(HttpHeaders.AUTHORIZATION, signer.authorizationHeader("POST", tweetsUri))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(body)
+                    .exchangeToMono(this::toResult)
+                    .onErrorResume(e -> Mono.just(TweetResult.networkError(e)))
+                    .doOnNext(result -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(result);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.onFailure();
+                        }
+                    });
+        });
+    }
+
+    // 通信の失敗と 5xx だけを障害として数える (429 などは API 自体は応答している)
+    private void record(TweetResult result) {
+        if (result.statusCode() == 0 || result.statusCode() >= 500) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    private Mono<TweetResult> toResult(ClientResponse response) {
+        ClientResponse.Headers headers = response.headers();
+        int status = response.statusCode().value();
+        Long limit = parseLong(headers, "x-rate-limit-limit");
+        Long remaining = parseLong(headers, "x-rate-limit-remaining");
+        Long reset = parseLong(headers, "x-rate-limit-reset");
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> new TweetResult(status, body, limit, remaining, reset, false, false));
+    }
+
+    private static Long parseLong(ClientResponse.Headers headers, String name) {
+        String value = headers.asHttpHeaders().getFirst(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // statusCode が 0 のときは通信自体に失敗している。
+    // outcomeUnknown は、リクエストを送った後に応答が得られなかった (タイムアウト、接続が切れたなど) 場合に true。
+    // Twitter 側では投稿されている可能性があるので、送り直すと二重投稿になりうる。
+    // circuitOpen はサーキットブレーカーが開いていて (HALF_OPEN で試しの送信がすでに出ている場合も含む) 送らなかった場合に true
+    public record TweetResult(int statusCode, String body, Long rateLimitLimit, Long rateLimitRemaining,
+                              Long rateLimitResetEpochSeconds, boolean outcomeUnknown, boolean circuitOpen) {
+
+        private static final ObjectMapper JSON = new ObjectMapper();
+
+        // 例外の原因から、送る前の失敗か送った後の失敗かを判断する
+        static TweetResult networkError(Throwable e) {
+            return wasNeverSent(e) ? notSent(e) : unknownOutcome(e);
+        }
+
+        // 接続できなかった場合。送り直しても二重投稿にならない
+        static TweetResult notSent(Throwable e) {
+            return new TweetResult(0, describe(e), null, null, null, false, false);
+        }
+
+        // 送った後に応答が得られなかった場合
+        static TweetResult unknownOutcome(Throwable e) {
+            return new TweetResult(0, describe(e), null, null, null, true, false);
+        }
+
+        static TweetResult circuitOpen(CircuitBreaker.OpenException e) {
+            return new TweetResult(0, describe(e), null, null, null, false, true);
+        }
+
+        private static boolean wasNeverSent(Throwable e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                // Netty の接続タイムアウト (ConnectTimeoutException) も ConnectException
+                if (cause instanceof CircuitBreaker.OpenException || cause instanceof ConnectException
+                        || cause instanceof UnknownHostException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String describe(Throwable e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        public boolean isSuccessful() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        // 429 / 5xx と、送る前に失敗したものだけを再試行する
+        public boolean isRetryable() {
+            return statusCode == 429 || statusCode >= 500 || (statusCode == 0 && !outcomeUnknown);
+        }
+
+        // 投稿に成功した場合のツイート ID (レスポンスの data.id)
+        public String tweetId() {
+            if (!isSuccessful()) {
+                return null;
+            }
+            try {
+                JsonNode id = JSON.readTree(body).path("data").path("id");
+                return id.isTextual() ? id.asText() : null;
+            } catch (JsonProcessingException e) {
+                return null;
+            }
+        }
+
+        public String describe() {
+            if (isSuccessful()) {
+                return "Tweet posted successfully: " + body;
+            }
+            if (outcomeUnknown) {
+                return "Tweet may or may not have been posted (not retried): " + body;
+            }
+            return "Failed to post tweet: " + (statusCode == 0 ? "" : statusCode + " - ") + body;
+        }
+    }
+}
@@ -1,50 +1,142 @@
 package com.example.kr_platform;
 
-import com.github.scribejava.core.builder.ServiceBuilder;
-import com.github.scribejava.core.model.OAuth1AccessToken;
-import com.github.scribejava.core.model.OAuthRequest;
-import com.github.scribejava.core.model.Response;
-import com.github.scribejava.core.model.Verb;
-import com.github.scribejava.core.oauth.OAuth10aService;
-import com.github.scribejava.apis.TwitterApi;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.EnableScheduling;
+import io.micrometer.context.ContextSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.CompletableFuture;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
-// @EnableScheduling - 定期実行を無効化
 public class TwitterController {
 
+	private static final Logger log = LoggerFactory.getLogger(TwitterController.class);
+
+	private static final Duration WAIT_TIMEOUT = Duration.ofSeconds(25);
+	// 重複リクエストに対して最初の結果を返したことを示す
+	private static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
 	private final TwitterService twitterService;
 	private final CalendarService calendarService;
+	private final TweetScheduler tweetScheduler;
+	private final IdempotencyStore idempotencyStore;
+	// 予定の取得専用のスレッド (ResilienceConfig)。Google が遅くても他のリクエストのスレッドは埋まらない
+	private final Scheduler calendarScheduler;
 
-	public TwitterController(TwitterService twitterService, CalendarService calendarService) {
+	public TwitterController(TwitterService twitterService, CalendarService calendarService, TweetScheduler tweetScheduler,
+			IdempotencyStore idempotencyStore, Scheduler calendarScheduler) {
 		this.twitterService = twitterService;
 		this.calendarService = calendarService;
+		this.tweetScheduler = tweetScheduler;
+		this.idempotencyStore = idempotencyStore;
+		this.calendarScheduler = calendarScheduler;
 	}
 
+	// 投稿系のエンドポイントは Idempotency-Key ヘッダーを受け付ける。同じキーの 2 回目以降は投稿せず、最初のジョブを返す。
+	// キーがない場合は内容と時間枠 (idempotency.window-seconds) から作るので、同じ内容の短時間の再送も 1 回にまとまる
 	@PostMapping("/tweet")
-	public String tweet(@RequestParam("text") String text) {
-		return twitterService.postTweet(text);
+	public Mono<ResponseEntity<Map<String, Object>>> tweet(
+			@RequestParam("text") String text,
+			@RequestParam(defaultValue = "false") boolean wait,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotent(idempotencyKey, "tweet", new String[] {text},
+				Mono.fromSupplier(() -> twitterService.postTweet(text)), wait);
+	}
+
+	@GetMapping("/tweet-jobs/{id}")
+	public ResponseEntity<Map<String, Object>> getTweetJob(@PathVariable String id) {
+		return twitterService.findJob(id)
+				.map(job -> ResponseEntity.ok(describe(job)))
+				.orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	@ExceptionHandler(TweetDispatcher.QueueFullException.class)
+	public ResponseEntity<String> handleQueueFull(TweetDispatcher.QueueFullException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, "30")
+				.body(e.getMessage());
+	}
+
+	// Twitter / Google のサーキットブレーカーが開いている。HALF_OPEN に移るまでの秒数を Retry-After で返す
+	@ExceptionHandler(CircuitBreaker.OpenException.class)
+	public ResponseEntity<String> handleCircuitOpen(CircuitBreaker.OpenException e) {
+		long seconds = Math.max(1, (e.getRetryAfterMillis() + 999) / 1000);
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+				.body(e.getMessage());
+	}
+
+	// 予定の取得用のスレッドと待ち行列が埋まっている
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<String> handleCalendarBusy(RejectedExecutionException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, "1")
+				.body("Calendar requests are saturated");
 	}
 
 	@PostMapping("/schedule-tweet")
-	public String scheduleTweet(@RequestParam("text") String text, @RequestParam("minutes") int minutes) {
-		CompletableFuture.runAsync(() -> {
-			try {
-				Thread.sleep(minutes * 60 * 1000L);
-				twitterService.postTweet(text);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+	public ResponseEntity<String> scheduleTweet(
+			@RequestParam("text") String text,
+			@RequestParam("minutes") int minutes,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		if (minutes < 0) {
+			return ResponseEntity.badRequest().body("minutes must not be negative");
+		}
+		// scheduled_tweets.text の長さ (文字数) を超えると保存時に失敗する
+		if (text.codePointCount(0, text.length()) > ScheduledTweet.MAX_TEXT_LENGTH) {
+			return ResponseEntity.badRequest().body("text must be at most " + ScheduledTweet.MAX_TEXT_LENGTH + " characters");
+		}
+		IdempotencyStore.Key key = keyOf(idempotencyKey, "schedule-tweet", text, String.valueOf(minutes));
+		IdempotencyStore.Entry existing = idempotencyStore.begin(key);
+		if (existing != null) {
+			if (existing.isPending()) {
+				return inProgress();
 			}
-		});
-		return "Tweet scheduled for " + minutes + " minutes from now";
+			return ResponseEntity.ok()
+					.header(REPLAYED_HEADER, "true")
+					.body("Tweet already scheduled (id: " + existing.reference() + ")");
+		}
+		ScheduledTweet scheduled;
+		try {
+			scheduled = tweetScheduler.schedule(text, Instant.now().plus(Duration.ofMinutes(minutes)));
+		} catch (RuntimeException e) {
+			idempotencyStore.abandon(key);
+			throw e;
+		}
+		idempotencyStore.complete(key, String.valueOf(scheduled.getId()), idempotencyStore.ttlFor(idempotencyKey != null));
+		return ResponseEntity.ok("Tweet scheduled for " + minutes + " minutes from now (id: " + scheduled.getId() + ")");
+	}
+
+	@GetMapping("/scheduled-tweets")
+	public List<ScheduledTweet> listScheduledTweets(
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "50") int size) {
+		return tweetScheduler.listPending(page, Math.min(size, 500)).getContent();
+	}
+
+	@DeleteMapping("/scheduled-tweets/{id}")
+	public ResponseEntity<String> cancelScheduledTweet(@PathVariable Long id) {
+		if (tweetScheduler.cancel(id)) {
+			return ResponseEntity.ok("Scheduled tweet " + id + " cancelled");
+		}
+		return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No pending scheduled tweet with id " + id);
 	}
 
 	@GetMapping("/auto-tweet/status")
@@ -52,136 +144,234 @@ public class TwitterController {
 		return "Auto-tweeting is enabled. Tweets are posted every hour.";
 	}
 
+	// 予定の取得はブロッキングな Google API 呼び出しなので、Tomcat のスレッドではなく calendarScheduler で行う。
+	// キーがない場合は取得前に重複を判定するので、投稿する文面ではなく対象の日付から作る
 	@PostMapping("/tweet-schedule")
-	public String tweetTodaysSchedule() {
-		return twitterService.postScheduleTweet();
+	public Mono<ResponseEntity<Map<String, Object>>> tweetTodaysSchedule(
+			@RequestParam(defaultValue = "false") boolean wait,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotent(idempotencyKey, "tweet-schedule", new String[] {twitterService.today().toString()},
+				Mono.fromCallable(twitterService::postScheduleTweet).subscribeOn(calendarScheduler), wait);
 	}
 
 	@PostMapping("/tweet-upcoming")
-	public String tweetUpcomingEvents(@RequestParam(defaultValue = "5") int maxResults) {
-		return twitterService.postUpcomingEventsTweet(maxResults);
+	public Mono<ResponseEntity<Map<String, Object>>> tweetUpcomingEvents(
+			@RequestParam(defaultValue = "5") int maxResults,
+			@RequestParam(defaultValue = "false") boolean wait,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotent(idempotencyKey, "tweet-upcoming", new String[] {String.valueOf(maxResults)},
+				Mono.fromCallable(() -> twitterService.postUpcomingEventsTweet(maxResults))
+						.subscribeOn(calendarScheduler), wait);
 	}
 
 	@PostMapping("/tweet-tomorrow")
-	public String tweetTomorrowsSchedule() {
-		return twitterService.postTomorrowsTweet();
+	public Mono<ResponseEntity<Map<String, Object>>> tweetTomorrowsSchedule(
+			@RequestParam(defaultValue = "false") boolean wait,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotent(idempotencyKey, "tweet-tomorrow", new String[] {twitterService.today().plusDays(1).toString()},
+				Mono.fromCallable(twitterService::postTomorrowsTweet).subscribeOn(calendarScheduler), wait);
 	}
 
 	@GetMapping("/test-tomorrow")
-	public String testTomorrowsSchedule() {
-		String schedule = calendarService.getTomorrowsEvents();
-		System.out.println("明日の予定: " + schedule);
-		return "明日の予定: " + schedule;
+	public Mono<String> testTomorrowsSchedule() {
+		return Mono.fromCallable(calendarService::getTomorrowsEvents)
+				.subscribeOn(calendarScheduler)
+				.map(schedule -> {
+					log.debug("明日の予定: {}", schedule);
+					return "明日の予定: " + schedule;
+				});
 	}
 
 	@GetMapping("/test-today")
-	public String testTodaysSchedule() {
-		String schedule = calendarService.getTodaysEvents();
-		System.out.println("今日の予定: " + schedule);
-		return "今日の予定: " + schedule;
+	public Mono<String> testTodaysSchedule() {
+		return Mono.fromCallable(calendarService::getTodaysEvents)
+				.subscribeOn(calendarScheduler)
+				.map(schedule -> {
+					log.debug("今日の予定: {}", schedule);
+					return "今日の予定: " + schedule;
+				});
+	}
+
+	// 最初のリクエストだけが submission を実行する。処理中の重複には 409、完了済みなら最初のジョブの状態を返す。
+	// 投稿キューが一杯などで積めなかった場合は記録を消し、同じキーで再試行できるようにする
+	private Mono<ResponseEntity<Map<String, Object>>> idempotent(String idempotencyKey, String operation, String[] content,
+			Mono<TweetJob> submission, boolean wait) {
+		IdempotencyStore.Key key = keyOf(idempotencyKey, operation, content);
+		IdempotencyStore.Entry existing = idempotencyStore.begin(key);
+		if (existing != null) {
+			return Mono.just(existing.isPending() ? inProgress() : replay(existing.reference()));
+		}
+		Duration ttl = idempotencyStore.ttlFor(idempotencyKey != null);
+		return respond(submission
+				.doOnNext(job -> idempotencyStore.complete(key, job.getId(), ttl))
+				.doOnError(e -> idempotencyStore.abandon(key))
+				.doOnCancel(() -> idempotencyStore.abandon(key)), wait);
+	}
+
+	private IdempotencyStore.Key keyOf(String idempotencyKey, String operation, String... content) {
+		return idempotencyKey != null
+				? idempotencyStore.explicitKey(operation, idempotencyKey)
+				: idempotencyStore.derivedKey(operation, content);
+	}
+
+	private ResponseEntity<Map<String, Object>> replay(String jobId) {
+		Map<String, Object> body = twitterService.findJob(jobId)
+				.map(TwitterController::describe)
+				.orElseGet(() -> {
+					// ジョブの記録は既に消えている (投稿は済んでいる)
+					Map<String, Object> response = new LinkedHashMap<>();
+					response.put("jobId", jobId);
+					return response;
+				});
+		return ResponseEntity.ok().header(REPLAYED_HEADER, "true").body(body);
+	}
+
+	private static <T> ResponseEntity<T> inProgress() {
+		return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").build();
+	}
+
+	// 投稿はキューに積むだけなので 202 とジョブ ID を返す。結果は /tweet-jobs/{id} で確認する。
+	// wait=true の場合は投稿完了まで待つが、待っている間もリクエストスレッドは占有しない
+	private static Mono<ResponseEntity<Map<String, Object>>> respond(Mono<TweetJob> submission, boolean wait) {
+		return submission.flatMap(job -> {
+			if (!wait) {
+				return Mono.just(accepted(job));
+			}
+			return Mono.fromFuture(job.completion())
+					.map(result -> ResponseEntity.ok(describe(job)))
+					.timeout(WAIT_TIMEOUT, Mono.fromSupplier(() -> accepted(job)));
+		});
+	}
+
+	private static ResponseEntity<Map<String, Object>> accepted(TweetJob job) {
+		return ResponseEntity.accepted().body(describe(job));
+	}
+
+	private static Map<String, Object> describe(TweetJob job) {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("jobId", job.getId());
+		response.put("status", job.getStatus());
+		response.put("attempts", job.getAttempts());
+		if (job.getResult() != null) {
+			response.put("result", job.getResult());
+		}
+		if (job.getNextJobId() != null) {
+			response.put("nextJobId", job.getNextJobId());
+		}
+		return response;
 	}
 }
 
 @Service
-// @EnableScheduling - 定期実行を無効化
 class TwitterService {
 
-	private final OAuth10aService service;
-	private final OAuth1AccessToken accessToken;
+	private static final Logger log = LoggerFactory.getLogger(TwitterService.class);
+
+	private final TweetDispatcher dispatcher;
 	private final CalendarService calendarService;
+	private final ScheduleRenderer renderer;
+	private final ClusterCoordinator cluster;
 
-	public TwitterService(
-			@Value("${twitter.consumerKey}") String consumerKey,
-			@Value("${twitter.consumerSecret}") String consumerSecret,
-			@Value("${twitter.accessToken}") String accessToken,
-			@Value("${twitter.accessTokenSecret}") String accessTokenSecret,
-			CalendarService calendarService) {
-		this.service = new ServiceBuilder(consumerKey)
-				.apiSecret(consumerSecret)
-				.build(TwitterApi.instance());
-		this.accessToken = new OAuth1AccessToken(accessToken, accessTokenSecret);
+	public TwitterService(TweetDispatcher dispatcher, CalendarService calendarService, ScheduleRenderer renderer,
+			ClusterCoordinator cluster) {
+		this.dispatcher = dispatcher;
 		this.calendarService = calendarService;
+		this.renderer = renderer;
+		this.cluster = cluster;
 	}
 
-	public String postTweet(String text) {
-		try {
-			OAuthRequest request = new OAuthRequest(Verb.POST, "https://api.twitter.com/2/tweets");
-			
-			// JSONエスケープを正しく処理
-			String escapedText = text.replace("\\", "\\\\")
-								   .replace("\"", "\\\"")
-								   .replace("\n", "\\n")
-								   .replace("\r", "\\r")
-								   .replace("\t", "\\t");
-			
-			request.setPayload("{\"text\":\"" + escapedText + "\"}");
-			request.addHeader("Content-Type", "application/json");
-			
-			service.signRequest(accessToken, request);
-			Response response = service.execute(request);
-			
-			if (response.isSuccessful()) {
-				return "Tweet posted successfully: " + response.getBody();
-			} else {
-				return "Failed to post tweet: " + response.getCode() + " - " + response.getBody();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			return "Failed to post tweet: " + e.getMessage();
-		}
+	public TweetJob postTweet(String text) {
+		return dispatcher.submit(text);
+	}
+
+	public Optional<TweetJob> findJob(String jobId) {
+		return dispatcher.find(jobId);
 	}
 
-	public String postScheduleTweet() {
-		String schedule = calendarService.getTodaysEvents();
-		String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm"));
-		String tweetText = "📅 今日の予定 (" + timestamp + ")\n\n" + schedule + "\n\n#予定 #カレンダー";
-		return postTweet(tweetText);
+	public LocalDate today() {
+		return LocalDate.now(renderer.defaultZone());
 	}
 
-	public String postUpcomingEventsTweet(int maxResults) {
-		String events = calendarService.getUpcomingEvents(maxResults);
-		String tweetText = "📋 今後の予定\n\n" + events + "\n\n#予定 #スケジュール";
-		return postTweet(tweetText);
+	public TweetJob postScheduleTweet() {
+		ZoneId zone = renderer.defaultZone();
+		return postSchedule(ScheduleRenderer.Kind.TODAY, calendarService.fetchDay(LocalDate.now(zone), zone), zone);
 	}
 
-	public String postTomorrowsTweet() {
-		String schedule = calendarService.getTomorrowsEvents();
-		String tweetText = "📅 明日の予定\n\n" + schedule + "\n\n#明日の予定 #カレンダー";
-		return postTweet(tweetText);
+	public TweetJob postUpcomingEventsTweet(int maxResults) {
+		return postSchedule(ScheduleRenderer.Kind.UPCOMING, calendarService.fetchUpcoming(maxResults), renderer.defaultZone());
 	}
 
-	// @Scheduled(fixedRate = 3600000) // 1時間ごと - 一時的に無効化
-	@Async
+	public TweetJob postTomorrowsTweet() {
+		ZoneId zone = renderer.defaultZone();
+		return postSchedule(ScheduleRenderer.Kind.TOMORROW, calendarService.fetchDay(LocalDate.now(zone).plusDays(1), zone), zone);
+	}
+
+	TweetJob postSchedule(ScheduleRenderer.Kind kind, CalendarFanOut.Result fetched, ZoneId zone) {
+		return postThread(renderer.renderThread(kind, fetched, zone, Instant.now()));
+	}
+
+	// 先頭のツイートだけをすぐに積み、2 件目以降は直前のツイートが投稿されて ID が分かってから返信として積む。
+	// 途中で失敗した場合は残りを投稿しない。戻り値は先頭のジョブで、続きは nextJobId で辿れる
+	public TweetJob postThread(List<String> parts) {
+		TweetJob first = dispatcher.submit(parts.get(0));
+		continueThread(first, parts, 1);
+		return first;
+	}
+
+	private void continueThread(TweetJob previous, List<String> parts, int index) {
+		if (index >= parts.size()) {
+			return;
+		}
+		previous.completion().thenAccept(result -> {
+			String tweetId = result.tweetId();
+			if (tweetId == null) {
+				log.warn("Thread stopped after job {}: {}", previous.getId(), result.describe());
+				return;
+			}
+			// 続きのジョブも最初のリクエストのトレースに繋げる
+			try (ContextSnapshot.Scope scope = previous.getContext().setThreadLocals()) {
+				TweetJob next = dispatcher.submit(parts.get(index), tweetId);
+				previous.continuedBy(next);
+				continueThread(next, parts, index + 1);
+			} catch (TweetDispatcher.QueueFullException | CircuitBreaker.OpenException e) {
+				log.warn("Thread stopped after job {}: {}", previous.getId(), e.getMessage());
+			}
+		});
+	}
+
+	// 複数インスタンスのどれか 1 つだけが投稿する (各回を job_claims に記録できたインスタンスが投稿)。
+	// 既定の cron "-" では動かない。以前の設定は毎時 0 分 ("0 0 * * * *")
+	@Scheduled(cron = "${twitter.auto-tweet.cron:-}")
 	public void autoTweet() {
-		String currentTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+		LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+		if (!cluster.claimOnce("auto-tweet", now.toString())) {
+			return;
+		}
+		String currentTime = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
 		String autoTweetText = "定期ツイート: " + currentTime + " #自動投稿";
 		
 		try {
-			OAuthRequest request = new OAuthRequest(Verb.POST, "https://api.twitter.com/2/tweets");
-			request.setPayload("{\"text\":\"" + autoTweetText.replace("\"", "\\\"") + "\"}");
-			request.addHeader("Content-Type", "application/json");
-			
-			service.signRequest(accessToken, request);
-			Response response = service.execute(request);
-			
-			if (response.isSuccessful()) {
-				System.out.println("Auto tweet posted: " + autoTweetText);
-			} else {
-				System.err.println("Failed to post auto tweet: " + response.getCode() + " - " + response.getBody());
-			}
+			TweetJob job = postTweet(autoTweetText);
+			log.info("Auto tweet queued: {}", job.getId());
 		} catch (Exception e) {
-			System.err.println("Failed to post auto tweet: " + e.getMessage());
+			cluster.release("auto-tweet", now.toString());
+			log.error("Failed to post auto tweet", e);
 		}
 	}
 
-	// @Scheduled(cron = "0 0 9 * * ?") // 毎日朝9時 - 一時的に無効化
-	@Async
+	// 以前の設定は毎日朝 9 時 ("0 0 9 * * *")
+	@Scheduled(cron = "${twitter.auto-schedule-tweet.cron:-}")
 	public void autoScheduleTweet() {
+		String today = LocalDate.now(renderer.defaultZone()).toString();
+		if (!cluster.claimOnce("auto-schedule-tweet", today)) {
+			return;
+		}
 		try {
 			postScheduleTweet();
-			System.out.println("Daily schedule tweet posted");
+			log.info("Daily schedule tweet queued");
 		} catch (Exception e) {
-			System.err.println("Failed to post daily schedule tweet: " + e.getMessage());
+			cluster.release("auto-schedule-tweet", today);
+			log.error("Failed to post daily schedule tweet", e);
 		}
 	}
 }
@@ -0,0 +1,67 @@
+package com.example.kr_platform;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+// ユーザーが連携した Twitter アカウントのアクセストークン。ダイジェストはこのトークンで本人として投稿する。
+// トークンは CredentialCipher で暗号化した値を持つ (追加認証データは cipherContext)
+@Entity
+@Table(name = "twitter_credentials")
+public class TwitterCredential {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(name = "access_token", nullable = false)
+    private String accessToken;
+    
+    @Column(name = "access_token_secret", nullable = false)
+    private String accessTokenSecret;
+    
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        updatedAt = Instant.now();
+    }
+    
+    public TwitterCredential() {}
+
+    // 暗号化の追加認証データ。Google の認証情報 (アカウント ID) や他のユーザーの行に写しても復号できないようにする
+    public static String cipherContext(Long userId) {
+        return "twitter_credentials:" + userId;
+    }
+    
+    public TwitterCredential(Long userId, String accessToken, String accessTokenSecret) {
+        this.userId = userId;
+        this.accessToken = accessToken;
+        this.accessTokenSecret = accessTokenSecret;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getAccessToken() {
+        return accessToken;
+    }
+    
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+    
+    public String getAccessTokenSecret() {
+        return accessTokenSecret;
+    }
+    
+    public void setAccessTokenSecret(String accessTokenSecret) {
+        this.accessTokenSecret = accessTokenSecret;
+    }
+    
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.kr_platform;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// V7: 平文で保存していた twitter_credentials のトークンを CredentialCipher で暗号化する。
+// 鍵 (google.credentials.encryption-key) が要るので SQL ではなく Bean として Flyway に渡す (Spring Boot が JavaMigration の Bean を拾う)
+@Component
+public class TwitterCredentialEncryptionMigration implements JavaMigration {
+
+    private final CredentialCipher cipher;
+
+    public TwitterCredentialEncryptionMigration(CredentialCipher cipher) {
+        this.cipher = cipher;
+    }
+
+    @Override
+    public MigrationVersion getVersion() {
+        return MigrationVersion.fromVersion("7");
+    }
+
+    @Override
+    public String getDescription() {
+        return "encrypt twitter credentials";
+    }
+
+    @Override
+    public Integer getChecksum() {
+        return null;
+    }
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return true;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        Map<Long, String[]> rows = new LinkedHashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "select user_id, access_token, access_token_secret from twitter_credentials");
+             ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                rows.put(resultSet.getLong(1), new String[] {resultSet.getString(2), resultSet.getString(3)});
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement(
+                "update twitter_credentials set access_token = ?, access_token_secret = ? where user_id = ?")) {
+            for (Map.Entry<Long, String[]> row : rows.entrySet()) {
+                String cipherContext = TwitterCredential.cipherContext(row.getKey());
+                update.setString(1, cipher.encrypt(row.getValue()[0], cipherContext));
+                update.setString(2, cipher.encrypt(row.getValue()[1], cipherContext));
+                update.setLong(3, row.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+    }
+}
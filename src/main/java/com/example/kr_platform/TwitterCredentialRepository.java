@@ -0,0 +1,20 @@
+package com.example.kr_platform;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TwitterCredentialRepository extends JpaRepository<TwitterCredential, Long> {
+
+    // ダイジェストの対象 (有効にしていて Twitter を連携済みのユーザー) を ID 順に afterId の次から読む
+    @Query("select new com.example.kr_platform.DigestTarget(u.id, u.username, u.timeZone, c.accessToken, c.accessTokenSecret) "
+            + "from User u, TwitterCredential c "
+            + "where c.userId = u.id and u.digestEnabled = true and u.id > :afterId "
+            + "order by u.id")
+    List<DigestTarget> findDigestTargets(@Param("afterId") long afterId, Pageable pageable);
+}
@@ -0,0 +1,59 @@
+package com.example.kr_platform;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Twitter が返す x-rate-limit-* ヘッダーを元にしたトークンバケット。
+// 残り回数をトークンとして持ち、リセット時刻になったら上限まで補充する。
+// ヘッダーを受け取るまでは設定値の上限・ウィンドウで動く。
+@Component
+public class TwitterRateLimiter {
+
+    private long limit;
+    private long tokens;
+    private long resetAtMillis;
+    private final long windowMillis;
+
+    public TwitterRateLimiter(
+            @Value("${twitter.rate-limit.default-limit:50}") long defaultLimit,
+            @Value("${twitter.rate-limit.default-window-seconds:900}") long defaultWindowSeconds) {
+        this.limit = defaultLimit;
+        this.tokens = defaultLimit;
+        this.windowMillis = defaultWindowSeconds * 1000;
+        this.resetAtMillis = System.currentTimeMillis() + windowMillis;
+    }
+
+    // トークンを 1 つ取得する。取得できた場合は 0、できない場合は次に補充されるまでの待ち時間 (ミリ秒) を返す
+    public synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (now >= resetAtMillis) {
+            tokens = limit;
+            resetAtMillis = now + windowMillis;
+        }
+        if (tokens > 0) {
+            tokens--;
+            return 0;
+        }
+        return resetAtMillis - now;
+    }
+
+    public synchronized void update(TwitterClient.TweetResult result) {
+        if (result.rateLimitLimit() != null) {
+            limit = result.rateLimitLimit();
+        }
+        if (result.rateLimitRemaining() != null) {
+            tokens = result.rateLimitRemaining();
+        }
+        if (result.rateLimitResetEpochSeconds() != null) {
+            resetAtMillis = result.rateLimitResetEpochSeconds() * 1000;
+        }
+        // 429 なのに残り回数が返ってこない場合でも、リセットまでは送らない
+        if (result.statusCode() == 429 && result.rateLimitRemaining() == null) {
+            tokens = 0;
+        }
+    }
+
+    public synchronized long availableTokens() {
+        return tokens;
+    }
+}
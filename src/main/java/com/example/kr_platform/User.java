@@ -1,16 +1,24 @@
 package com.example.kr_platform;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.time.LocalDateTime;
 
+// 二次キャッシュ (Caffeine の JCache) に載せる。スキーマは db/migration の Flyway で管理する
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "idx_users_username", columnList = "username", unique = true))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 public class User {
+    // IDENTITY だと INSERT ごとに ID を取りに行くためバッチ化できない
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
     
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username;
     
     @Column(nullable = false)
@@ -19,6 +27,14 @@ public class User {
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
+    // 予定を表示するタイムゾーン (例: Asia/Tokyo)。null なら schedule.time-zone を使う
+    @Column(name = "time_zone", length = 64)
+    private String timeZone;
+    
+    // 毎日のダイジェスト (DigestPipeline) の対象にするか
+    @Column(name = "digest_enabled", nullable = false)
+    private boolean digestEnabled;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -62,4 +78,20 @@ public class User {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+    
+    public String getTimeZone() {
+        return timeZone;
+    }
+    
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
+    
+    public boolean isDigestEnabled() {
+        return digestEnabled;
+    }
+    
+    public void setDigestEnabled(boolean digestEnabled) {
+        this.digestEnabled = digestEnabled;
+    }
 }
\ No newline at end of file
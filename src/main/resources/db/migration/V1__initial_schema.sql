@@ -0,0 +1,52 @@
+-- ユーザー。ID は一括登録時に JDBC バッチが効くようシーケンスで採番する (Hibernate の allocationSize と同じ 50 刻み)
+create sequence users_seq start with 1 increment by 50;
+
+create table users (
+    id          bigint       not null,
+    username    varchar(255) not null,
+    password    varchar(255) not null,
+    created_at  timestamp(6),
+    primary key (id)
+);
+
+-- ログイン・登録の重複確認はこの索引で引く
+create unique index idx_users_username on users (username);
+
+create table scheduled_tweets (
+    id            bigint generated by default as identity,
+    text          varchar(1000) not null,
+    due_at        timestamp(6) with time zone not null,
+    status        varchar(16)   not null,
+    result        varchar(2000),
+    created_at    timestamp(6),
+    completed_at  timestamp(6),
+    primary key (id)
+);
+
+create index idx_scheduled_tweets_status_due on scheduled_tweets (status, due_at);
+
+create table refresh_tokens (
+    id                 bigint generated by default as identity,
+    token_hash         varchar(64)  not null,
+    family_id          varchar(36)  not null,
+    user_id            bigint       not null,
+    username           varchar(255) not null,
+    access_token_id    varchar(36),
+    access_expires_at  timestamp(6) with time zone,
+    issued_at          timestamp(6) with time zone not null,
+    expires_at         timestamp(6) with time zone not null,
+    revoked_at         timestamp(6) with time zone,
+    primary key (id)
+);
+
+create unique index idx_refresh_tokens_hash on refresh_tokens (token_hash);
+create index idx_refresh_tokens_family on refresh_tokens (family_id);
+
+create table revoked_tokens (
+    jti         varchar(36) not null,
+    expires_at  timestamp(6) with time zone not null,
+    revoked_at  timestamp(6) with time zone not null,
+    primary key (jti)
+);
+
+create index idx_revoked_tokens_revoked_at on revoked_tokens (revoked_at);
@@ -0,0 +1,2 @@
+-- 予定を表示するタイムゾーン (IANA の ID。null なら schedule.time-zone を使う)
+alter table users add column time_zone varchar(64);
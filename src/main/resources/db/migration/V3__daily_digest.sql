@@ -0,0 +1,15 @@
+-- 毎日のダイジェスト投稿を受け取るかどうか
+alter table users add column digest_enabled boolean default false not null;
+
+-- ユーザーごとの Twitter のアクセストークン (コンシューマーキーはアプリ共通)
+create table twitter_credentials (
+    user_id              bigint        not null,
+    access_token         varchar(255)  not null,
+    access_token_secret  varchar(255)  not null,
+    updated_at           timestamp(6) with time zone,
+    primary key (user_id),
+    constraint fk_twitter_credentials_user foreign key (user_id) references users (id) on delete cascade
+);
+
+-- ダイジェスト対象を ID 順に読み進める
+create index idx_users_digest on users (digest_enabled, id);
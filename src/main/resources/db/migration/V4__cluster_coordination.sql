@@ -0,0 +1,30 @@
+-- 起動中のインスタンス。heartbeat_at が lease の期間内に更新されているものを生きているとみなす
+create table cluster_nodes (
+    node_id       varchar(128) not null,
+    started_at    timestamp(6) with time zone not null,
+    heartbeat_at  timestamp(6) with time zone not null,
+    primary key (node_id)
+);
+
+-- リーダーなどの排他的な lease。期限切れなら他のインスタンスが条件付き UPDATE で奪える
+create table cluster_leases (
+    name        varchar(64)  not null,
+    holder      varchar(128) not null,
+    expires_at  timestamp(6) with time zone not null,
+    primary key (name)
+);
+
+-- 1 回だけ実行する仕事の記録 (定期ツイートの各回、ユーザーごと・日ごとのダイジェストなど)。
+-- 主キーへの INSERT に成功したインスタンスだけが実行する
+create table job_claims (
+    job         varchar(64)  not null,
+    slot        varchar(64)  not null,
+    node_id     varchar(128) not null,
+    claimed_at  timestamp(6) with time zone not null,
+    primary key (job, slot)
+);
+
+create index idx_job_claims_claimed_at on job_claims (claimed_at);
+
+-- 予約ツイートを送信中のインスタンス。止まったインスタンスのものだけを失敗扱いにする
+alter table scheduled_tweets add column claimed_by varchar(128);
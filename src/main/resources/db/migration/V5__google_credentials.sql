@@ -0,0 +1,16 @@
+-- Google の OAuth 認証情報 (以前は tokens/ ディレクトリのファイル)。アカウント ID ごとに 1 行
+-- トークンは暗号化した値 (Base64) を持つ。version は楽観ロック用
+create table google_credentials (
+    account_id     varchar(64)   not null,
+    user_id        bigint,
+    access_token   varchar(4096),
+    refresh_token  varchar(2048),
+    expires_at_ms  bigint,
+    version        bigint        not null,
+    updated_at     timestamp(6) with time zone,
+    primary key (account_id),
+    constraint fk_google_credentials_user foreign key (user_id) references users (id) on delete cascade
+);
+
+-- 登録ユーザーが連携できる Google アカウントは 1 つだけ
+create unique index idx_google_credentials_user on google_credentials (user_id);
@@ -0,0 +1,4 @@
+-- Twitter のアクセストークンを暗号化した値 (Base64) で持つので列を広げる。
+-- 既存の行の暗号化は鍵が要るので V7 (TwitterCredentialEncryptionMigration) で行う
+alter table twitter_credentials alter column access_token varchar(1024) not null;
+alter table twitter_credentials alter column access_token_secret varchar(1024) not null;
@@ -0,0 +1,66 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// RANDOM_PORT では管理用のポートも別のランダムなポートになる。テストでは既定でメトリクスの出力が無効なので有効にする
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability(tracing = false)
+class ActuatorSecurityTest {
+
+	private final HttpClient http = HttpClient.newHttpClient();
+
+	@LocalServerPort
+	private int serverPort;
+
+	@LocalManagementPort
+	private int managementPort;
+
+	@Value("${management.prometheus.allowed-addresses}")
+	private String allowedAddresses;
+
+	@Test
+	void metricsAreServedOnlyOnTheManagementPort() throws Exception {
+		assertThat(managementPort).isNotEqualTo(serverPort);
+		assertThat(get(serverPort, "/actuator/prometheus")).isNotEqualTo(200);
+		assertThat(get(serverPort, "/actuator/health")).isNotEqualTo(200);
+
+		assertThat(get(managementPort, "/actuator/health")).isEqualTo(200);
+		// テストはこのホストから取得するので、既定の許可リスト (127.0.0.1 と ::1) に入っている
+		assertThat(allowedAddresses).contains("127.0.0.1");
+		assertThat(get(managementPort, "/actuator/prometheus")).isEqualTo(200);
+	}
+
+	// 許可リストにないアドレスからは、管理用のポートでもメトリクスを返さない
+	@Nested
+	@TestPropertySource(properties = "management.prometheus.allowed-addresses=192.0.2.1")
+	class FromAnotherAddress {
+
+		@LocalManagementPort
+		private int managementPort;
+
+		@Test
+		void metricsAreRefused() throws Exception {
+			assertThat(get(managementPort, "/actuator/prometheus")).isEqualTo(403);
+			assertThat(get(managementPort, "/actuator/health")).isEqualTo(200);
+		}
+	}
+
+	private int get(int port, String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).GET().build();
+		return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+}
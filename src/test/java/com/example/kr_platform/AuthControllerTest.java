@@ -0,0 +1,27 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AuthControllerTest {
+
+	// 入力の検証だけを見るので、RefreshTokenService などは注入しない (渡った時点で NullPointerException になる)
+	private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthController()).build();
+
+	@Test
+	void refreshAndLogoutWithoutARefreshTokenAreBadRequests() throws Exception {
+		for (String path : new String[] {"/auth/refresh", "/auth/logout"}) {
+			for (String body : new String[] {"{}", "{\"refreshToken\":null}", "{\"refreshToken\":\"  \"}"}) {
+				mockMvc.perform(post(path).contentType(MediaType.APPLICATION_JSON).content(body))
+						.andExpect(status().isBadRequest())
+						.andExpect(content().string("refreshToken is required"));
+			}
+		}
+	}
+}
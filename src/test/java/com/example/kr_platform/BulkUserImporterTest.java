@@ -0,0 +1,129 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 各チャンクを自前のトランザクションで書き込むため、テスト全体をトランザクションで包まない
+@DataJpaTest(properties = "auth.bulk.chunk-size=3")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(BulkUserImporterTest.Config.class)
+class BulkUserImporterTest {
+
+	@TestConfiguration
+	@Import(BulkUserImporter.class)
+	static class Config {
+
+		@Bean
+		PasswordEncoder passwordEncoder() {
+			return new BCryptPasswordEncoder(4);
+		}
+
+		@Bean
+		ObjectMapper objectMapper() {
+			return new ObjectMapper();
+		}
+	}
+
+	@Autowired
+	private BulkUserImporter importer;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<List<BulkUserImporter.RowResult>> chunks = new ArrayList<>();
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("delete from users");
+	}
+
+	@Test
+	void importsCsvAndReportsEveryRow() throws Exception {
+		userRepository.saveAndFlush(new User("existing", "{noop}x"));
+
+		BulkUserImporter.Summary summary = importCsv("""
+				username,password
+				alice,"pa,ss ""quoted""\"
+				bob,secret
+				alice,again
+				existing,secret
+				,nameless
+				carol,secret
+				""");
+
+		assertThat(summary).isEqualTo(new BulkUserImporter.Summary(3, 2, 1));
+		assertThat(chunks).hasSize(2);
+		assertThat(chunks.stream().flatMap(List::stream).map(BulkUserImporter.RowResult::status)).containsExactly(
+				BulkUserImporter.Status.CREATED,
+				BulkUserImporter.Status.CREATED,
+				BulkUserImporter.Status.DUPLICATE,
+				BulkUserImporter.Status.DUPLICATE,
+				BulkUserImporter.Status.INVALID,
+				BulkUserImporter.Status.CREATED);
+		assertThat(chunks.get(0).get(0).line()).isEqualTo(2);
+		assertThat(passwordEncoder.matches("pa,ss \"quoted\"", userRepository.findByUsername("alice").orElseThrow().getPassword()))
+				.isTrue();
+	}
+
+	@Test
+	void importsNdjson() throws Exception {
+		BulkUserImporter.Summary summary = importer.importUsers(reader("""
+				{"username":"alice","password":"secret"}
+				{"username":"bob"}
+				not json
+				"""), BulkUserImporter.Format.NDJSON, chunks::add);
+
+		assertThat(summary).isEqualTo(new BulkUserImporter.Summary(1, 0, 2));
+		assertThat(userRepository.findByUsername("alice")).isPresent();
+	}
+
+	@Test
+	void idsDoNotCollideWithHibernateAllocatedIds() throws Exception {
+		User before = userRepository.saveAndFlush(new User("before", "{noop}x"));
+		importCsv("alice,secret\nbob,secret\n");
+		User after = userRepository.saveAndFlush(new User("after", "{noop}x"));
+
+		List<Long> ids = jdbcTemplate.queryForList("select id from users", Long.class);
+		assertThat(ids).hasSize(4).doesNotHaveDuplicates();
+		assertThat(ids).contains(before.getId(), after.getId());
+	}
+
+	@Test
+	void parsesQuotedCsvFields() {
+		assertThat(BulkUserImporter.parseCsvLine("a,b")).containsExactly("a", "b");
+		assertThat(BulkUserImporter.parseCsvLine("\"a,1\",\"b\"\"2\"")).containsExactly("a,1", "b\"2");
+		assertThat(BulkUserImporter.parseCsvLine("a,")).containsExactly("a", "");
+	}
+
+	private BulkUserImporter.Summary importCsv(String csv) throws Exception {
+		return importer.importUsers(reader(csv), BulkUserImporter.Format.CSV, chunks::add);
+	}
+
+	private static BufferedReader reader(String text) {
+		return new BufferedReader(new StringReader(text));
+	}
+}
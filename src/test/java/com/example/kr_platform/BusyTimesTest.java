@@ -0,0 +1,95 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BusyTimesTest {
+
+	private static final long MINUTE = 60_000L;
+
+	@Test
+	void overlappingAndAdjacentIntervalsAreMerged() {
+		BusyIntervals intervals = new BusyIntervals();
+		add(intervals, 60, 120);
+		add(intervals, 0, 30);
+		add(intervals, 90, 150);
+		add(intervals, 30, 45);
+
+		BusyTimes busy = intervals.snapshot();
+
+		assertThat(busy.size()).isEqualTo(2);
+		assertThat(busy.isFree(45, 60)).isTrue();
+		assertThat(busy.isFree(44, 60)).isFalse();
+		assertThat(busy.isFree(149, 200)).isFalse();
+		assertThat(busy.isFree(150, 200)).isTrue();
+	}
+
+	@Test
+	void freeSlotsSkipPastBusyIntervalsOnTheSlotGrid() {
+		BusyIntervals intervals = new BusyIntervals();
+		add(intervals, 30, 70);
+		add(intervals, 120, 150);
+		BusyTimes busy = intervals.snapshot();
+
+		// 0-30 は空き、30-90 は 30-70 に重なる、90-120 は空き、120-150 は埋まり、150-180 と 180-210 は空き
+		assertThat(busy.freeSlots(0, 210, 30, 10)).containsExactly(0, 90, 150, 180);
+		assertThat(busy.freeSlots(0, 210, 30, 2)).containsExactly(0, 90);
+		// 枠は from 基準。最後の枠が to をはみ出す場合は返さない
+		assertThat(busy.freeSlots(5, 200, 30, 10)).containsExactly(155);
+		assertThatThrownBy(() -> busy.freeSlots(0, 210, 0, 10)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void unionCombinesCalendars() {
+		BusyIntervals first = new BusyIntervals();
+		add(first, 0, 30);
+		add(first, 100, 130);
+		BusyIntervals second = new BusyIntervals();
+		add(second, 20, 60);
+		add(second, 200, 230);
+
+		BusyTimes busy = BusyTimes.union(List.of(first.snapshot(), second.snapshot()));
+
+		assertThat(busy.size()).isEqualTo(3);
+		assertThat(busy.freeSlots(0, 240, 30, 10)).containsExactly(60, 150);
+	}
+
+	@Test
+	void removingAnIntervalFreesItsTimeAndUnchangedSnapshotsAreReused() {
+		BusyIntervals intervals = new BusyIntervals();
+		add(intervals, 0, 60);
+		add(intervals, 30, 90);
+		BusyTimes before = intervals.snapshot();
+		assertThat(intervals.snapshot()).isSameAs(before);
+
+		assertThat(intervals.remove(30 * MINUTE, 90 * MINUTE)).isTrue();
+		assertThat(intervals.remove(30 * MINUTE, 90 * MINUTE)).isFalse();
+
+		BusyTimes after = intervals.snapshot();
+		assertThat(after).isNotSameAs(before);
+		assertThat(after.isFree(60, 90)).isTrue();
+		assertThat(after.isFree(0, 60)).isFalse();
+		assertThat(before.isFree(60, 90)).isFalse();
+	}
+
+	@Test
+	void partialMinutesAreRoundedOutwards() {
+		BusyIntervals intervals = new BusyIntervals();
+		intervals.add(10 * MINUTE + 1, 20 * MINUTE - 1);
+		intervals.add(40 * MINUTE, 40 * MINUTE);
+
+		BusyTimes busy = intervals.snapshot();
+
+		assertThat(busy.size()).isEqualTo(1);
+		assertThat(busy.isFree(10, 20)).isFalse();
+		assertThat(busy.isFree(20, 60)).isTrue();
+	}
+
+	private static void add(BusyIntervals intervals, long startMinute, long endMinute) {
+		intervals.add(startMinute * MINUTE, endMinute * MINUTE);
+	}
+}
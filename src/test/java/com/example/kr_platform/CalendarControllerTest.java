@@ -0,0 +1,56 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CalendarControllerTest {
+
+	private final AtomicInteger busyLookups = new AtomicInteger();
+	private final CalendarFanOut fanOut = new CalendarFanOut(5_000);
+	// 同期で保持するのは 1 日前以降 (sync-lookback-days=1)
+	private final CalendarEventCache cache = new CalendarEventCache(null, 60, 16, 1);
+	private final CalendarController controller = new CalendarController(
+			new CalendarService(null, cache, fanOut, new ScheduleRenderer("", "", ""), "user:primary") {
+				@Override
+				public Availability fetchBusy(List<CalendarSource> calendars) {
+					busyLookups.incrementAndGet();
+					return new Availability(new BusyIntervals().snapshot(), List.of());
+				}
+			},
+			new ObjectMapper(), Schedulers.immediate());
+
+	@AfterEach
+	void stopFanOut() {
+		fanOut.shutdown();
+	}
+
+	@Test
+	void freeSlotsBeforeTheSyncedWindowAreRejected() {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+
+		ResponseEntity<?> past = freeSlots(now.minus(3, ChronoUnit.DAYS), now.minus(2, ChronoUnit.DAYS));
+		ResponseEntity<?> upcoming = freeSlots(now.plus(1, ChronoUnit.HOURS), now.plus(2, ChronoUnit.HOURS));
+
+		// 予定を保持していない期間を、すべて空きとして返さない
+		assertThat(past.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(upcoming.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(((Map<?, ?>) upcoming.getBody()).get("slots")).asList().hasSize(2);
+		assertThat(busyLookups).hasValue(1);
+	}
+
+	private ResponseEntity<?> freeSlots(Instant from, Instant to) {
+		return controller.freeSlots(from.toString(), to.toString(), 30, 10, false, null).block();
+	}
+}
@@ -0,0 +1,338 @@
+package com.example.kr_platform;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CalendarEventCacheTest {
+
+	private static final ZoneId ZONE = ZoneId.systemDefault();
+	private static final CalendarSource PRIMARY = CalendarSource.primary(GoogleCalendarClient.DEFAULT_USER_ID);
+	private static final DateTimeFormatter RFC3339 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+
+	private final LocalDate today = LocalDate.now(ZONE);
+	private final List<String> queries = new CopyOnWriteArrayList<>();
+	private final Map<String, String> responses = new ConcurrentHashMap<>();
+	// 設定すると、差分同期 (sync-1) の応答をラッチが開くまで止める
+	private volatile CountDownLatch syncEntered;
+	private volatile CountDownLatch releaseSync;
+	private HttpServer server;
+	private GoogleCalendarClient calendarClient;
+
+	@BeforeEach
+	void startFakeCalendar() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/calendar/v3/calendars/primary/events", this::handleList);
+		server.start();
+
+		String rootUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		Calendar calendar = new Calendar.Builder(new NetHttpTransport(), GoogleCalendarClient.JSON_FACTORY, null)
+				.setRootUrl(rootUrl)
+				.setApplicationName("test")
+				.build();
+		calendarClient = new GoogleCalendarClient() {
+			@Override
+			public Calendar getCalendar(String userId) {
+				return calendar;
+			}
+		};
+
+		responses.put("full", page(List.of(event("e1", "朝会", 9)), "page-2", null));
+		responses.put("page-2", page(List.of(event("e2", "打ち合わせ", 14)), null, "sync-1"));
+	}
+
+	@AfterEach
+	void stopFakeCalendar() {
+		server.stop(0);
+	}
+
+	@Test
+	void fullSyncFollowsEveryPageAndServesRepeatLookupsFromCache() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+
+		List<Event> first = cache.getEventsForDay(PRIMARY, today, ZONE);
+		List<Event> second = cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		assertThat(first).extracting(Event::getId).containsExactly("e1", "e2");
+		assertThat(second).isSameAs(first);
+		assertThat(queries).hasSize(2);
+		assertThat(cache.stats()).isEqualTo(new CalendarEventCache.Stats(1, 1, 0, 1, 0));
+	}
+
+	@Test
+	void expiredEntriesAreRefreshedWithTheSyncToken() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 0, 16, 1);
+		cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		responses.put("sync-1", page(List.of(
+				cancelled("e1"),
+				event("e3", "レビュー", 11)), null, "sync-2"));
+
+		List<Event> refreshed = cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		assertThat(refreshed).extracting(Event::getId).containsExactly("e3", "e2");
+		assertThat(queries.get(2)).contains("syncToken=sync-1").doesNotContain("timeMin");
+		assertThat(cache.stats().refreshes()).isEqualTo(1);
+		assertThat(cache.stats().fullSyncs()).isEqualTo(1);
+	}
+
+	@Test
+	void goneSyncTokenFallsBackToFullSync() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 0, 16, 1);
+		cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		responses.put("sync-1", "GONE");
+
+		List<Event> reloaded = cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		assertThat(reloaded).extracting(Event::getId).containsExactly("e1", "e2");
+		assertThat(cache.stats().fullSyncs()).isEqualTo(2);
+	}
+
+	@Test
+	void lastSyncedEventsAreServedWhileTheCalendarIsUnavailable() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("Google Calendar API", 1, 60_000, 1);
+		ReflectionTestUtils.setField(calendarClient, "breaker", breaker);
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 0, 16, 1);
+		cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		responses.put("sync-1", "FAIL");
+
+		List<Event> afterFailure = cache.getEventsForDay(PRIMARY, today, ZONE);
+		List<Event> whileOpen = cache.getEventsForDay(PRIMARY, today, ZONE);
+
+		assertThat(afterFailure).extracting(Event::getId).containsExactly("e1", "e2");
+		assertThat(whileOpen).extracting(Event::getId).containsExactly("e1", "e2");
+		// 1 回失敗した時点でブレーカーが開くので、3 回目の参照では API を呼ばない
+		assertThat(queries).hasSize(3);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(cache.stats().staleServed()).isEqualTo(2);
+	}
+
+	@Test
+	void upcomingEventsAreServedFromTheSyncedCalendar() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+
+		List<Event> upcoming = cache.getUpcomingEvents(PRIMARY,
+				today.atStartOfDay(ZONE).toInstant(), 1);
+		cache.getUpcomingEvents(PRIMARY, today.atStartOfDay(ZONE).toInstant(), 1);
+
+		assertThat(upcoming).extracting(Event::getId).containsExactly("e1");
+		assertThat(queries).hasSize(2);
+		assertThat(cache.stats().hits()).isEqualTo(1);
+	}
+
+	@Test
+	void daysBeforeTheSyncedWindowAreFetchedDirectly() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+		LocalDate lastWeek = today.minusDays(7);
+
+		List<Event> events = cache.getEventsForDay(PRIMARY, lastWeek, ZONE);
+
+		// 同期状態 (sync-lookback-days 前以降) には入っていない日なので、その日の範囲を指定して取得する
+		assertThat(events).extracting(Event::getId).containsExactly("e1", "e2");
+		assertThat(queries.get(0)).contains("timeMin=", "timeMax=").doesNotContain("syncToken");
+		assertThat(cache.stats().fullSyncs()).isZero();
+		assertThat(cache.syncedSince()).isAfter(lastWeek.plusDays(1).atStartOfDay(ZONE).toInstant());
+	}
+
+	@Test
+	void notificationDuringAnInFlightSyncTriggersAnotherSync() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+		cache.getEventsForDay(PRIMARY, today, ZONE);
+		responses.put("sync-1", page(List.of(event("e3", "レビュー", 11)), null, "sync-2"));
+		responses.put("sync-2", page(List.of(event("e4", "面談", 16)), null, "sync-3"));
+		syncEntered = new CountDownLatch(1);
+		releaseSync = new CountDownLatch(1);
+
+		// 1 件目の通知の同期が Google の応答を待っている間に、2 件目の通知が届く
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> first = executor.submit(() -> {
+				cache.refresh(PRIMARY);
+				return null;
+			});
+			assertThat(syncEntered.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<?> second = executor.submit(() -> {
+				cache.refresh(PRIMARY);
+				return null;
+			});
+			Thread.sleep(200);
+			releaseSync.countDown();
+			first.get(5, TimeUnit.SECONDS);
+			second.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// 1 件目の同期の完了で 2 件目の通知を打ち消さず、その後にもう一度同期している
+		assertThat(queries).hasSize(4);
+		assertThat(queries.get(3)).contains("syncToken=sync-2");
+		assertThat(cache.getEventsForDay(PRIMARY, today, ZONE)).extracting(Event::getId)
+				.containsExactly("e1", "e3", "e2", "e4");
+		assertThat(queries).hasSize(4);
+	}
+
+	@Test
+	void dayResultsReadBeforeANotificationAreNotCachedAfterIt() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+		cache.getUpcomingEvents(PRIMARY, today.atStartOfDay(ZONE).toInstant(), 10);
+		responses.put("sync-1", page(List.of(event("e3", "レビュー", 11)), null, "sync-2"));
+		CountDownLatch putEntered = new CountDownLatch(1);
+		CountDownLatch releasePut = new CountDownLatch(1);
+		pauseDayCachePuts(cache, putEntered, releasePut);
+
+		// 通知前の状態から日単位の結果を作った参照が、キャッシュに置く直前で止まっている間に通知が届く
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<List<Event>> reader = executor.submit(() -> cache.getEventsForDay(PRIMARY, today, ZONE));
+			assertThat(putEntered.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<?> notification = executor.submit(() -> {
+				cache.refresh(PRIMARY);
+				return null;
+			});
+			Thread.sleep(200);
+			releasePut.countDown();
+			assertThat(reader.get(5, TimeUnit.SECONDS)).extracting(Event::getId).containsExactly("e1", "e2");
+			notification.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// 通知の後の参照に、通知前の結果を返さない
+		assertThat(cache.getEventsForDay(PRIMARY, today, ZONE)).extracting(Event::getId)
+				.containsExactly("e1", "e3", "e2");
+	}
+
+	@Test
+	void dayResultsReadBeforeAnInvalidationAreNotCachedAfterIt() throws Exception {
+		CalendarEventCache cache = new CalendarEventCache(calendarClient, 300, 16, 1);
+		cache.getUpcomingEvents(PRIMARY, today.atStartOfDay(ZONE).toInstant(), 10);
+		responses.put("sync-1", page(List.of(event("e3", "レビュー", 11)), null, "sync-2"));
+		CountDownLatch putEntered = new CountDownLatch(1);
+		CountDownLatch releasePut = new CountDownLatch(1);
+		pauseDayCachePuts(cache, putEntered, releasePut);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<List<Event>> reader = executor.submit(() -> cache.getEventsForDay(PRIMARY, today, ZONE));
+			assertThat(putEntered.await(5, TimeUnit.SECONDS)).isTrue();
+			// 同期用のスレッドが埋まっていたときの通知と同じく、次の参照での同期だけを求める
+			cache.invalidate(PRIMARY);
+			releasePut.countDown();
+			reader.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(cache.getEventsForDay(PRIMARY, today, ZONE)).extracting(Event::getId)
+				.containsExactly("e1", "e3", "e2");
+	}
+
+	// 日単位の結果をキャッシュに置く直前で、releasePut が開くまで止める
+	private static void pauseDayCachePuts(CalendarEventCache cache, CountDownLatch putEntered, CountDownLatch releasePut) {
+		Object days = ReflectionTestUtils.getField(cache, "days");
+		Object paused = Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class<?>[] {Cache.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("put")) {
+						putEntered.countDown();
+						releasePut.await(5, TimeUnit.SECONDS);
+					}
+					try {
+						return method.invoke(days, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+		ReflectionTestUtils.setField(cache, "days", paused);
+	}
+
+	private void handleList(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		queries.add(query);
+		if (releaseSync != null && query.contains("syncToken=sync-1")) {
+			syncEntered.countDown();
+			try {
+				releaseSync.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		String key = "full";
+		for (String param : query.split("&")) {
+			if (param.startsWith("pageToken=")) {
+				key = param.substring("pageToken=".length());
+			} else if (param.startsWith("syncToken=")) {
+				key = param.substring("syncToken=".length());
+			}
+		}
+
+		String body = responses.get(key);
+		int status = 200;
+		if ("GONE".equals(body)) {
+			status = 410;
+			body = "{\"error\":{\"code\":410,\"message\":\"Sync token is no longer valid\"}}";
+		} else if ("FAIL".equals(body)) {
+			status = 500;
+			body = "{\"error\":{\"code\":500,\"message\":\"Backend Error\"}}";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private String event(String id, String summary, int hour) {
+		String start = today.atTime(hour, 0).atZone(ZONE).format(RFC3339);
+		String end = today.atTime(hour + 1, 0).atZone(ZONE).format(RFC3339);
+		return "{\"id\":\"" + id + "\",\"status\":\"confirmed\",\"summary\":\"" + summary + "\","
+				+ "\"start\":{\"dateTime\":\"" + start + "\"},\"end\":{\"dateTime\":\"" + end + "\"}}";
+	}
+
+	private String cancelled(String id) {
+		return "{\"id\":\"" + id + "\",\"status\":\"cancelled\"}";
+	}
+
+	private String page(List<String> items, String nextPageToken, String nextSyncToken) {
+		StringBuilder json = new StringBuilder("{\"kind\":\"calendar#events\",\"items\":[");
+		json.append(String.join(",", items)).append("]");
+		if (nextPageToken != null) {
+			json.append(",\"nextPageToken\":\"").append(nextPageToken).append("\"");
+		}
+		if (nextSyncToken != null) {
+			json.append(",\"nextSyncToken\":\"").append(nextSyncToken).append("\"");
+		}
+		return json.append("}").toString();
+	}
+}
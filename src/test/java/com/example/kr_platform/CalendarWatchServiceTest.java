@@ -0,0 +1,229 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CalendarWatchServiceTest {
+
+	private static final ZoneId ZONE = ZoneId.systemDefault();
+	private static final CalendarSource PRIMARY = CalendarSource.primary(GoogleCalendarClient.DEFAULT_USER_ID);
+	private static final DateTimeFormatter RFC3339 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final LocalDate today = LocalDate.now(ZONE);
+	private final List<String> queries = new CopyOnWriteArrayList<>();
+	private final List<JsonNode> watchRequests = new CopyOnWriteArrayList<>();
+	private final List<JsonNode> stopRequests = new CopyOnWriteArrayList<>();
+	private final Map<String, String> responses = new ConcurrentHashMap<>();
+	private final AtomicLong channelLifetimeMillis = new AtomicLong(7 * 24 * 3600_000L);
+	private HttpServer server;
+	private CalendarFanOut fanOut;
+	private CalendarEventCache cache;
+	private CalendarWatchService watchService;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void startFakeCalendar() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/calendar/v3/calendars/primary/events", this::handleList);
+		server.createContext("/calendar/v3/calendars/primary/events/watch", this::handleWatch);
+		server.createContext("/calendar/v3/channels/stop", this::handleStop);
+		server.start();
+
+		String rootUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		Calendar calendar = new Calendar.Builder(new NetHttpTransport(), GoogleCalendarClient.JSON_FACTORY, null)
+				.setRootUrl(rootUrl)
+				.setApplicationName("test")
+				.build();
+		GoogleCalendarClient calendarClient = new GoogleCalendarClient() {
+			@Override
+			public Calendar getCalendar(String userId) {
+				return calendar;
+			}
+		};
+
+		responses.put("full", page(List.of(event("e1", "朝会", 9)), "sync-1"));
+		responses.put("sync-1", page(List.of(), "sync-2"));
+
+		// TTL 0 なので、通知を受けていなければ参照のたびに同期する
+		cache = new CalendarEventCache(calendarClient, 0, 16, 1);
+		fanOut = new CalendarFanOut(5_000);
+		CalendarService calendarService = new CalendarService(calendarClient, cache, fanOut,
+				new ScheduleRenderer("", "", ""), PRIMARY.toString());
+		// 同期は呼び出し元のスレッドでそのまま行う
+		watchService = new CalendarWatchService(calendarClient, cache, calendarService, Schedulers.immediate(),
+				"https://bot.example.com/calendar/notifications", 604_800, 3_600, 3_600);
+		mockMvc = MockMvcBuilders.standaloneSetup(new CalendarNotificationController(watchService)).build();
+	}
+
+	@AfterEach
+	void stopFakeCalendar() {
+		fanOut.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	void notificationsResyncTheWatchedCalendarInsteadOfEveryLookup() throws Exception {
+		watchService.renewChannels();
+
+		assertThat(watchRequests).singleElement().satisfies(request -> {
+			assertThat(request.path("type").asText()).isEqualTo(CalendarWatchService.WEB_HOOK);
+			assertThat(request.path("address").asText()).isEqualTo("https://bot.example.com/calendar/notifications");
+		});
+		// チャンネルを張った時点で一度同期し、その後の参照では Google に問い合わせない
+		assertThat(queries).hasSize(1);
+		assertThat(cache.getEventsForDay(PRIMARY, today, ZONE)).extracting(Event::getId).containsExactly("e1");
+		assertThat(queries).hasSize(1);
+
+		CalendarWatchService.WatchChannel channel = watchService.channels().get(0);
+		push(channel, channel.token(), CalendarWatchService.STATE_SYNC).andExpect(status().isOk());
+		assertThat(queries).hasSize(1);
+
+		responses.put("sync-1", page(List.of(event("e2", "レビュー", 15)), "sync-2"));
+		push(channel, channel.token(), "exists").andExpect(status().isOk());
+
+		assertThat(queries).hasSize(2);
+		assertThat(queries.get(1)).contains("syncToken=sync-1");
+		assertThat(cache.getEventsForDay(PRIMARY, today, ZONE)).extracting(Event::getId).containsExactly("e1", "e2");
+		assertThat(queries).hasSize(2);
+		assertThat(watchService.resyncCount()).isEqualTo(2);
+	}
+
+	@Test
+	void notificationsForUnknownChannelsOrWithTheWrongTokenAreRejected() throws Exception {
+		watchService.renewChannels();
+		CalendarWatchService.WatchChannel channel = watchService.channels().get(0);
+
+		push(channel, "forged", "exists").andExpect(status().isNotFound());
+		push(new CalendarWatchService.WatchChannel("unknown", channel.resourceId(), channel.token(), PRIMARY, 0),
+				channel.token(), "exists").andExpect(status().isNotFound());
+		mockMvc.perform(post("/calendar/notifications")
+						.header(CalendarNotificationController.CHANNEL_ID, channel.id())
+						.header(CalendarNotificationController.CHANNEL_TOKEN, channel.token())
+						.header(CalendarNotificationController.RESOURCE_ID, channel.resourceId()))
+				.andExpect(status().isBadRequest());
+
+		assertThat(queries).hasSize(1);
+		assertThat(watchService.notificationCount()).isZero();
+	}
+
+	@Test
+	void channelsAreReplacedBeforeTheyExpire() throws Exception {
+		// renew-before (1 時間) より短い期限しか付かなかった場合
+		channelLifetimeMillis.set(10 * 60_000L);
+		watchService.renewChannels();
+		CalendarWatchService.WatchChannel first = watchService.channels().get(0);
+
+		watchService.renewChannels();
+		CalendarWatchService.WatchChannel second = watchService.channels().get(0);
+
+		assertThat(second.id()).isNotEqualTo(first.id());
+		assertThat(watchRequests).hasSize(2);
+		assertThat(stopRequests).singleElement()
+				.satisfies(request -> assertThat(request.path("id").asText()).isEqualTo(first.id()));
+		push(first, first.token(), "exists").andExpect(status().isNotFound());
+		push(second, second.token(), "exists").andExpect(status().isOk());
+		// 張り替えでは同期し直さない (古いチャンネルを止めるまでの変更も通知される)
+		assertThat(queries).hasSize(2);
+		assertThat(watchService.activeChannels()).isEqualTo(1);
+	}
+
+	// Google のプッシュ通知と同じく、本文なしでヘッダーだけを POST する
+	private ResultActions push(CalendarWatchService.WatchChannel channel, String token, String state)
+			throws Exception {
+		return mockMvc.perform(post("/calendar/notifications")
+				.header(CalendarNotificationController.CHANNEL_ID, channel.id())
+				.header(CalendarNotificationController.CHANNEL_TOKEN, token)
+				.header(CalendarNotificationController.RESOURCE_ID, channel.resourceId())
+				.header(CalendarNotificationController.RESOURCE_STATE, state)
+				.header("X-Goog-Message-Number", "1"));
+	}
+
+	private void handleList(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		queries.add(query);
+
+		String key = "full";
+		for (String param : query.split("&")) {
+			if (param.startsWith("syncToken=")) {
+				key = param.substring("syncToken=".length());
+			}
+		}
+		respond(exchange, 200, responses.get(key));
+	}
+
+	private void handleWatch(HttpExchange exchange) throws IOException {
+		JsonNode request = readBody(exchange);
+		watchRequests.add(request);
+		long expiration = System.currentTimeMillis() + channelLifetimeMillis.get();
+		respond(exchange, 200, "{\"kind\":\"api#channel\",\"id\":\"" + request.path("id").asText() + "\","
+				+ "\"resourceId\":\"resource-" + watchRequests.size() + "\",\"expiration\":\"" + expiration + "\"}");
+	}
+
+	private void handleStop(HttpExchange exchange) throws IOException {
+		stopRequests.add(readBody(exchange));
+		exchange.sendResponseHeaders(204, -1);
+		exchange.close();
+	}
+
+	// Google のクライアントはリクエストの本文を gzip で送る
+	private static JsonNode readBody(HttpExchange exchange) throws IOException {
+		InputStream body = exchange.getRequestBody();
+		if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			body = new GZIPInputStream(body);
+		}
+		return JSON.readTree(body);
+	}
+
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private String event(String id, String summary, int hour) {
+		String start = today.atTime(hour, 0).atZone(ZONE).format(RFC3339);
+		String end = today.atTime(hour + 1, 0).atZone(ZONE).format(RFC3339);
+		return "{\"id\":\"" + id + "\",\"status\":\"confirmed\",\"summary\":\"" + summary + "\","
+				+ "\"start\":{\"dateTime\":\"" + start + "\"},\"end\":{\"dateTime\":\"" + end + "\"}}";
+	}
+
+	private String page(List<String> items, String nextSyncToken) {
+		return "{\"kind\":\"calendar#events\",\"items\":[" + String.join(",", items) + "],"
+				+ "\"nextSyncToken\":\"" + nextSyncToken + "\"}";
+	}
+}
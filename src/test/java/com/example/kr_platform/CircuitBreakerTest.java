@@ -0,0 +1,88 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private CircuitBreaker breaker(int failureThreshold, int halfOpenProbes) {
+		return new CircuitBreaker("test", failureThreshold, 1000, halfOpenProbes, now::get);
+	}
+
+	private void advanceMillis(long millis) {
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	@Test
+	void opensAfterConsecutiveFailuresAndFailsFast() {
+		CircuitBreaker breaker = breaker(3, 1);
+
+		for (int i = 0; i < 2; i++) {
+			assertThat(breaker.tryAcquire()).isTrue();
+			breaker.onFailure();
+		}
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.onFailure();
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		assertThat(breaker.retryAfterMillis()).isBetween(1L, 1001L);
+		assertThat(breaker.openException().getRetryAfterMillis()).isPositive();
+	}
+
+	@Test
+	void successResetsTheFailureCount() {
+		CircuitBreaker breaker = breaker(2, 1);
+
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void halfOpenLetsOnlyTheProbesThroughAndClosesWhenTheySucceed() {
+		CircuitBreaker breaker = breaker(1, 2);
+		breaker.onFailure();
+		advanceMillis(1000);
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		assertThat(breaker.retryAfterMillis()).isZero();
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		breaker.onSuccess();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		breaker.onSuccess();
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void failedProbeReopensTheCircuit() {
+		CircuitBreaker breaker = breaker(1, 1);
+		breaker.onFailure();
+		advanceMillis(1000);
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.onFailure();
+
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		advanceMillis(999);
+		assertThat(breaker.tryAcquire()).isFalse();
+		advanceMillis(1);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+}
@@ -0,0 +1,168 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+// 1 つの JVM で 3 つのアプリを起動し、同じ H2 (名前付きのメモリ DB) を共有させて、複数インスタンスでの動きを確かめる
+class ClusterCoordinationTest {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final List<String> postedTexts = new CopyOnWriteArrayList<>();
+	private final AtomicLong tweetIds = new AtomicLong();
+	private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+	private HttpServer twitter;
+	private String databaseUrl;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		twitter = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		twitter.createContext("/2/tweets", this::handleTweet);
+		twitter.start();
+		databaseUrl = "jdbc:h2:mem:cluster-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+		// Flyway のマイグレーションが重ならないよう 1 つずつ起動する
+		for (int i = 0; i < 3; i++) {
+			nodes.add(startNode("node" + i));
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		nodes.forEach(ConfigurableApplicationContext::close);
+		twitter.stop(0);
+	}
+
+	@Test
+	void exactlyOneNodeLeadsAndAnotherTakesOverWhenItStops() {
+		awaitTrue(() -> leaders().size() == 1);
+
+		ConfigurableApplicationContext leader = leaders().get(0);
+		leader.close();
+		nodes.remove(leader);
+
+		awaitTrue(() -> leaders().size() == 1);
+		assertThat(coordinator(nodes.get(0)).liveNodes()).hasSize(2);
+	}
+
+	@Test
+	void scheduledTweetsArePostedOnceAndSpreadAcrossNodes() {
+		awaitTrue(() -> coordinator(nodes.get(0)).liveNodes().size() == 3);
+		ScheduledTweetRepository repository = nodes.get(0).getBean(ScheduledTweetRepository.class);
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			ids.add(repository.save(new ScheduledTweet("scheduled " + i, Instant.now())).getId());
+		}
+
+		awaitTrue(() -> repository.findAllById(ids).stream()
+				.allMatch(tweet -> tweet.getStatus() == ScheduledTweet.Status.SENT));
+
+		assertThat(postedTexts).hasSize(30).doesNotHaveDuplicates();
+		assertThat(new HashSet<>(repository.findAllById(ids).stream().map(ScheduledTweet::getClaimedBy).toList()))
+				.hasSizeGreaterThan(1);
+	}
+
+	@Test
+	void claimsAreGrantedToASingleNode() {
+		long granted = nodes.stream()
+				.map(ClusterCoordinationTest::coordinator)
+				.filter(coordinator -> coordinator.claimOnce("auto-tweet", "2024-05-01T09:00"))
+				.count();
+
+		assertThat(granted).isEqualTo(1);
+	}
+
+	@Test
+	void everyTenantHasExactlyOneOwner() {
+		awaitTrue(() -> nodes.stream().allMatch(node -> coordinator(node).liveNodes().size() == 3));
+
+		for (int userId = 1; userId <= 1000; userId++) {
+			String key = "digest:" + userId;
+			long owners = nodes.stream().filter(node -> coordinator(node).owns(key)).count();
+			assertThat(owners).as(key).isEqualTo(1);
+		}
+		JdbcTemplate jdbcTemplate = nodes.get(0).getBean(JdbcTemplate.class);
+		assertThat(jdbcTemplate.queryForObject("select count(*) from cluster_nodes", Integer.class)).isEqualTo(3);
+	}
+
+	private ConfigurableApplicationContext startNode(String name) {
+		return new SpringApplicationBuilder(DemoApplication.class)
+				// .properties() は application.properties より弱いので、コマンドライン引数で渡す
+				.run(
+						"--server.port=0",
+						"--management.server.port=0",
+						"--spring.devtools.restart.enabled=false",
+						"--spring.datasource.url=" + databaseUrl,
+						"--spring.datasource.hikari.pool-name=" + name,
+						"--spring.datasource.hikari.maximum-pool-size=4",
+						"--spring.datasource.hikari.minimum-idle=1",
+						// 二次キャッシュの CacheManager は JVM 内で共有されるので、ここでは使わない
+						"--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+						"--spring.jpa.properties.hibernate.cache.use_query_cache=false",
+						"--twitter.api.base-url=http://127.0.0.1:" + twitter.getAddress().getPort(),
+						"--cluster.node-id=" + name,
+						"--cluster.heartbeat-interval-ms=200",
+						"--cluster.lease-ttl-ms=1000",
+						"--tweet.scheduler.poll-interval-ms=200");
+	}
+
+	private List<ConfigurableApplicationContext> leaders() {
+		return nodes.stream().filter(node -> coordinator(node).isLeader()).toList();
+	}
+
+	private static ClusterCoordinator coordinator(ConfigurableApplicationContext node) {
+		return node.getBean(ClusterCoordinator.class);
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Condition not met within 15 seconds");
+			}
+			try {
+				TimeUnit.MILLISECONDS.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted");
+			}
+		}
+	}
+
+	private void handleTweet(HttpExchange exchange) throws IOException {
+		Map<?, ?> body = JSON.readValue(exchange.getRequestBody(), Map.class);
+		postedTexts.add((String) body.get("text"));
+		byte[] response = ("{\"data\":{\"id\":\"" + tweetIds.incrementAndGet() + "\",\"text\":\"ok\"}}")
+				.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(201, response.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(response);
+		}
+	}
+}
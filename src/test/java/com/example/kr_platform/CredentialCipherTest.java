@@ -0,0 +1,29 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialCipherTest {
+
+	@Test
+	void missingKeyFailsStartupUnlessAThrowawayKeyIsAllowed() {
+		assertThatThrownBy(() -> new CredentialCipher("", false))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("google.credentials.encryption-key");
+
+		CredentialCipher throwaway = new CredentialCipher("", true);
+		String encrypted = throwaway.encrypt("token", "user");
+		assertThat(throwaway.decrypt(encrypted, "user")).isEqualTo("token");
+		// 使い捨ての鍵は起動ごとに変わる
+		assertThatThrownBy(() -> new CredentialCipher("", true).decrypt(encrypted, "user"))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void keysOfTheWrongLengthAreRejected() {
+		assertThatThrownBy(() -> new CredentialCipher("c2hvcnQ=", false))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
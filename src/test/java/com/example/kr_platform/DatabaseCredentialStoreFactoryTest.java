@@ -0,0 +1,126 @@
+package com.example.kr_platform;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.DataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 書き込みごとに自前のトランザクションで保存するため、テスト全体をトランザクションで包まない
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({DatabaseCredentialStoreFactory.class, CredentialCipher.class})
+class DatabaseCredentialStoreFactoryTest {
+
+	@Autowired
+	private GoogleCredentialRepository repository;
+
+	@Autowired
+	private CredentialCipher cipher;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	// Bean のキャッシュはテストをまたいで残るので、テストごとに作り直す
+	private DatabaseCredentialStoreFactory factory;
+
+	@BeforeEach
+	void createFactory() {
+		factory = anotherInstance();
+	}
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("delete from google_credentials");
+		jdbcTemplate.update("delete from users");
+	}
+
+	@Test
+	void tokensAreEncryptedAndRepeatReadsComeFromMemory() throws IOException {
+		DataStore<StoredCredential> store = StoredCredential.getDefaultDataStore(factory);
+		store.set("user", credential("access-1", "refresh-1", 1_000L));
+
+		String storedAccessToken = jdbcTemplate.queryForObject(
+				"select access_token from google_credentials where account_id = 'user'", String.class);
+		StoredCredential first = store.get("user");
+
+		assertThat(storedAccessToken).doesNotContain("access-1");
+		assertThat(cipher.decrypt(storedAccessToken, "user")).isEqualTo("access-1");
+		assertThat(first.getRefreshToken()).isEqualTo("refresh-1");
+		assertThat(store.get("user")).isSameAs(first);
+		assertThat(store.get("missing")).isNull();
+	}
+
+	@Test
+	void anotherInstanceReadsTheSameCredential() throws IOException {
+		StoredCredential.getDefaultDataStore(factory).set("user", credential("access-1", "refresh-1", 1_000L));
+
+		StoredCredential loaded = StoredCredential.getDefaultDataStore(anotherInstance()).get("user");
+
+		assertThat(loaded.getAccessToken()).isEqualTo("access-1");
+		assertThat(loaded.getExpirationTimeMilliseconds()).isEqualTo(1_000L);
+	}
+
+	@Test
+	void userAccountsBelongToTheirUser() throws IOException {
+		User alice = userRepository.saveAndFlush(new User("alice", "{noop}x"));
+		String accountId = GoogleCalendarClient.accountIdOf(alice.getId());
+
+		StoredCredential.getDefaultDataStore(factory).set(accountId, credential("access-1", "refresh-1", 1_000L));
+
+		assertThat(repository.findById(accountId)).map(GoogleCredential::getUserId).contains(alice.getId());
+		jdbcTemplate.update("delete from users where id = ?", alice.getId());
+		assertThat(repository.existsById(accountId)).isFalse();
+	}
+
+	@Test
+	void olderRefreshDoesNotOverwriteANewerOneFromAnotherInstance() throws IOException {
+		DataStore<StoredCredential> store = StoredCredential.getDefaultDataStore(factory);
+		DataStore<StoredCredential> other = StoredCredential.getDefaultDataStore(anotherInstance());
+		store.set("user", credential("access-1", "refresh-1", 1_000L));
+
+		other.set("user", credential("access-2", "refresh-1", 5_000L));
+		store.set("user", credential("access-3", "refresh-1", 3_000L));
+
+		assertThat(store.get("user").getAccessToken()).isEqualTo("access-2");
+		assertThat(repository.findById("user")).map(GoogleCredential::getVersion).contains(1L);
+	}
+
+	@Test
+	void conflictingWritesOfANewGrantAreRetried() throws IOException {
+		DataStore<StoredCredential> store = StoredCredential.getDefaultDataStore(factory);
+		DataStore<StoredCredential> other = StoredCredential.getDefaultDataStore(anotherInstance());
+		store.set("user", credential("access-1", "refresh-1", 1_000L));
+
+		other.set("user", credential("access-2", "refresh-1", 5_000L));
+		store.set("user", credential("access-3", "refresh-2", 3_000L));
+
+		assertThat(store.get("user").getRefreshToken()).isEqualTo("refresh-2");
+		assertThat(StoredCredential.getDefaultDataStore(anotherInstance()).get("user").getAccessToken()).isEqualTo("access-3");
+		assertThat(repository.findById("user")).map(GoogleCredential::getVersion).contains(2L);
+	}
+
+	private DatabaseCredentialStoreFactory anotherInstance() {
+		return new DatabaseCredentialStoreFactory(repository, cipher, 300, 100, "");
+	}
+
+	private static StoredCredential credential(String accessToken, String refreshToken, Long expiresAt) {
+		return new StoredCredential()
+				.setAccessToken(accessToken)
+				.setRefreshToken(refreshToken)
+				.setExpirationTimeMilliseconds(expiresAt);
+	}
+}
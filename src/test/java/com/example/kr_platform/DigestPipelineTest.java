@@ -0,0 +1,300 @@
+package com.example.kr_platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// パイプラインの各段は別スレッドで DB を読むので、テスト全体をトランザクションで包まない
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(CredentialCipher.class)
+class DigestPipelineTest {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private TwitterCredentialRepository twitterCredentials;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private CredentialCipher cipher;
+
+	private final Map<String, List<Event>> calendars = new ConcurrentHashMap<>();
+	private final List<Posted> posts = new CopyOnWriteArrayList<>();
+	private final AtomicLong tweetIds = new AtomicLong(100);
+	private volatile long responseDelayMillis;
+	// 残りこの回数だけ整形に失敗させる
+	private final AtomicInteger renderFailures = new AtomicInteger();
+	// 残りこの回数だけ Google が 429 (Retry-After: 1) を返す
+	private final AtomicInteger calendarRateLimits = new AtomicInteger();
+	// listDay が呼ばれた時刻 (System.nanoTime)
+	private final List<Long> calendarCalls = new CopyOnWriteArrayList<>();
+	private HttpServer server;
+	private ClusterCoordinator cluster;
+	private DigestPipeline pipeline;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/2/tweets", this::handleTweet);
+		server.start();
+		cluster = new ClusterCoordinator(jdbcTemplate, "test", 30_000, 7);
+		cluster.join();
+		pipeline = newPipeline(10_000);
+	}
+
+	private DigestPipeline newPipeline(long responseTimeoutMillis) {
+		TwitterClient client = new TwitterClient(WebClient.builder(), "key", "secret", "app-token", "app-secret",
+				"http://127.0.0.1:" + server.getAddress().getPort(), 10, 3000, responseTimeoutMillis,
+				new CircuitBreaker("Twitter API", 1_000, 30_000, 1));
+		ScheduleRenderer renderer = new ScheduleRenderer("", "", "Asia/Tokyo") {
+			@Override
+			public List<String> renderThread(Kind kind, CalendarFanOut.Result fetched, ZoneId zone, Instant now) {
+				if (renderFailures.getAndDecrement() > 0) {
+					throw new IllegalStateException("render failed");
+				}
+				return super.renderThread(kind, fetched, zone, now);
+			}
+		};
+		// ページの大きさを 2 にして、対象の読み進めも確認する
+		return new DigestPipeline(twitterCredentials, new StubCalendarService(renderer), renderer, client, cluster, cipher,
+				4, 1, 2, 2, 2, true, 3, 1000, 1000, 1000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+		jdbcTemplate.update("delete from job_claims");
+		jdbcTemplate.update("delete from cluster_leases");
+		jdbcTemplate.update("delete from cluster_nodes");
+		jdbcTemplate.update("delete from twitter_credentials");
+		jdbcTemplate.update("delete from users");
+	}
+
+	@Test
+	void postsEachSubscribedUsersScheduleWithTheirOwnToken() {
+		Long alice = subscriber("alice", true, true);
+		Long bob = subscriber("bob", true, true);
+		Long carol = subscriber("carol", true, true);
+		subscriber("dave", false, true);
+		subscriber("erin", true, false);
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+		calendars.put(GoogleCalendarClient.accountIdOf(bob), List.of(event("歯医者")));
+		calendars.put(GoogleCalendarClient.accountIdOf(carol), List.of());
+
+		DigestPipeline.Run run = pipeline.run().orElseThrow();
+
+		assertThat(run.targets()).isEqualTo(3);
+		assertThat(posts).extracting(Posted::token).containsExactlyInAnyOrder("token-alice", "token-bob");
+		assertThat(posts).filteredOn(post -> post.token().equals("token-alice"))
+				.singleElement()
+				.satisfies(post -> assertThat(post.text()).contains("📅 今日の予定", "• 朝会"));
+		assertThat(run.stages()).extracting(DigestStage.Metrics::stage).containsExactly("fetch", "render", "post");
+		assertThat(run.stages().get(0).processed()).isEqualTo(2);
+		assertThat(run.stages().get(0).skipped()).isEqualTo(1);
+		assertThat(run.stages().get(2).processed()).isEqualTo(2);
+	}
+
+	@Test
+	void secondRunOnTheSameDayDoesNotPostAgain() {
+		Long alice = subscriber("alice", true, true);
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+
+		pipeline.run();
+		DigestPipeline.Run second = pipeline.run().orElseThrow();
+
+		assertThat(posts).hasSize(1);
+		assertThat(second.stages().get(0).skipped()).isEqualTo(1);
+	}
+
+	@Test
+	void longSchedulesArePostedAsAReplyThread() {
+		Long alice = subscriber("alice", true, true);
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			events.add(event("定例ミーティング " + i));
+		}
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), events);
+
+		pipeline.run();
+
+		assertThat(posts).hasSizeGreaterThan(1);
+		assertThat(posts.get(0).replyTo()).isNull();
+		for (int i = 1; i < posts.size(); i++) {
+			assertThat(posts.get(i).replyTo()).isEqualTo(posts.get(i - 1).id());
+		}
+	}
+
+	@Test
+	void oneFailingCalendarDoesNotStopTheOthers() {
+		Long alice = subscriber("alice", true, true);
+		Long bob = subscriber("bob", true, true);
+		calendars.put(GoogleCalendarClient.accountIdOf(bob), List.of(event("買い物")));
+		// alice の予定は登録しないので取得に失敗する
+
+		DigestPipeline.Run run = pipeline.run().orElseThrow();
+
+		assertThat(posts).extracting(Posted::token).containsExactly("token-bob");
+		assertThat(run.stages().get(0).failed()).isEqualTo(1);
+		assertThat(pipeline.status()).contains(run);
+
+		// 失敗した分は claim が戻っているので、連携し直せば同じ日のうちにやり直せる
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+		pipeline.run();
+
+		assertThat(posts).extracting(Posted::token).containsExactly("token-bob", "token-alice");
+	}
+
+	@Test
+	void failedRenderingReleasesTheClaim() {
+		Long alice = subscriber("alice", true, true);
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+		renderFailures.set(1);
+
+		DigestPipeline.Run run = pipeline.run().orElseThrow();
+
+		assertThat(posts).isEmpty();
+		assertThat(run.stages().get(1).failed()).isEqualTo(1);
+		// 何も投稿していないので claim は戻っていて、同じ日のうちにやり直せる
+		pipeline.run();
+		assertThat(posts).extracting(Posted::token).containsExactly("token-alice");
+	}
+
+	@Test
+	void timedOutPostsAreNotSentAgain() {
+		Long alice = subscriber("alice", true, true);
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+		// Twitter は投稿を受け付けたが、応答がタイムアウトまでに返らない
+		responseDelayMillis = 1_000;
+		DigestPipeline slowPipeline = newPipeline(200);
+
+		DigestPipeline.Run run = slowPipeline.run().orElseThrow();
+
+		assertThat(posts).hasSize(1);
+		assertThat(run.stages().get(2).failed()).isEqualTo(1);
+		// 投稿されたかどうか分からないので claim は戻さず、同じ日にはやり直さない
+		responseDelayMillis = 0;
+		slowPipeline.run();
+		assertThat(posts).hasSize(1);
+	}
+
+	@Test
+	void rateLimitedCalendarCallsPauseUntilRetryAfter() {
+		Long alice = subscriber("alice", true, true);
+		calendars.put(GoogleCalendarClient.accountIdOf(alice), List.of(event("朝会")));
+		calendarRateLimits.set(1);
+
+		DigestPipeline.Run limited = pipeline.run().orElseThrow();
+
+		assertThat(limited.stages().get(0).failed()).isEqualTo(1);
+		assertThat(posts).isEmpty();
+		// claim は戻っているので次の実行で投稿するが、Retry-After (1 秒) が過ぎるまでは Google を呼ばない
+		pipeline.run();
+		assertThat(posts).hasSize(1);
+		assertThat(calendarCalls).hasSize(2);
+		assertThat(calendarCalls.get(1) - calendarCalls.get(0)).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private Long subscriber(String username, boolean enabled, boolean linkedTwitter) {
+		User user = new User(username, "{noop}x");
+		user.setDigestEnabled(enabled);
+		Long id = userRepository.saveAndFlush(user).getId();
+		if (linkedTwitter) {
+			String context = TwitterCredential.cipherContext(id);
+			twitterCredentials.saveAndFlush(new TwitterCredential(id, cipher.encrypt("token-" + username, context),
+					cipher.encrypt("secret-" + username, context)));
+		}
+		return id;
+	}
+
+	private static Event event(String summary) {
+		return new Event().setSummary(summary)
+				.setStart(new EventDateTime().setDateTime(new DateTime(System.currentTimeMillis())));
+	}
+
+	private void handleTweet(HttpExchange exchange) throws IOException {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		String token = authorization.replaceAll(".*oauth_token=\"([^\"]*)\".*", "$1");
+		JsonNode body = JSON.readTree(exchange.getRequestBody());
+		String id = String.valueOf(tweetIds.incrementAndGet());
+		JsonNode replyTo = body.path("reply").path("in_reply_to_tweet_id");
+		posts.add(new Posted(id, token, body.path("text").asText(), replyTo.isMissingNode() ? null : replyTo.asText()));
+		if (responseDelayMillis > 0) {
+			try {
+				Thread.sleep(responseDelayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		byte[] response = ("{\"data\":{\"id\":\"" + id + "\",\"text\":\"ok\"}}").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(201, response.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(response);
+		}
+	}
+
+	private record Posted(String id, String token, String text, String replyTo) {
+	}
+
+	private class StubCalendarService extends CalendarService {
+
+		StubCalendarService(ScheduleRenderer renderer) {
+			super(null, null, null, renderer, "user:primary");
+		}
+
+		@Override
+		public List<Event> listDay(CalendarSource source, LocalDate date, ZoneId zone) throws IOException {
+			calendarCalls.add(System.nanoTime());
+			if (calendarRateLimits.getAndDecrement() > 0) {
+				throw new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders().setRetryAfter("1"))
+						.build();
+			}
+			List<Event> events = calendars.get(source.accountId());
+			if (events == null) {
+				throw new IOException("認証が必要です。");
+			}
+			return events;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GoogleCalendarClientTest {
+
+	private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+	private final GoogleCalendarClient client = new GoogleCalendarClient();
+
+	@AfterEach
+	void stop() {
+		client.stop();
+		virtualThreads.shutdownNow();
+	}
+
+	@Test
+	void callsFromVirtualThreadsRunOnPlatformThreads() throws Exception {
+		ReflectionTestUtils.setField(client, "platformThreads", 2);
+		client.start();
+
+		Thread caller = virtualThreads.submit(() -> client.execute("test", Thread::currentThread)).get();
+
+		assertThat(caller.isVirtual()).isFalse();
+		assertThat(caller.getName()).startsWith("google-api-");
+	}
+
+	@Test
+	void callsRunInlineWithoutPlatformThreads() throws Exception {
+		client.start();
+
+		Thread caller = virtualThreads.submit(() -> client.execute("test", Thread::currentThread)).get();
+
+		assertThat(caller.isVirtual()).isTrue();
+	}
+
+	@Test
+	void platformThreadFailuresReachTheCaller() {
+		ReflectionTestUtils.setField(client, "platformThreads", 1);
+		client.start();
+
+		assertThatThrownBy(() -> virtualThreads.submit(() -> client.execute("test", () -> {
+			throw new IOException("quota exceeded");
+		})).get())
+				.hasCauseInstanceOf(IOException.class)
+				.hasRootCauseMessage("quota exceeded");
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GoogleOAuthStatesTest {
+
+	private final GoogleOAuthStates states = new GoogleOAuthStates(600, 100);
+	private final GoogleOAuthController controller = new GoogleOAuthController(new GoogleCalendarClient(), states);
+
+	@Test
+	void statesAreBoundToTheAccountAndCanBeUsedOnlyOnce() {
+		String state = states.issue(GoogleCalendarClient.accountIdOf(1L));
+
+		assertThat(states.isIssued(state)).isTrue();
+		assertThat(states.consume(state)).contains("user-1");
+		assertThat(states.consume(state)).isEmpty();
+		assertThat(states.isIssued(state)).isFalse();
+	}
+
+	@Test
+	void expiredStatesAreRejected() {
+		GoogleOAuthStates expiring = new GoogleOAuthStates(0, 100);
+		String state = expiring.issue("user");
+
+		assertThat(expiring.consume(state)).isEmpty();
+	}
+
+	@Test
+	void callbackRejectsRawAccountIdsAndUnknownStates() {
+		// 以前のように state にアカウント ID をそのまま入れても、他人のアカウントとして保存させない
+		assertThat(controller.handleGoogleCallback("code", null, "user-1", null)).startsWith("認証失敗");
+		assertThat(controller.handleGoogleCallback("code", null, "forged", null)).startsWith("認証失敗");
+		assertThat(controller.handleGoogleCallback("code", null, null, null)).startsWith("認証失敗");
+	}
+
+	@Test
+	void perUserAccountsCannotBeRequestedDirectly() {
+		assertThatThrownBy(() -> controller.initiateGoogleAuth("user-1", null, null))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> controller.initiateGoogleAuth("user", "forged", null))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyStoreTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void secondRequestWithTheSameKeySeesTheFirstResult() {
+		IdempotencyStore store = new IdempotencyStore(100, 24, 300, "");
+		IdempotencyStore.Key key = store.explicitKey("tweet", "abc");
+
+		assertThat(store.begin(key)).isNull();
+		assertThat(store.begin(key).isPending()).isTrue();
+
+		store.complete(key, "job-1", Duration.ofHours(1));
+
+		assertThat(store.begin(key).reference()).isEqualTo("job-1");
+	}
+
+	@Test
+	void abandonedRequestsCanBeRetried() {
+		IdempotencyStore store = new IdempotencyStore(100, 24, 300, "");
+		IdempotencyStore.Key key = store.explicitKey("tweet", "abc");
+
+		store.begin(key);
+		store.abandon(key);
+
+		assertThat(store.begin(key)).isNull();
+	}
+
+	@Test
+	void keysAreScopedToTheOperation() {
+		IdempotencyStore store = new IdempotencyStore(100, 24, 300, "");
+
+		assertThat(store.explicitKey("tweet", "abc")).isEqualTo(store.explicitKey("tweet", "abc"));
+		assertThat(store.explicitKey("tweet", "abc")).isNotEqualTo(store.explicitKey("schedule-tweet", "abc"));
+		assertThat(store.derivedKey("tweet", "hello")).isEqualTo(store.derivedKey("tweet", "hello"));
+		assertThat(store.derivedKey("tweet", "hello")).isNotEqualTo(store.derivedKey("tweet", "hello!"));
+		assertThat(store.derivedKey("tweet", "hello")).isNotEqualTo(store.explicitKey("tweet", "hello"));
+	}
+
+	@Test
+	void completedEntriesSurviveARestart() throws Exception {
+		String logFile = dir.resolve("idempotency.log").toString();
+		IdempotencyStore first = new IdempotencyStore(100, 24, 300, logFile);
+		first.start();
+		IdempotencyStore.Key kept = first.explicitKey("tweet", "kept");
+		IdempotencyStore.Key expired = first.explicitKey("tweet", "expired");
+		IdempotencyStore.Key pending = first.explicitKey("tweet", "pending");
+		first.begin(kept);
+		first.complete(kept, "job-1", Duration.ofHours(1));
+		first.begin(expired);
+		first.complete(expired, "job-2", Duration.ofMillis(1));
+		first.begin(pending);
+		first.stop();
+
+		Thread.sleep(5);
+		IdempotencyStore second = new IdempotencyStore(100, 24, 300, logFile);
+		second.start();
+		try {
+			assertThat(second.begin(kept).reference()).isEqualTo("job-1");
+			assertThat(second.begin(expired)).isNull();
+			assertThat(second.begin(pending)).isNull();
+			// 起動時に期限内の記録だけで書き直している
+			assertThat(Files.readAllLines(Path.of(logFile))).hasSize(1);
+		} finally {
+			second.stop();
+		}
+	}
+
+	@Test
+	void ignoresATruncatedLastLine() throws Exception {
+		Path logFile = dir.resolve("idempotency.log");
+		IdempotencyStore first = new IdempotencyStore(100, 24, 300, logFile.toString());
+		first.start();
+		IdempotencyStore.Key key = first.explicitKey("tweet", "abc");
+		first.begin(key);
+		first.complete(key, "job-1", Duration.ofHours(1));
+		first.stop();
+		Files.writeString(logFile, Files.readString(logFile) + "1f 2e 99");
+
+		IdempotencyStore second = new IdempotencyStore(100, 24, 300, logFile.toString());
+		second.start();
+		try {
+			assertThat(second.begin(key).reference()).isEqualTo("job-1");
+		} finally {
+			second.stop();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.example.kr_platform;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticationFilterTest {
+
+	private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+
+	private final JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 100);
+	private final UserRepository repository = mock(UserRepository.class);
+	private final CustomUserDetailsService userDetailsService = new CustomUserDetailsService(repository, 100, 60);
+	private final TokenRevocationIndex revocationIndex = new TokenRevocationIndex(mock(RevokedTokenRepository.class));
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, revocationIndex, meterRegistry);
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void buildsTheAuthenticationFromClaimsWithoutTouchingTheDatabase() throws Exception {
+		String token = jwtUtil.generateToken(7L, "alice", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+		Authentication authentication = filter(token);
+
+		assertThat(authentication.getPrincipal()).isEqualTo(new JwtPrincipal(7L, "alice"));
+		assertThat(authentication.getName()).isEqualTo("alice");
+		assertThat(authentication.getAuthorities()).extracting("authority").containsExactly("ROLE_USER");
+		verify(repository, never()).findByUsername(anyString());
+	}
+
+	@Test
+	void revokedTokenIdsAreRejected() throws Exception {
+		JwtUtil.IssuedToken token = jwtUtil.issue(7L, "alice", List.of());
+
+		revocationIndex.revoke(token.id(), token.expiresAt());
+
+		assertThat(filter(token.token())).isNull();
+		assertThat(filter(jwtUtil.generateToken(7L, "alice", List.of()))).isNotNull();
+	}
+
+	@Test
+	void tokensWithoutAUserIdFallBackToTheCachedUserLookup() throws Exception {
+		User alice = new User("alice", "{noop}secret");
+		alice.setId(7L);
+		when(repository.findByUsername("alice")).thenReturn(Optional.of(alice));
+		// uid / auth クレームを入れる前の形式のトークン
+		String legacy = Jwts.builder()
+				.setSubject("alice")
+				.setIssuedAt(new Date())
+				.setExpiration(new Date(System.currentTimeMillis() + 60_000))
+				.signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+				.compact();
+
+		assertThat(filter(legacy).getPrincipal()).isEqualTo(new JwtPrincipal(7L, "alice"));
+		SecurityContextHolder.clearContext();
+		assertThat(filter(legacy)).isNotNull();
+
+		verify(repository, times(1)).findByUsername("alice");
+	}
+
+	@Test
+	void recordsTheVerificationTimeByResult() throws Exception {
+		filter(jwtUtil.generateToken(7L, "alice", List.of()));
+		SecurityContextHolder.clearContext();
+		filter("not-a-jwt");
+
+		assertThat(meterRegistry.get("auth.jwt.filter").tag("result", "authenticated").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("auth.jwt.filter").tag("result", "rejected").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("auth.jwt.filter").tag("result", "anonymous").timer().count()).isZero();
+	}
+
+	private Authentication filter(String token) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/calendar/events");
+		request.addHeader("Authorization", "Bearer " + token);
+		filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+		return SecurityContextHolder.getContext().getAuthentication();
+	}
+}
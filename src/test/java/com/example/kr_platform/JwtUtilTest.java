@@ -0,0 +1,63 @@
+package com.example.kr_platform;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTest {
+
+	private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+
+	private final JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 100);
+
+	@Test
+	void verifiesIssuedTokens() {
+		String token = jwtUtil.generateToken(1L, "alice", List.of());
+
+		JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+
+		assertThat(verified.userId()).isEqualTo(1L);
+		assertThat(verified.username()).isEqualTo("alice");
+		assertThat(verified.issuedAt()).isNotNull();
+		assertThat(verified.expiresAt()).isAfter(Instant.now());
+		assertThat(jwtUtil.validateToken(token, "alice")).isTrue();
+		assertThat(jwtUtil.validateToken(token, "bob")).isFalse();
+	}
+
+	@Test
+	void carriesAuthoritiesAsClaims() {
+		String token = jwtUtil.generateToken(42L, "alice", List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+
+		assertThat(jwtUtil.verify(token).authorities()).containsExactly("ROLE_ADMIN");
+	}
+
+	@Test
+	void repeatedTokensAreServedFromTheCache() {
+		String token = jwtUtil.generateToken(1L, "alice", List.of());
+
+		assertThat(jwtUtil.verify(token)).isSameAs(jwtUtil.verify(token));
+	}
+
+	@Test
+	void rejectsTokensWithAnotherSignature() {
+		String foreign = new JwtUtil("c2VjcmV0LXNlY3JldC1zZWNyZXQtc2VjcmV0LXNlY3JldC0xMjM0NTY=", 60_000, 100)
+				.generateToken(1L, "alice", List.of());
+
+		assertThatThrownBy(() -> jwtUtil.verify(foreign)).isInstanceOf(SignatureException.class);
+		assertThat(jwtUtil.validateToken(foreign, "alice")).isFalse();
+	}
+
+	@Test
+	void rejectsExpiredTokens() {
+		String expired = new JwtUtil(SECRET, -1_000, 100).generateToken(1L, "alice", List.of());
+
+		assertThatThrownBy(() -> jwtUtil.verify(expired)).isInstanceOf(ExpiredJwtException.class);
+	}
+}
@@ -0,0 +1,36 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OAuth1SignerTest {
+
+	// Twitter の "Creating a signature" ドキュメントの例
+	private final OAuth1Signer signer = new OAuth1Signer(
+			"xvz1evFS4wEEPTGEFPHBog",
+			"kAcSOqF21Fu85e7zjz7ZN2U4ZRhfV3WpwPAoE3Z7kBw",
+			"370773112-GmHxMAgYyLbNEtIKZeRNFsMKPR9EyMZeS9weJAEb",
+			"LswwdoUaIvS8ltyTt5jkRh4J50vUPVVHtR2YPi5kE");
+
+	@Test
+	void signsTheDocumentedExample() {
+		URI uri = URI.create("https://api.twitter.com/1.1/statuses/update.json"
+				+ "?include_entities=true&status=Hello%20Ladies%20%2B%20Gentlemen%2C%20a%20signed%20OAuth%20request%21");
+
+		String header = signer.authorizationHeader("POST", uri,
+				"kYjzVBB8Y0ZFabxSWbWovY3uYSQ2pTgmZeNu2VS4cg", 1318622958);
+
+		assertThat(header)
+				.startsWith("OAuth ")
+				.contains("oauth_consumer_key=\"xvz1evFS4wEEPTGEFPHBog\"")
+				.contains("oauth_signature=\"hCtSmYh%2BiHYCEqBWrE7C7hYmtUk%3D\"");
+	}
+
+	@Test
+	void encodesReservedCharactersPerRfc3986() {
+		assertThat(OAuth1Signer.percentEncode("Ladies + Gentlemen*~")).isEqualTo("Ladies%20%2B%20Gentlemen%2A~");
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingExecutorTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private PasswordHashingExecutor executor;
+
+	@AfterEach
+	void stop() {
+		release.countDown();
+		executor.stop();
+	}
+
+	@Test
+	void rejectsWithTooManyRequestsWhenTheQueueIsFull() {
+		executor = new PasswordHashingExecutor(1, 1, 10_000);
+		executor.submit(this::block);
+		executor.submit(() -> "queued");
+
+		assertThatThrownBy(() -> executor.submit(() -> "rejected"))
+				.isInstanceOfSatisfying(PasswordHashingExecutor.SaturatedException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+	}
+
+	@Test
+	void dropsTasksThatWaitedTooLongWithServiceUnavailable() throws Exception {
+		executor = new PasswordHashingExecutor(1, 4, 50);
+		executor.submit(this::block);
+		CompletableFuture<String> stale = executor.submit(() -> "too late");
+
+		Thread.sleep(100);
+		release.countDown();
+
+		assertThatThrownBy(() -> stale.get(5, TimeUnit.SECONDS))
+				.isInstanceOf(ExecutionException.class)
+				.cause()
+				.isInstanceOfSatisfying(PasswordHashingExecutor.SaturatedException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+	}
+
+	@Test
+	void runsTasksOffTheCallingThread() throws Exception {
+		executor = new PasswordHashingExecutor(1, 4, 10_000);
+
+		String thread = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+		assertThat(thread).startsWith("password-hashing-");
+	}
+
+	private String block() {
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "done";
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PasswordUpgradeTest {
+
+	private final UserRepository repository = mock(UserRepository.class);
+	private final CustomUserDetailsService userDetailsService = new CustomUserDetailsService(repository, 100, 60);
+	private final PasswordEncoder encoder = new SecurityConfig().passwordEncoder("bcrypt", 12);
+
+	@Test
+	void rehashesLegacyHashesOnSuccessfulLogin() {
+		// 接頭辞なし・コスト 4 の bcrypt (以前の BCryptPasswordEncoder で保存されたもの)
+		givenStoredHash(new BCryptPasswordEncoder(4).encode("secret"));
+
+		login("secret");
+
+		ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+		verify(repository).updatePassword(eq("alice"), captor.capture());
+		assertThat(captor.getValue()).startsWith("{bcrypt}$2a$12$");
+		assertThat(encoder.matches("secret", captor.getValue())).isTrue();
+	}
+
+	@Test
+	void leavesCurrentHashesAlone() {
+		givenStoredHash(encoder.encode("secret"));
+
+		login("secret");
+
+		verify(repository, never()).updatePassword(anyString(), anyString());
+	}
+
+	private void givenStoredHash(String hash) {
+		User alice = new User("alice", hash);
+		alice.setId(1L);
+		when(repository.findByUsername("alice")).thenReturn(Optional.of(alice));
+	}
+
+	private void login(String password) {
+		DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+		provider.setUserDetailsService(userDetailsService);
+		provider.setUserDetailsPasswordService(userDetailsService);
+		provider.setPasswordEncoder(encoder);
+		assertThat(provider.authenticate(new UsernamePasswordAuthenticationToken("alice", password)).isAuthenticated())
+				.isTrue();
+	}
+}
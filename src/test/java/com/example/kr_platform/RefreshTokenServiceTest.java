@@ -0,0 +1,108 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Import({RefreshTokenService.class, TokenRevocationIndex.class, CustomUserDetailsService.class, JwtUtil.class})
+class RefreshTokenServiceTest {
+
+	@Autowired
+	private RefreshTokenService refreshTokenService;
+
+	@Autowired
+	private TokenRevocationIndex revocationIndex;
+
+	@Autowired
+	private RevokedTokenRepository revokedTokenRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	private AppUserDetails alice;
+
+	@BeforeEach
+	void createUser() {
+		User user = userRepository.save(new User("alice", "{noop}secret"));
+		alice = new AppUserDetails(user.getId(), "alice", "{noop}secret", List.of());
+	}
+
+	@Test
+	void refreshRotatesTheRefreshToken() {
+		RefreshTokenService.TokenPair first = refreshTokenService.issue(alice);
+
+		RefreshTokenService.TokenPair second = refreshTokenService.refresh(first.refreshToken());
+
+		assertThat(second.refreshToken()).isNotEqualTo(first.refreshToken());
+		assertThat(jwtUtil.verify(second.accessToken()).username()).isEqualTo("alice");
+		assertThat(revocationIndex.isRevoked(jwtUtil.verify(second.accessToken()).id())).isFalse();
+	}
+
+	@Test
+	void reusingARotatedTokenRevokesTheWholeFamily() {
+		RefreshTokenService.TokenPair first = refreshTokenService.issue(alice);
+		RefreshTokenService.TokenPair second = refreshTokenService.refresh(first.refreshToken());
+
+		assertThatThrownBy(() -> refreshTokenService.refresh(first.refreshToken()))
+				.isInstanceOf(RefreshTokenService.InvalidRefreshTokenException.class);
+
+		assertThatThrownBy(() -> refreshTokenService.refresh(second.refreshToken()))
+				.isInstanceOf(RefreshTokenService.InvalidRefreshTokenException.class);
+		assertThat(revocationIndex.isRevoked(jwtUtil.verify(second.accessToken()).id())).isTrue();
+	}
+
+	@Test
+	void logoutRevokesAccessTokensAndSurvivesARestart() {
+		RefreshTokenService.TokenPair tokens = refreshTokenService.issue(alice);
+		String accessTokenId = jwtUtil.verify(tokens.accessToken()).id();
+
+		refreshTokenService.logout(tokens.refreshToken());
+
+		assertThat(revocationIndex.isRevoked(accessTokenId)).isTrue();
+		TokenRevocationIndex rebuilt = new TokenRevocationIndex(revokedTokenRepository);
+		rebuilt.load();
+		assertThat(rebuilt.isRevoked(accessTokenId)).isTrue();
+	}
+
+	@Test
+	void logoutAllRevokesEveryLoginOfTheUser() {
+		RefreshTokenService.TokenPair laptop = refreshTokenService.issue(alice);
+		RefreshTokenService.TokenPair phone = refreshTokenService.issue(alice);
+		User bob = userRepository.save(new User("bob", "{noop}secret"));
+		RefreshTokenService.TokenPair other = refreshTokenService.issue(
+				new AppUserDetails(bob.getId(), "bob", "{noop}secret", List.of()));
+
+		refreshTokenService.logoutAll(alice.getUserId());
+
+		assertThat(revocationIndex.isRevoked(jwtUtil.verify(laptop.accessToken()).id())).isTrue();
+		assertThat(revocationIndex.isRevoked(jwtUtil.verify(phone.accessToken()).id())).isTrue();
+		assertThatThrownBy(() -> refreshTokenService.refresh(laptop.refreshToken()))
+				.isInstanceOf(RefreshTokenService.InvalidRefreshTokenException.class);
+		assertThatThrownBy(() -> refreshTokenService.refresh(phone.refreshToken()))
+				.isInstanceOf(RefreshTokenService.InvalidRefreshTokenException.class);
+		// 他のユーザーのログインはそのまま
+		assertThat(revocationIndex.isRevoked(jwtUtil.verify(other.accessToken()).id())).isFalse();
+		assertThat(refreshTokenService.refresh(other.refreshToken()).refreshToken()).isNotNull();
+		// 他のインスタンスも DB から同じ失効を読み込める
+		TokenRevocationIndex rebuilt = new TokenRevocationIndex(revokedTokenRepository);
+		rebuilt.load();
+		assertThat(rebuilt.isRevoked(jwtUtil.verify(phone.accessToken()).id())).isTrue();
+	}
+
+	@Test
+	void unknownTokensAreRejected() {
+		assertThatThrownBy(() -> refreshTokenService.refresh("not-a-token"))
+				.isInstanceOf(RefreshTokenService.InvalidRefreshTokenException.class);
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.kr_platform;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScheduleRendererTest {
+
+	private static final ZoneId TOKYO = ZoneId.of("Asia/Tokyo");
+	private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+	private static final CalendarSource PRIMARY = CalendarSource.primary(GoogleCalendarClient.DEFAULT_USER_ID);
+	private static final CalendarSource WORK = new CalendarSource("work", "primary");
+
+	private final ScheduleRenderer renderer = new ScheduleRenderer("", "", "Asia/Tokyo");
+
+	@Test
+	void rendersDayScheduleInTheGivenZone() {
+		CalendarFanOut.Result fetched = result(
+				timed("朝会", ZonedDateTime.of(2024, 5, 1, 9, 30, 0, 0, TOKYO), "会議室A"),
+				allDay("休暇", "2024-05-01"));
+
+		assertThat(renderer.render(ScheduleRenderer.Kind.TODAY, fetched, TOKYO))
+				.isEqualTo("• 朝会 (09:30) 📍会議室A\n• 休暇 (終日)");
+		assertThat(renderer.render(ScheduleRenderer.Kind.TODAY, fetched, NEW_YORK))
+				.startsWith("• 朝会 (20:30) 📍会議室A");
+	}
+
+	@Test
+	void rendersUpcomingEventsWithDates() {
+		CalendarFanOut.Result fetched = result(
+				timed("打ち合わせ", ZonedDateTime.of(2024, 5, 2, 14, 0, 0, 0, TOKYO), null),
+				allDay("祝日", "2024-05-03"));
+
+		assertThat(renderer.render(ScheduleRenderer.Kind.UPCOMING, fetched, TOKYO))
+				.isEqualTo("• 打ち合わせ (05/02 14:00)\n• 祝日 (05/03 終日)");
+	}
+
+	@Test
+	void reportsEmptyPartialAndFailedResults() {
+		CalendarFanOut.Result partial = new CalendarFanOut.Result(List.of(),
+				List.of(new CalendarFanOut.Failure(WORK, "timeout")), 2);
+		CalendarFanOut.Result failed = new CalendarFanOut.Result(List.of(),
+				List.of(new CalendarFanOut.Failure(PRIMARY, "401"), new CalendarFanOut.Failure(WORK, "timeout")), 2);
+
+		assertThat(renderer.render(ScheduleRenderer.Kind.TOMORROW, result(), TOKYO)).isEqualTo("明日の予定はありません。");
+		assertThat(renderer.render(ScheduleRenderer.Kind.TOMORROW, partial, TOKYO))
+				.isEqualTo("明日の予定はありません。\n※ 取得できなかったカレンダー: " + WORK);
+		assertThat(renderer.render(ScheduleRenderer.Kind.TOMORROW, failed, TOKYO))
+				.isEqualTo("カレンダーの取得に失敗: 401, timeout");
+	}
+
+	@Test
+	void usesConfiguredTemplates() {
+		ScheduleRenderer custom = new ScheduleRenderer("{time} {title}[ @{location}]", "", "UTC");
+		CalendarFanOut.Result fetched = result(timed("standup", ZonedDateTime.of(2024, 5, 1, 9, 0, 0, 0, TOKYO), null));
+
+		assertThat(custom.render(ScheduleRenderer.Kind.TODAY, fetched, custom.defaultZone())).isEqualTo("00:00 standup");
+		assertThatThrownBy(() -> new ScheduleRenderer("{unknown}", "", ""))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void shortScheduleFitsInOneTweet() {
+		CalendarFanOut.Result fetched = result(timed("朝会", ZonedDateTime.of(2024, 5, 1, 9, 30, 0, 0, TOKYO), null));
+		Instant now = ZonedDateTime.of(2024, 5, 1, 7, 5, 0, 0, TOKYO).toInstant();
+
+		assertThat(renderer.renderThread(ScheduleRenderer.Kind.TODAY, fetched, TOKYO, now))
+				.containsExactly("📅 今日の予定 (07:05)\n\n• 朝会 (09:30)\n\n#予定 #カレンダー");
+	}
+
+	@Test
+	void longScheduleIsSplitIntoAThread() {
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			events.add(timed("定例ミーティング " + i, ZonedDateTime.of(2024, 5, 1, 9, i, 0, 0, TOKYO), "本社"));
+		}
+		CalendarFanOut.Result fetched = new CalendarFanOut.Result(events, List.of(), 1);
+
+		List<String> thread = renderer.renderThread(ScheduleRenderer.Kind.TODAY, fetched, TOKYO, Instant.now());
+
+		assertThat(thread).hasSizeGreaterThan(1);
+		assertThat(thread).allSatisfy(tweet ->
+				assertThat(TweetText.weightedLength(tweet)).isLessThanOrEqualTo(TweetText.MAX_WEIGHTED_LENGTH));
+		assertThat(thread.get(0)).startsWith("📅 今日の予定").endsWith("(1/" + thread.size() + ")");
+		assertThat(thread.get(thread.size() - 1)).contains("#予定 #カレンダー");
+		assertThat(String.join("\n", thread)).contains("定例ミーティング 0 ", "定例ミーティング 39 ");
+	}
+
+	@Test
+	void weightsTextLikeTwitter() {
+		assertThat(TweetText.weightedLength("hello")).isEqualTo(5);
+		assertThat(TweetText.weightedLength("予定")).isEqualTo(4);
+		assertThat(TweetText.weightedLength("📅")).isEqualTo(2);
+		assertThat(TweetText.weightedLength("see https://example.com/a/very/long/path/that/goes/on")).isEqualTo(4 + 23);
+	}
+
+	@Test
+	void truncatesASingleOverlongLine() {
+		String line = "あ".repeat(200);
+
+		List<String> thread = TweetText.split("", List.of(line), "");
+
+		assertThat(thread).hasSize(1);
+		assertThat(thread.get(0)).endsWith("…");
+		assertThat(TweetText.weightedLength(thread.get(0))).isLessThanOrEqualTo(TweetText.MAX_WEIGHTED_LENGTH);
+	}
+
+	private static CalendarFanOut.Result result(Event... events) {
+		return new CalendarFanOut.Result(List.of(events), List.of(), 1);
+	}
+
+	private static Event timed(String summary, ZonedDateTime start, String location) {
+		return new Event().setSummary(summary).setLocation(location)
+				.setStart(new EventDateTime().setDateTime(new DateTime(start.toInstant().toEpochMilli())));
+	}
+
+	private static Event allDay(String summary, String date) {
+		return new Event().setSummary(summary).setStart(new EventDateTime().setDate(new DateTime(date)));
+	}
+}
@@ -0,0 +1,97 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+	private final SingleFlight<String, Integer> flight = new SingleFlight<>();
+	private final AtomicInteger calls = new AtomicInteger();
+
+	@Test
+	void concurrentCallersShareOneInFlightCall() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				results.add(callers.submit(() -> flight.execute("today", () -> {
+					await(release);
+					return calls.incrementAndGet();
+				})));
+			}
+			waitUntilCoalesced(49);
+			release.countDown();
+
+			for (Future<Integer> result : results) {
+				assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+			}
+		}
+
+		assertThat(calls).hasValue(1);
+		assertThat(flight.coalescedCount()).isEqualTo(49);
+		assertThat(flight.inFlightCount()).isZero();
+	}
+
+	@Test
+	void completedResultsAreNotReused() {
+		assertThat(flight.execute("today", calls::incrementAndGet)).isEqualTo(1);
+		assertThat(flight.execute("today", calls::incrementAndGet)).isEqualTo(2);
+		assertThat(flight.coalescedCount()).isZero();
+	}
+
+	@Test
+	void differentKeysAreNotCoalesced() {
+		flight.execute("today", calls::incrementAndGet);
+		flight.execute("tomorrow", calls::incrementAndGet);
+
+		assertThat(calls).hasValue(2);
+	}
+
+	@Test
+	void failuresAreSharedWithWaitingCallersAndThenForgotten() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+			Future<Integer> leader = callers.submit(() -> flight.execute("today", () -> {
+				await(release);
+				throw new IllegalStateException("upstream down");
+			}));
+			while (flight.inFlightCount() == 0) {
+				Thread.sleep(1);
+			}
+			Future<Integer> follower = callers.submit(() -> flight.execute("today", calls::incrementAndGet));
+			waitUntilCoalesced(1);
+			release.countDown();
+
+			assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("upstream down");
+			assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("upstream down");
+		}
+
+		assertThat(flight.execute("today", calls::incrementAndGet)).isEqualTo(1);
+	}
+
+	private void waitUntilCoalesced(long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (flight.coalescedCount() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.example.kr_platform;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TweetDispatcherTest {
+
+	private final Queue<StubResponse> script = new ConcurrentLinkedQueue<>();
+	private final List<Long> requestTimes = new CopyOnWriteArrayList<>();
+	private HttpServer server;
+	private TwitterClient client;
+	private TweetDispatcher dispatcher;
+
+	@BeforeEach
+	void startStubTwitter() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/2/tweets", this::handleTweet);
+		server.start();
+		client = new TwitterClient(WebClient.builder(), "key", "secret", "token", "token-secret",
+				"http://127.0.0.1:" + server.getAddress().getPort(), 10, 3000, 10_000, new CircuitBreaker("Twitter API", 1_000, 30_000, 1));
+	}
+
+	@AfterEach
+	void stop() {
+		if (dispatcher != null) {
+			dispatcher.stop();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	void tooManyRequestsWaitsForTheAdvertisedReset() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 2;
+		script.add(new StubResponse(429, Map.of("x-rate-limit-limit", "50", "x-rate-limit-remaining", "0",
+				"x-rate-limit-reset", String.valueOf(reset))));
+		script.add(StubResponse.created(49, reset + 900));
+		dispatcher = startDispatcher(10);
+
+		TweetJob job = dispatcher.submit("hello");
+		TwitterClient.TweetResult result = job.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(result.isSuccessful()).isTrue();
+		assertThat(job.getStatus()).isEqualTo(TweetJob.Status.SENT);
+		assertThat(job.getAttempts()).isEqualTo(2);
+		assertThat(requestTimes.get(1)).isGreaterThanOrEqualTo(reset * 1000);
+	}
+
+	@Test
+	void exhaustedRemainingHoldsTheNextTweetUntilReset() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 2;
+		script.add(StubResponse.created(0, reset));
+		script.add(StubResponse.created(49, reset + 900));
+		dispatcher = startDispatcher(10);
+
+		dispatcher.submit("first");
+		TweetJob second = dispatcher.submit("second");
+		second.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(requestTimes).hasSize(2);
+		assertThat(requestTimes.get(1)).isGreaterThanOrEqualTo(reset * 1000);
+	}
+
+	@Test
+	void serverErrorsAreRetriedWithBackoff() throws Exception {
+		script.add(new StubResponse(503, Map.of()));
+		script.add(new StubResponse(502, Map.of()));
+		script.add(StubResponse.created(48, System.currentTimeMillis() / 1000 + 900));
+		dispatcher = startDispatcher(10);
+
+		TweetJob job = dispatcher.submit("retry me");
+		job.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(job.getStatus()).isEqualTo(TweetJob.Status.SENT);
+		assertThat(job.getAttempts()).isEqualTo(3);
+	}
+
+	@Test
+	void clientErrorsFailWithoutRetrying() throws Exception {
+		script.add(new StubResponse(403, Map.of()));
+		dispatcher = startDispatcher(10);
+
+		TweetJob job = dispatcher.submit("forbidden");
+		job.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(job.getStatus()).isEqualTo(TweetJob.Status.FAILED);
+		assertThat(job.getAttempts()).isEqualTo(1);
+		assertThat(requestTimes).hasSize(1);
+	}
+
+	@Test
+	void fullQueuePushesBackOnCallers() {
+		TweetDispatcher stopped = new TweetDispatcher(client, new TwitterRateLimiter(50, 900), 1, 5, 10, 100, 1);
+
+		stopped.submit("queued");
+
+		assertThatThrownBy(() -> stopped.submit("rejected"))
+				.isInstanceOf(TweetDispatcher.QueueFullException.class);
+		assertThat(stopped.queueDepth()).isEqualTo(1);
+	}
+
+	@Test
+	void openCircuitRejectsNewTweetsAndHoldsQueuedOnesUntilTheProbe() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("Twitter API", 2, 500, 1);
+		client = new TwitterClient(WebClient.builder(), "key", "secret", "token", "token-secret",
+				"http://127.0.0.1:" + server.getAddress().getPort(), 10, 3000, 10_000, breaker);
+		script.add(new StubResponse(503, Map.of()));
+		script.add(new StubResponse(503, Map.of()));
+		script.add(StubResponse.created(48, System.currentTimeMillis() / 1000 + 900));
+		dispatcher = startDispatcher(10);
+
+		TweetJob job = dispatcher.submit("retry me");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (breaker.state() != CircuitBreaker.State.OPEN && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		assertThatThrownBy(() -> dispatcher.submit("rejected"))
+				.isInstanceOf(CircuitBreaker.OpenException.class);
+		job.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(job.getStatus()).isEqualTo(TweetJob.Status.SENT);
+		assertThat(job.getAttempts()).isEqualTo(3);
+		assertThat(requestTimes.get(2) - requestTimes.get(1)).isGreaterThanOrEqualTo(400);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void queuedTweetsWaitForTheHalfOpenProbeWithoutUsingAttempts() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("Twitter API", 1, 300, 1);
+		client = new TwitterClient(WebClient.builder(), "key", "secret", "token", "token-secret",
+				"http://127.0.0.1:" + server.getAddress().getPort(), 10, 3000, 10_000, breaker);
+		// 試しの送信は応答が遅く、その間に次のジョブがブレーカーに止められる
+		script.add(new StubResponse(201, Map.of(), 300));
+		script.add(new StubResponse(201, Map.of()));
+		// 試行回数は 1 回なので、止められた分を数えると失敗になる
+		dispatcher = new TweetDispatcher(client, new TwitterRateLimiter(50, 900), 10, 1, 10, 100, 2);
+		TweetJob probe = dispatcher.submit("probe");
+		TweetJob next = dispatcher.submit("next");
+		breaker.onFailure();
+		dispatcher.start();
+
+		probe.completion().get(10, TimeUnit.SECONDS);
+		next.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(probe.getStatus()).isEqualTo(TweetJob.Status.SENT);
+		assertThat(next.getStatus()).isEqualTo(TweetJob.Status.SENT);
+		assertThat(next.getAttempts()).isEqualTo(1);
+		assertThat(requestTimes).hasSize(2);
+	}
+
+	@Test
+	void timedOutPostsAreNotRetried() throws Exception {
+		client = new TwitterClient(WebClient.builder(), "key", "secret", "token", "token-secret",
+				"http://127.0.0.1:" + server.getAddress().getPort(), 10, 3000, 200, new CircuitBreaker("Twitter API", 1_000, 30_000, 1));
+		// Twitter は受け付けたが、応答がタイムアウトまでに返らない
+		script.add(new StubResponse(201, Map.of(), 1_000));
+		dispatcher = startDispatcher(10);
+
+		TweetJob job = dispatcher.submit("slow");
+		TwitterClient.TweetResult result = job.completion().get(10, TimeUnit.SECONDS);
+
+		assertThat(result.outcomeUnknown()).isTrue();
+		assertThat(job.getStatus()).isEqualTo(TweetJob.Status.FAILED);
+		assertThat(job.getAttempts()).isEqualTo(1);
+		Thread.sleep(1_500);
+		assertThat(requestTimes).hasSize(1);
+	}
+
+	@Test
+	void unfinishedJobsAreKeptWhileFinishedOnesAreDropped() throws Exception {
+		// 最初のジョブだけ 503 で再試行待ち (1〜2 秒) になり、その間に他のジョブが送られる
+		script.add(new StubResponse(503, Map.of()));
+		for (int i = 0; i < 20; i++) {
+			script.add(StubResponse.created(49, System.currentTimeMillis() / 1000 + 900));
+		}
+		// 容量 1 なので、終わったジョブは 10 件まで残す
+		dispatcher = new TweetDispatcher(client, new TwitterRateLimiter(50, 900), 1, 5, 2_000, 2_000, 1);
+		dispatcher.start();
+		TweetJob retrying = dispatcher.submit("retry me");
+		while (retrying.getStatus() != TweetJob.Status.RETRYING) {
+			Thread.sleep(5);
+		}
+
+		List<String> finished = new CopyOnWriteArrayList<>();
+		for (int i = 0; i < 15; i++) {
+			TweetJob job = dispatcher.submit("tweet " + i);
+			job.completion().get(10, TimeUnit.SECONDS);
+			finished.add(job.getId());
+		}
+
+		assertThat(retrying.isDone()).isFalse();
+		assertThat(dispatcher.find(retrying.getId())).contains(retrying);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (finished.stream().filter(id -> dispatcher.find(id).isPresent()).count() > 10
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(finished.stream().filter(id -> dispatcher.find(id).isPresent()).count()).isLessThanOrEqualTo(10);
+		assertThat(dispatcher.find(retrying.getId())).contains(retrying);
+
+		retrying.completion().get(10, TimeUnit.SECONDS);
+		assertThat(dispatcher.find(retrying.getId())).contains(retrying);
+	}
+
+	private TweetDispatcher startDispatcher(int capacity) {
+		TweetDispatcher started = new TweetDispatcher(client, new TwitterRateLimiter(50, 900), capacity, 5, 10, 100, 1);
+		started.start();
+		return started;
+	}
+
+	private void handleTweet(HttpExchange exchange) throws IOException {
+		requestTimes.add(System.currentTimeMillis());
+		exchange.getRequestBody().readAllBytes();
+
+		StubResponse response = script.poll();
+		if (response == null) {
+			response = new StubResponse(500, Map.of());
+		}
+		if (response.delayMillis() > 0) {
+			try {
+				Thread.sleep(response.delayMillis());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		response.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		byte[] body = response.status() == 201
+				? "{\"data\":{\"id\":\"1\",\"text\":\"ok\"}}".getBytes(StandardCharsets.UTF_8)
+				: ("{\"status\":" + response.status() + "}").getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(response.status(), body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private record StubResponse(int status, Map<String, String> headers, long delayMillis) {
+
+		StubResponse(int status, Map<String, String> headers) {
+			this(status, headers, 0);
+		}
+
+		static StubResponse created(long remaining, long resetEpochSeconds) {
+			return new StubResponse(201, Map.of("x-rate-limit-limit", "50",
+					"x-rate-limit-remaining", String.valueOf(remaining),
+					"x-rate-limit-reset", String.valueOf(resetEpochSeconds)));
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+// 予約の状態は別スレッド (ワーカー) から更新されるので、テスト全体をトランザクションで包まない
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TweetSchedulerTest {
+
+	@Autowired
+	private ScheduledTweetRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<String> submitted = new CopyOnWriteArrayList<>();
+	// 次の submit で投げる例外 (空なら受け付けてすぐに投稿済みにする)
+	private final Queue<RuntimeException> submitFailures = new ConcurrentLinkedQueue<>();
+	private TweetScheduler scheduler;
+
+	@BeforeEach
+	void setUp() {
+		repository.deleteAll();
+		// join しないので、生きているノードはこのインスタンスだけ (すべての予約を受け持つ)
+		ClusterCoordinator cluster = new ClusterCoordinator(jdbcTemplate, "test", 30_000, 7);
+		TweetDispatcher dispatcher = new TweetDispatcher(null, null, 10, 1, 1_000, 1_000, 1) {
+			@Override
+			public TweetJob submit(String text) {
+				RuntimeException failure = submitFailures.poll();
+				if (failure != null) {
+					throw failure;
+				}
+				submitted.add(text);
+				TweetJob job = new TweetJob(text);
+				job.complete(new TwitterClient.TweetResult(201, "{\"data\":{\"id\":\"1\"}}", null, null, null, false, false));
+				return job;
+			}
+		};
+		// 先読みは poll-interval の 2 倍 (2 秒)
+		scheduler = new TweetScheduler(repository, dispatcher, cluster, 2, 1_000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		scheduler.stop();
+	}
+
+	@Test
+	void tweetsSavedBeforeARestartAreLoadedOnStartup() {
+		ScheduledTweet overdue = repository.save(new ScheduledTweet("overdue", Instant.now().minusSeconds(60)));
+		ScheduledTweet soon = repository.save(new ScheduledTweet("soon", Instant.now().plusMillis(500)));
+		ScheduledTweet later = repository.save(new ScheduledTweet("later", Instant.now().plus(Duration.ofHours(1))));
+
+		scheduler.start();
+
+		awaitTrue(() -> status(overdue) == ScheduledTweet.Status.SENT && status(soon) == ScheduledTweet.Status.SENT);
+		assertThat(submitted).containsExactly("overdue", "soon");
+		assertThat(repository.findById(soon.getId()).orElseThrow().getCompletedAt()).isNotNull();
+		// 先読みの範囲外はまだ読み込まない
+		assertThat(status(later)).isEqualTo(ScheduledTweet.Status.PENDING);
+		assertThat(scheduler.pendingCount()).isZero();
+	}
+
+	@Test
+	void tweetsAreSentOnlyOnceTheirDueTimeArrives() throws Exception {
+		scheduler.start();
+		Instant dueAt = Instant.now().plusMillis(1_000);
+		ScheduledTweet tweet = scheduler.schedule("due", dueAt);
+
+		TimeUnit.MILLISECONDS.sleep(300);
+		assertThat(submitted).isEmpty();
+		assertThat(scheduler.pendingCount()).isEqualTo(1);
+
+		awaitTrue(() -> status(tweet) == ScheduledTweet.Status.SENT);
+		assertThat(submitted).containsExactly("due");
+		assertThat(Instant.now()).isAfterOrEqualTo(dueAt);
+	}
+
+	@Test
+	void cancelledTweetsAreSkippedWhenTheyComeDue() throws Exception {
+		scheduler.start();
+		ScheduledTweet cancelled = scheduler.schedule("cancelled", Instant.now().plusMillis(300));
+		ScheduledTweet kept = scheduler.schedule("kept", Instant.now().plusMillis(600));
+
+		assertThat(scheduler.cancel(cancelled.getId())).isTrue();
+		assertThat(scheduler.cancel(cancelled.getId())).isFalse();
+
+		awaitTrue(() -> status(kept) == ScheduledTweet.Status.SENT);
+		assertThat(submitted).containsExactly("kept");
+		assertThat(status(cancelled)).isEqualTo(ScheduledTweet.Status.CANCELLED);
+		// 送った後はキャンセルできない
+		assertThat(scheduler.cancel(kept.getId())).isFalse();
+	}
+
+	@Test
+	void tweetsThatCannotBeSubmittedGoBackToPending() {
+		submitFailures.add(new TweetDispatcher.QueueFullException());
+		submitFailures.add(new CircuitBreaker.OpenException("Twitter API", 60_000));
+		submitFailures.add(new IllegalStateException("boom"));
+		scheduler.start();
+
+		ScheduledTweet queueFull = scheduler.schedule("queue full", Instant.now());
+		ScheduledTweet circuitOpen = scheduler.schedule("circuit open", Instant.now().plusMillis(100));
+		ScheduledTweet broken = scheduler.schedule("broken", Instant.now().plusMillis(200));
+
+		// 送信中のまま残さず、時間をおいて再投入するためにキューへ積み直す
+		awaitTrue(() -> submitFailures.isEmpty() && scheduler.pendingCount() == 3);
+		assertThat(submitted).isEmpty();
+		assertThat(List.of(status(queueFull), status(circuitOpen), status(broken)))
+				.containsOnly(ScheduledTweet.Status.PENDING);
+		assertThat(repository.findPendingDueBefore(Instant.now(), PageRequest.of(0, 10))).hasSize(3);
+	}
+
+	private ScheduledTweet.Status status(ScheduledTweet tweet) {
+		return repository.findById(tweet.getId()).orElseThrow().getStatus();
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Condition not met within 15 seconds");
+			}
+			try {
+				TimeUnit.MILLISECONDS.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted");
+			}
+		}
+	}
+}
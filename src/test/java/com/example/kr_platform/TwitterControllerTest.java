@@ -0,0 +1,29 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TwitterControllerTest {
+
+	// 入力の検証だけを見るので、予約や投稿の依存は渡さない (渡った時点で NullPointerException になる)
+	private final MockMvc mockMvc = MockMvcBuilders
+			.standaloneSetup(new TwitterController(null, null, null, null, null))
+			.build();
+
+	@Test
+	void invalidScheduledTweetsAreRejectedBeforeSaving() throws Exception {
+		mockMvc.perform(post("/schedule-tweet").param("text", "hello").param("minutes", "-1"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string("minutes must not be negative"));
+
+		// 絵文字などのサロゲートペアも 1 文字と数える (DB の列と同じ)
+		String longest = "🐦".repeat(ScheduledTweet.MAX_TEXT_LENGTH);
+		mockMvc.perform(post("/schedule-tweet").param("text", longest + "x").param("minutes", "5"))
+				.andExpect(status().isBadRequest());
+	}
+}
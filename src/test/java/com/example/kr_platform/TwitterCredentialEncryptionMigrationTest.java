@@ -0,0 +1,86 @@
+package com.example.kr_platform;
+
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(CredentialCipher.class)
+class TwitterCredentialEncryptionMigrationTest {
+
+	@Autowired
+	private CredentialCipher cipher;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("delete from twitter_credentials");
+		jdbcTemplate.update("delete from users");
+	}
+
+	@Test
+	void plaintextTokensAreEncryptedWithTheRowKey() throws Exception {
+		Long alice = userRepository.saveAndFlush(new User("alice", "{noop}x")).getId();
+		Long bob = userRepository.saveAndFlush(new User("bob", "{noop}x")).getId();
+		// V7 より前に平文で保存された行
+		jdbcTemplate.update("insert into twitter_credentials (user_id, access_token, access_token_secret) values (?, ?, ?)",
+				alice, "token-alice", "secret-alice");
+		jdbcTemplate.update("insert into twitter_credentials (user_id, access_token, access_token_secret) values (?, ?, ?)",
+				bob, "token-bob", "secret-bob");
+
+		migrate();
+
+		Map<String, Object> row = jdbcTemplate.queryForMap(
+				"select access_token, access_token_secret from twitter_credentials where user_id = ?", alice);
+		String token = (String) row.get("access_token");
+		assertThat(token).isNotEqualTo("token-alice");
+		assertThat(cipher.decrypt(token, TwitterCredential.cipherContext(alice))).isEqualTo("token-alice");
+		assertThat(cipher.decrypt((String) row.get("access_token_secret"), TwitterCredential.cipherContext(alice)))
+				.isEqualTo("secret-alice");
+		// 他のユーザーの行に写した暗号文は復号できない
+		assertThatThrownBy(() -> cipher.decrypt(token, TwitterCredential.cipherContext(bob)))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(cipher.decrypt(jdbcTemplate.queryForObject(
+				"select access_token from twitter_credentials where user_id = ?", String.class, bob),
+				TwitterCredential.cipherContext(bob))).isEqualTo("token-bob");
+	}
+
+	private void migrate() throws Exception {
+		try (Connection connection = dataSource.getConnection()) {
+			new TwitterCredentialEncryptionMigration(cipher).migrate(new Context() {
+				@Override
+				public Configuration getConfiguration() {
+					return null;
+				}
+
+				@Override
+				public Connection getConnection() {
+					return connection;
+				}
+			});
+		}
+	}
+}
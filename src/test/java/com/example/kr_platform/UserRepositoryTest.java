@@ -0,0 +1,35 @@
+package com.example.kr_platform;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// スキーマは Flyway のマイグレーションから作られる
+@DataJpaTest
+class UserRepositoryTest {
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void duplicateUsernamesAreRejectedByTheIndex() {
+		userRepository.saveAndFlush(new User("alice", "{noop}one"));
+
+		assertThatThrownBy(() -> userRepository.saveAndFlush(new User("alice", "{noop}two")))
+				.isInstanceOf(DataIntegrityViolationException.class);
+	}
+
+	@Test
+	void idsComeFromTheSequence() {
+		User alice = userRepository.saveAndFlush(new User("alice", "{noop}one"));
+		User bob = userRepository.saveAndFlush(new User("bob", "{noop}two"));
+
+		assertThat(alice.getId()).isNotNull();
+		assertThat(bob.getId()).isEqualTo(alice.getId() + 1);
+		assertThat(userRepository.findByUsername("bob")).map(User::getId).contains(bob.getId());
+	}
+}